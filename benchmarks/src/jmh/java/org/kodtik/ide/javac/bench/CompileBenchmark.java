@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.kodtik.ide.javac.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * End-to-end compiles of a {@link SyntheticProject}. The project is sized by the {@code packages}
+ * and {@code classesPerPackage} parameters, e.g. {@code -p packages=100} on the JMH command line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CompileBenchmark {
+
+  @Param({"10"})
+  public int packages;
+
+  @Param({"20"})
+  public int classesPerPackage;
+
+  private SyntheticProject project;
+  private Path output;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    project = SyntheticProject.sources(packages, classesPerPackage);
+    output = Files.createDirectories(project.root.resolve("out"));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    project.close();
+  }
+
+  @Benchmark
+  public boolean compile() throws IOException {
+    if (!project.compile(output)) {
+      throw new IllegalStateException("compilation failed");
+    }
+    return true;
+  }
+}
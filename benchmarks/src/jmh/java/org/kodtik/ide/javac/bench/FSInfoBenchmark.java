@@ -0,0 +1,68 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.kodtik.ide.javac.bench;
+
+import com.sun.tools.javac.file.CacheFSInfo;
+import com.sun.tools.javac.file.FSInfo;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** {@link FSInfo#getCanonicalFile} with the direct and the caching implementation. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FSInfoBenchmark {
+
+  @Param({"direct", "cached"})
+  public String fsInfo;
+
+  private SyntheticProject project;
+  private FSInfo info;
+  private Path[] files;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    project = SyntheticProject.sources(10, 20);
+    files = project.sourceFiles.toArray(new Path[0]);
+    info = fsInfo.equals("cached") ? new CacheFSInfo() : FSInfo.instance(new Context());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    project.close();
+  }
+
+  @Benchmark
+  public Path getCanonicalFile() {
+    return info.getCanonicalFile(files[cursor++ % files.length]);
+  }
+}
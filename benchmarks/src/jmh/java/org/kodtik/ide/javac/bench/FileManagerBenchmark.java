@@ -0,0 +1,160 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.kodtik.ide.javac.bench;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link JavacFileManager#list} and {@link JavacFileManager#getJavaFileForInput} against directory,
+ * archive and JRT containers. The {@code warm} benchmarks reuse one file manager, so they measure
+ * lookups through already opened and indexed containers; the {@code cold} ones pay for opening
+ * and indexing the container as the first lookup of a compile does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FileManagerBenchmark {
+
+  @Param({"directory", "archive", "jrt"})
+  public String container;
+
+  @Param({"20"})
+  public int packages;
+
+  @Param({"50"})
+  public int classesPerPackage;
+
+  private static final Set<JavaFileObject.Kind> CLASSES = Set.of(JavaFileObject.Kind.CLASS);
+  private static final String[] JRT_PACKAGES = {
+    "java.lang", "java.util", "java.util.concurrent", "java.io", "java.nio.file", "java.net"
+  };
+  private static final String[] JRT_CLASSES = {
+    "java.lang.Object", "java.lang.String", "java.util.List", "java.util.HashMap",
+    "java.io.InputStream", "java.nio.file.Path", "java.net.URI", "java.util.function.Function"
+  };
+
+  private SyntheticProject project;
+  private JavacFileManager fileManager;
+  private Location location;
+  private String[] packageNames;
+  private String[] classNames;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    if (container.equals("jrt")) {
+      location = StandardLocation.PLATFORM_CLASS_PATH;
+      packageNames = JRT_PACKAGES;
+      classNames = JRT_CLASSES;
+    } else {
+      project = SyntheticProject.compiled(packages, classesPerPackage);
+      location = StandardLocation.CLASS_PATH;
+      packageNames = project.packageNames.toArray(new String[0]);
+      classNames = project.classNames.toArray(new String[0]);
+    }
+    fileManager = newFileManager();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    fileManager.close();
+    if (project != null) {
+      project.close();
+    }
+  }
+
+  private JavacFileManager newFileManager() throws IOException {
+    JavacFileManager fm = new JavacFileManager(new Context(), true, StandardCharsets.UTF_8);
+    if (project != null) {
+      fm.setLocationFromPaths(
+          location, List.of(container.equals("archive") ? project.jar : project.classes));
+    }
+    return fm;
+  }
+
+  private String nextPackage() {
+    return packageNames[cursor++ % packageNames.length];
+  }
+
+  private String nextClass() {
+    return classNames[cursor++ % classNames.length];
+  }
+
+  @Benchmark
+  public void listWarm(Blackhole bh) throws IOException {
+    for (JavaFileObject fo : fileManager.list(location, nextPackage(), CLASSES, false)) {
+      bh.consume(fo);
+    }
+  }
+
+  @Benchmark
+  public void listRecursiveWarm(Blackhole bh) throws IOException {
+    String pkg = container.equals("jrt") ? "java.util" : "bench";
+    for (JavaFileObject fo : fileManager.list(location, pkg, CLASSES, true)) {
+      bh.consume(fo);
+    }
+  }
+
+  @Benchmark
+  public JavaFileObject getJavaFileForInputWarm() throws IOException {
+    return fileManager.getJavaFileForInput(location, nextClass(), JavaFileObject.Kind.CLASS);
+  }
+
+  @Benchmark
+  public JavaFileObject getJavaFileForInputMissWarm() throws IOException {
+    return fileManager.getJavaFileForInput(
+        location, nextPackage() + ".DoesNotExist", JavaFileObject.Kind.CLASS);
+  }
+
+  @Benchmark
+  public void listCold(Blackhole bh) throws IOException {
+    try (JavacFileManager fm = newFileManager()) {
+      for (JavaFileObject fo : fm.list(location, nextPackage(), CLASSES, false)) {
+        bh.consume(fo);
+      }
+    }
+  }
+
+  @Benchmark
+  public JavaFileObject getJavaFileForInputCold() throws IOException {
+    try (JavacFileManager fm = newFileManager()) {
+      return fm.getJavaFileForInput(location, nextClass(), JavaFileObject.Kind.CLASS);
+    }
+  }
+}
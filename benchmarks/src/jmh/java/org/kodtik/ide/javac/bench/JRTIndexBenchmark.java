@@ -0,0 +1,58 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.kodtik.ide.javac.bench;
+
+import com.sun.tools.javac.file.JRTIndex;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Package lookups in {@link JRTIndex}. {@code getCtSym} goes through {@code JRTIndex.getEntry},
+ * so the shared benchmark measures the cached path and the fresh one the directory walk of the
+ * jrt: file system that fills an entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JRTIndexBenchmark {
+
+  private static final String[] PACKAGES = {
+    "java.lang", "java.util", "java.util.concurrent", "java.io", "java.nio.file", "java.net",
+    "java.util.function", "java.util.stream", "java.lang.reflect", "java.time", "sun.misc"
+  };
+
+  private int cursor;
+
+  @Benchmark
+  public JRTIndex.CtSym getEntryShared() throws IOException {
+    return JRTIndex.getSharedInstance().getCtSym(PACKAGES[cursor++ % PACKAGES.length]);
+  }
+
+  @Benchmark
+  public JRTIndex.CtSym getEntryFresh() throws IOException {
+    return JRTIndex.instance(new Context()).getCtSym(PACKAGES[cursor++ % PACKAGES.length]);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.kodtik.ide.javac.bench;
+
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import javax.tools.JavaFileManager.Location;
+import javax.tools.StandardLocation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Class path and module path setup through {@code Locations}: validating the entries handed to
+ * {@code setLocationFromPaths}, expanding manifest {@code Class-Path} entries, and inferring the
+ * module of every module path entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocationsBenchmark {
+
+  @Param({"100"})
+  public int jars;
+
+  private Path dir;
+  private List<Path> entries;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("javac-bench-locations");
+    entries = new ArrayList<>(jars);
+    for (int i = 0; i < jars; i++) {
+      Manifest manifest = new Manifest();
+      Attributes attrs = manifest.getMainAttributes();
+      attrs.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+      attrs.put(new Attributes.Name("Automatic-Module-Name"), "bench.m" + i);
+      Path jar = dir.resolve("lib" + i + "-1.0.jar");
+      // manifest only
+      new JarOutputStream(Files.newOutputStream(jar), manifest).close();
+      entries.add(jar);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    for (Path jar : entries) {
+      Files.deleteIfExists(jar);
+    }
+    Files.deleteIfExists(dir);
+  }
+
+  @Benchmark
+  public Object classPathSetup() throws IOException {
+    try (JavacFileManager fm = new JavacFileManager(new Context(), true, StandardCharsets.UTF_8)) {
+      fm.setLocationFromPaths(StandardLocation.CLASS_PATH, entries);
+      return fm.getLocationAsPaths(StandardLocation.CLASS_PATH);
+    }
+  }
+
+  @Benchmark
+  public void modulePathSetup(Blackhole bh) throws IOException {
+    try (JavacFileManager fm = new JavacFileManager(new Context(), true, StandardCharsets.UTF_8)) {
+      fm.setLocationFromPaths(StandardLocation.MODULE_PATH, entries);
+      for (Set<Location> locations : fm.listLocationsForModules(StandardLocation.MODULE_PATH)) {
+        bh.consume(locations);
+      }
+    }
+  }
+
+  @Benchmark
+  public void modulePathDirectorySetup(Blackhole bh) throws IOException {
+    try (JavacFileManager fm = new JavacFileManager(new Context(), true, StandardCharsets.UTF_8)) {
+      fm.setLocationFromPaths(StandardLocation.MODULE_PATH, List.of(dir));
+      for (Set<Location> locations : fm.listLocationsForModules(StandardLocation.MODULE_PATH)) {
+        bh.consume(locations);
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.kodtik.ide.javac.bench;
+
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.file.JavacFileManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * A generated project of {@code packages * classesPerPackage} classes, laid out as a source tree, a
+ * class directory and a jar of the same classes. Each class references its predecessor so that a
+ * compile exercises symbol completion through the file manager.
+ */
+final class SyntheticProject implements AutoCloseable {
+  final Path root;
+  final Path sources;
+  final Path classes;
+  final Path jar;
+  final List<Path> sourceFiles = new ArrayList<>();
+  final List<String> packageNames = new ArrayList<>();
+  final List<String> classNames = new ArrayList<>();
+
+  private SyntheticProject(Path root) {
+    this.root = root;
+    this.sources = root.resolve("src");
+    this.classes = root.resolve("classes");
+    this.jar = root.resolve("classes.jar");
+  }
+
+  /** Generates the sources only. */
+  static SyntheticProject sources(int packages, int classesPerPackage) throws IOException {
+    SyntheticProject project = new SyntheticProject(Files.createTempDirectory("javac-bench"));
+    String previous = null;
+    for (int p = 0; p < packages; p++) {
+      String pkg = "bench.p" + p;
+      project.packageNames.add(pkg);
+      Path dir = project.sources.resolve(pkg.replace('.', '/'));
+      Files.createDirectories(dir);
+      for (int c = 0; c < classesPerPackage; c++) {
+        String simpleName = "C" + c;
+        String className = pkg + "." + simpleName;
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(pkg).append(";\n\n");
+        sb.append("public class ").append(simpleName).append(" {\n");
+        if (previous != null) {
+          sb.append("  ").append(previous).append(" previous;\n");
+        }
+        sb.append("  private final java.util.List<String> names = new java.util.ArrayList<>();\n");
+        sb.append("  public int size() {\n");
+        sb.append("    return names.size() + ").append(c).append(";\n");
+        sb.append("  }\n");
+        sb.append("}\n");
+        Path file = dir.resolve(simpleName + ".java");
+        Files.writeString(file, sb, StandardCharsets.UTF_8);
+        project.sourceFiles.add(file);
+        project.classNames.add(className);
+        previous = className;
+      }
+    }
+    return project;
+  }
+
+  /** Generates the sources, compiles them into {@link #classes} and packs them into {@link #jar}. */
+  static SyntheticProject compiled(int packages, int classesPerPackage) throws IOException {
+    SyntheticProject project = sources(packages, classesPerPackage);
+    Files.createDirectories(project.classes);
+    if (!project.compile(project.classes)) {
+      throw new IllegalStateException("synthetic project failed to compile");
+    }
+    try (OutputStream out = Files.newOutputStream(project.jar);
+        JarOutputStream jar = new JarOutputStream(out);
+        Stream<Path> files = Files.walk(project.classes)) {
+      for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+        String name = project.classes.relativize(file).toString().replace('\\', '/');
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(Files.readAllBytes(file));
+        jar.closeEntry();
+      }
+    }
+    return project;
+  }
+
+  /** Compiles all sources into {@code output} with a fresh file manager. */
+  boolean compile(Path output) throws IOException {
+    JavacTool tool = JavacTool.create();
+    try (JavacFileManager fm = tool.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      fm.setLocationFromPaths(StandardLocation.CLASS_OUTPUT, List.of(output));
+      Iterable<? extends JavaFileObject> units = fm.getJavaFileObjectsFromPaths(sourceFiles);
+      return tool.getTask(null, fm, null, List.of("-proc:none", "-g:none"), null, units).call();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (Stream<Path> files = Files.walk(root)) {
+      files.sorted(Comparator.reverseOrder()).forEach(SyntheticProject::delete);
+    }
+  }
+
+  private static void delete(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
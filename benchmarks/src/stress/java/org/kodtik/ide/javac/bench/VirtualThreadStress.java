@@ -0,0 +1,179 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.kodtik.ide.javac.bench;
+
+import com.sun.tools.javac.api.JavacTool;
+import com.sun.tools.javac.file.JavacFileManager;
+import com.sun.tools.javac.main.Main;
+import com.sun.tools.javac.util.Context;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Runs many compiles at once on virtual threads and fails if any of them pinned its carrier
+ * thread, as reported by {@code jdk.VirtualThreadPinned} events. Half of the threads also list
+ * and fingerprint a class path of jars and the platform classes through one file manager that
+ * they share. Every thread compiles a {@link SyntheticProject} as the compile daemon does: through
+ * {@link Main} in a context of its own, on a file manager of its own, here with doclint and
+ * background output.
+ *
+ * <p>Usage: {@code VirtualThreadStress [threads [javac options...]]}; {@code ./gradlew
+ * :benchmarks:virtualThreadStress} runs it with 400 threads. Monitors only pin virtual threads
+ * before JDK 24, so that is where it finds the most.
+ */
+public final class VirtualThreadStress {
+
+  private static final int JARS = 6;
+
+  public static void main(String[] args) throws Exception {
+    int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 400;
+    List<String> options =
+        new ArrayList<>(List.of("-proc:none", "-g:none", "-Xdoclint:all", "-XDasyncOutput"));
+    if (args.length > 1) {
+      options.addAll(Arrays.asList(args).subList(1, args.length));
+    }
+
+    try (SyntheticProject project = SyntheticProject.sources(4, 10);
+        Recording recording = new Recording()) {
+      List<Path> jars = writeJars(project);
+      recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+      recording.start();
+
+      int failures = 0;
+      JavacTool tool = JavacTool.create();
+      try (JavacFileManager shared =
+              tool.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+          ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        shared.setLocationFromPaths(StandardLocation.CLASS_PATH, jars);
+        List<Future<Boolean>> results = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+          boolean share = (i % 2 == 0);
+          Path output = project.root.resolve("out" + i);
+          results.add(
+              executor.submit(
+                  () -> (!share || browse(shared)) && compile(tool, project, output, options)));
+        }
+        for (Future<Boolean> result : results) {
+          if (!result.get()) {
+            failures++;
+          }
+        }
+      }
+
+      recording.stop();
+      Path dump = Files.createTempFile(project.root, "stress", ".jfr");
+      recording.dump(dump);
+      List<RecordedEvent> pinned = new ArrayList<>();
+      for (RecordedEvent event : RecordingFile.readAllEvents(dump)) {
+        if (event.getEventType().getName().equals("jdk.VirtualThreadPinned")) {
+          pinned.add(event);
+        }
+      }
+      for (RecordedEvent event : pinned) {
+        System.err.println(event);
+      }
+      System.out.printf("%d threads, %d failed, %d pinned%n", threads, failures, pinned.size());
+      if (failures > 0 || !pinned.isEmpty()) {
+        System.exit(1);
+      }
+    }
+  }
+
+  /** Lists the shared class path and the platform classes, and fingerprints the class path. */
+  private static boolean browse(JavacFileManager fm) throws IOException {
+    Set<JavaFileObject.Kind> kinds = EnumSet.of(JavaFileObject.Kind.SOURCE);
+    int found = 0;
+    for (JavaFileObject fo : fm.list(StandardLocation.CLASS_PATH, "bench.p0", kinds, false)) {
+      found++;
+    }
+    for (JavaFileObject fo :
+        fm.list(
+            StandardLocation.PLATFORM_CLASS_PATH,
+            "java.util",
+            EnumSet.of(JavaFileObject.Kind.CLASS),
+            false)) {
+      found++;
+    }
+    return found > 0 && fm.getLocationFingerprint(StandardLocation.CLASS_PATH) != null;
+  }
+
+  private static boolean compile(
+      JavacTool tool, SyntheticProject project, Path output, List<String> options)
+      throws IOException {
+    List<String> args = new ArrayList<>(options);
+    args.add("-d");
+    args.add(Files.createDirectories(output).toString());
+    for (Path file : project.sourceFiles) {
+      args.add(file.toString());
+    }
+    StringWriter log = new StringWriter();
+    PrintWriter out = new PrintWriter(log);
+    try (JavacFileManager fm = tool.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+      Context context = new Context();
+      context.put(JavaFileManager.class, fm);
+      Main.Result result =
+          new Main("javac", out, out).compile(args.toArray(new String[0]), context);
+      if (!result.isOK()) {
+        System.err.print(log);
+      }
+      return result.isOK();
+    }
+  }
+
+  /** Writes the sources of the project into as many jars as the shared class path has. */
+  private static List<Path> writeJars(SyntheticProject project) throws IOException {
+    List<Path> jars = new ArrayList<>(JARS);
+    for (int i = 0; i < JARS; i++) {
+      Path jar = project.root.resolve("lib" + i + ".jar");
+      try (OutputStream out = Files.newOutputStream(jar);
+          JarOutputStream jarOut = new JarOutputStream(out)) {
+        for (Path file : project.sourceFiles) {
+          String name = project.sources.relativize(file).toString().replace('\\', '/');
+          jarOut.putNextEntry(new JarEntry(name));
+          jarOut.write(Files.readAllBytes(file));
+          jarOut.closeEntry();
+        }
+      }
+      jars.add(jar);
+    }
+    return jars;
+  }
+}
@@ -39,6 +39,9 @@ import java.security.AccessController;
 import java.security.CodeSource;
 import java.security.PrivilegedAction;
 import java.security.ProtectionDomain;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * @implNote This class needs to maintain JDK 8 source compatibility.
@@ -57,9 +60,11 @@ abstract class SystemImage {
 
   static SystemImage open() throws IOException {
     if (modulesImageExists) {
-      // open a .jimage and build directory structure
+      // open a .jimage and build directory structure; readers of the same file share its mapping
       final ImageReader image = ImageReader.open(moduleImageFile);
       image.getRootDirectory();
+      // deenu modify: cache decompressed resources
+      final ResourceCache resources = new ResourceCache(image);
       return new SystemImage() {
         @Override
         Node findNode(String path) throws IOException {
@@ -68,11 +73,12 @@ abstract class SystemImage {
 
         @Override
         byte[] getResource(Node node) throws IOException {
-          return image.getResource(node);
+          return resources.getResource(node);
         }
 
         @Override
         void close() throws IOException {
+          resources.clear();
           image.close();
         }
       };
@@ -82,6 +88,80 @@ abstract class SystemImage {
     return new ExplodedImage(explodedModulesDir);
   }
 
+  /**
+   * A bounded cache of the decompressed bytes of the resources read through an {@link
+   * ImageReader}. Uncompressed resources are copied straight out of the mapped image by the reader
+   * and are not worth caching, so only compressed resources are kept. The cache is weighted by
+   * resource size and evicts in LRU order once {@link #resourceCacheSize} bytes are held. It is
+   * guarded by a lock that is never held while a resource is read, so that a virtual thread
+   * waiting for it does not pin its carrier.
+   */
+  private static final class ResourceCache {
+    private final ImageReader reader;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by lock.
+    private final LinkedHashMap<String, byte[]> resources =
+        new LinkedHashMap<String, byte[]>(256, 0.75f, true);
+    private long cachedBytes;
+
+    ResourceCache(ImageReader reader) {
+      this.reader = reader;
+    }
+
+    void clear() {
+      lock.lock();
+      try {
+        resources.clear();
+        cachedBytes = 0;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    byte[] getResource(Node node) throws IOException {
+      if (resourceCacheSize <= 0 || !node.isResource() || node.compressedSize() == 0) {
+        return reader.getResource(node);
+      }
+      String name = node.getName();
+      byte[] bytes;
+      lock.lock();
+      try {
+        bytes = resources.get(name);
+      } finally {
+        lock.unlock();
+      }
+      if (bytes == null) {
+        // decompress outside the lock; a racing reader at worst decompresses twice
+        bytes = reader.getResource(node);
+        if (bytes.length > resourceCacheSize / 8) {
+          return bytes;
+        }
+        lock.lock();
+        try {
+          if (resources.put(name, bytes) == null) {
+            cachedBytes += bytes.length;
+            Iterator<byte[]> it = resources.values().iterator();
+            while (cachedBytes > resourceCacheSize && it.hasNext()) {
+              cachedBytes -= it.next().length;
+              it.remove();
+            }
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+      // callers own the returned array
+      return bytes.clone();
+    }
+  }
+
+  /**
+   * Upper bound in bytes for the decompressed resources kept by {@link ResourceCache}, set with the
+   * {@code jrtfs.resourceCacheSize} system property; zero disables the cache.
+   */
+  static final long resourceCacheSize;
+
   static final String RUNTIME_HOME;
   // "modules" jimage file Path
   static final Path moduleImageFile;
@@ -98,6 +178,15 @@ abstract class SystemImage {
     moduleImageFile = fs.getPath(RUNTIME_HOME, "lib", "modules");
     explodedModulesDir = fs.getPath(RUNTIME_HOME, "modules");
 
+    resourceCacheSize =
+        AccessController.doPrivileged(
+            new PrivilegedAction<Long>() {
+              @Override
+              public Long run() {
+                return Long.getLong("jrtfs.resourceCacheSize", 16L * 1024 * 1024);
+              }
+            });
+
     modulesImageExists =
         AccessController.doPrivileged(
             new PrivilegedAction<Boolean>() {
@@ -547,6 +547,25 @@ public enum SourceVersion {
         if (id.length() == 0) {
             return false;
         }
+        // Most names are ASCII, as are the directory names of every
+        // package walked by a file manager; check those by table.
+        char first = id.charAt(0);
+        if (first < 0x80) {
+            if ((ASCII_IDENTIFIER[first] & IDENTIFIER_START) == 0) {
+                return false;
+            }
+            int i = 1;
+            char c;
+            while (i < id.length() && (c = id.charAt(i)) < 0x80) {
+                if ((ASCII_IDENTIFIER[c] & IDENTIFIER_PART) == 0) {
+                    return false;
+                }
+                i++;
+            }
+            if (i == id.length()) {
+                return true;
+            }
+        }
         int cp = id.codePointAt(0);
         if (!Character.isJavaIdentifierStart(cp)) {
             return false;
@@ -562,6 +581,25 @@ public enum SourceVersion {
         return true;
     }
 
+    private static final byte IDENTIFIER_START = 1;
+    private static final byte IDENTIFIER_PART = 2;
+
+    /**
+     * For each ASCII character, whether {@link
+     * Character#isJavaIdentifierStart(int)} and {@link
+     * Character#isJavaIdentifierPart(int)} hold for it.
+     */
+    private static final byte[] ASCII_IDENTIFIER = new byte[0x80];
+
+    static {
+        for (char c = 0; c < 0x80; c++) {
+            if (Character.isJavaIdentifierStart(c))
+                ASCII_IDENTIFIER[c] |= IDENTIFIER_START;
+            if (Character.isJavaIdentifierPart(c))
+                ASCII_IDENTIFIER[c] |= IDENTIFIER_PART;
+        }
+    }
+
     /**
      * Returns whether or not {@code name} is a syntactically valid
      * qualified name in the latest source version.
@@ -44,33 +44,34 @@ public abstract class DocLint implements Plugin {
     public static final String XMSGS_CUSTOM_PREFIX = "-Xmsgs:";
     public static final String XCHECK_PACKAGE = "-XcheckPackage:";
 
-    private static Provider<DocLint> docLintProvider;
+    // set once no doclint service was found; the service lookup runs without a lock, so
+    // that threads creating a DocLint at once, virtual ones included, do not wait on it
+    private static volatile Provider<DocLint> docLintProvider;
 
     public abstract boolean isValidOption(String opt);
 
-    public static synchronized DocLint newDocLint() {
-        if (docLintProvider == null) {           
+    public static DocLint newDocLint() {
+        Provider<DocLint> provider = docLintProvider;
+        if (provider == null) {
             for (DocLint docLint : ServiceLoader.load(DocLint.class, ClassLoader.getSystemClassLoader())) {
                 if (docLint.getName().equals("doclint")) {
-                    return docLint;                   
+                    return docLint;
                 }
             }
-            
-            if (docLintProvider == null) {
-                docLintProvider = new Provider<>() {
-                    @Override
-                    public Class<? extends DocLint> type() {
-                        return NoDocLint.class;
-                    }
 
-                    @Override
-                    public DocLint get() {
-                        return new NoDocLint();
-                    }
-                };
-            }
+            docLintProvider = provider = new Provider<>() {
+                @Override
+                public Class<? extends DocLint> type() {
+                    return NoDocLint.class;
+                }
+
+                @Override
+                public DocLint get() {
+                    return new NoDocLint();
+                }
+            };
         }
-        return docLintProvider.get();
+        return provider.get();
     }
 
     private static class NoDocLint extends DocLint {
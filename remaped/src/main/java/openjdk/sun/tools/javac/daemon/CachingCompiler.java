@@ -0,0 +1,70 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.daemon;
+
+import java.util.Collection;
+import java.util.List;
+import javx.annotation.processing.Processor;
+import javx.tools.JavaFileObject;
+import openjdk.sun.tools.javac.file.CompileResultCache;
+import openjdk.sun.tools.javac.main.JavaCompiler;
+import openjdk.sun.tools.javac.util.Context;
+
+/**
+ * The compiler of a daemon request whose result may be cached. It is created by {@link
+ * openjdk.sun.tools.javac.main.Main} once the command line has been handled and the file manager
+ * configured by it, so the key of the result is computed from the options the compilation parsed,
+ * and it compiles only if no result is stored under that key.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class CachingCompiler extends JavaCompiler {
+
+  /** Registers the compiler of {@code context}, which looks up the result with {@code lookup}. */
+  static void preRegister(
+      Context context, CompileResultCache.Lookup lookup, List<String> commandLine) {
+    context.put(
+        compilerKey,
+        (Context.Factory<JavaCompiler>) c -> new CachingCompiler(c, lookup, commandLine));
+  }
+
+  private final CompileResultCache.Lookup lookup;
+  private final List<String> commandLine;
+
+  private CachingCompiler(
+      Context context, CompileResultCache.Lookup lookup, List<String> commandLine) {
+    super(context);
+    this.lookup = lookup;
+    this.commandLine = commandLine;
+  }
+
+  @Override
+  public void compile(
+      Collection<JavaFileObject> sourceFileObjects,
+      Collection<String> classnames,
+      Iterable<? extends Processor> processors,
+      Collection<String> addModules) {
+    if (lookup.replay(commandLine, sourceFileObjects)) {
+      return;
+    }
+    super.compile(sourceFileObjects, classnames, processors, addModules);
+  }
+}
@@ -0,0 +1,457 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.daemon;
+
+import static openjdk.sun.tools.reflection.android.AndroidSupport.isDalvik;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javx.tools.JavaCompiler;
+import javx.tools.JavaFileManager;
+import javx.tools.ToolProvider;
+import jadx.internal.opt.CommandLine;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+import openjdk.sun.tools.javac.file.CompileResultCache;
+import openjdk.sun.tools.javac.file.JavacFileManager;
+import openjdk.sun.tools.javac.file.SharedContentCache;
+import openjdk.sun.tools.javac.main.Main;
+import openjdk.sun.tools.javac.util.Context;
+
+/**
+ * A long-lived compile server that accepts javac command lines over a Unix domain socket.
+ *
+ * <p>Each request is compiled by {@link Main} in a fresh {@link Context}, so options, diagnostics
+ * and compiler state never leak from one request to the next. What survives between requests is
+ * the warm JIT, the class loading already done, the {@linkplain
+ * SharedContentCache#getSharedInstance() shared} decoded content of unchanged source files, and a
+ * pool of {@link JavacFileManager}s whose opened archives, directory indexes and platform image
+ * index are reused; each file manager is {@linkplain JavacFileManager#prepareForReuse() reset}
+ * before it goes back to the pool.
+ * Requests run concurrently, one per worker thread, each on a file manager of its own. File
+ * managers are created by the compiler that {@link ToolProvider#getSystemJavaCompiler(ClassLoader)}
+ * finds for the loader of this class.
+ *
+ * <p>Relative paths in a request are resolved against the working directory sent by the client,
+ * not against the working directory of the daemon.
+ *
+ * <p>A request runs with all the rights of the daemon's user, processors and plugins included, so
+ * only that user may connect: the socket file is made readable and writable by its owner alone,
+ * and where the platform reports the credentials of the peer, connections from any other user are
+ * closed before a request is read.
+ *
+ * <p>With a {@linkplain #setResultCache result cache}, a request whose inputs are unchanged since
+ * an earlier one is answered from the cache: its class files are written and its diagnostics
+ * printed again without compiling.
+ *
+ * <p>Usage: {@code CompileDaemon --socket <path> [--threads <n>] [--cache <dir> [--cache-size
+ * <MB>]]}. See {@link DaemonClient}.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class CompileDaemon implements Closeable {
+
+  private final Path socketPath;
+  private final ServerSocketChannel server;
+  private final UserPrincipal owner;
+  private final ExecutorService workers;
+  private final int maxIdleFileManagers;
+  private final Deque<JavacFileManager> idleFileManagers = new ConcurrentLinkedDeque<>();
+  private volatile boolean running = true;
+  private volatile CompileResultCache resultCache;
+
+  private CompileDaemon(
+      Path socketPath, ServerSocketChannel server, UserPrincipal owner, int threads) {
+    this.socketPath = socketPath;
+    this.server = server;
+    this.owner = owner;
+    this.maxIdleFileManagers = threads;
+    AtomicInteger count = new AtomicInteger();
+    this.workers =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread t = new Thread(r, "javac-daemon-" + count.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  public static void main(String[] args) {
+    Path socket = null;
+    int threads = Runtime.getRuntime().availableProcessors();
+    Path cache = null;
+    long cacheSize = CompileResultCache.DEFAULT_MAX_BYTES;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--socket" -> socket = Paths.get(args[++i]);
+          case "--threads" -> threads = Integer.parseInt(args[++i]);
+          case "--cache" -> cache = Paths.get(args[++i]);
+          case "--cache-size" -> cacheSize = Long.parseLong(args[++i]) << 20;
+          default -> throw new IllegalArgumentException(args[i]);
+        }
+      }
+    } catch (RuntimeException e) {
+      socket = null;
+    }
+    if (socket == null || threads < 1 || cacheSize < 0) {
+      System.err.println(
+          "Usage: CompileDaemon --socket <path> [--threads <n>]"
+              + " [--cache <dir> [--cache-size <MB>]]");
+      System.exit(2);
+    }
+    try (CompileDaemon daemon = start(socket, threads)) {
+      if (cache != null) {
+        daemon.setResultCache(CompileResultCache.open(cache, cacheSize));
+      }
+      System.err.println("javac daemon listening on " + socket);
+      daemon.serve();
+    } catch (IOException e) {
+      System.err.println("javac daemon: " + e.getMessage());
+      System.exit(3);
+    }
+  }
+
+  /**
+   * Binds a daemon to the given socket path. A socket file left behind by a daemon that is no
+   * longer running is replaced. The socket file is made accessible to its owner only.
+   *
+   * @param socketPath the path of the Unix domain socket to listen on
+   * @param threads the number of requests compiled concurrently
+   * @return the daemon, which starts accepting requests once {@link #serve()} is called
+   * @throws IOException if the socket cannot be bound or another daemon is listening on it
+   */
+  public static CompileDaemon start(Path socketPath, int threads) throws IOException {
+    if (isDalvik()) {
+      throw new IOException("Unix domain sockets are not supported on this runtime");
+    }
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads: " + threads);
+    }
+    UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socketPath);
+    if (Files.exists(socketPath)) {
+      boolean listening;
+      try {
+        SocketChannel.open(address).close();
+        listening = true;
+      } catch (IOException stale) {
+        listening = false;
+      }
+      if (listening) {
+        throw new IOException("a daemon is already listening on " + socketPath);
+      }
+      Files.deleteIfExists(socketPath);
+    }
+    ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    UserPrincipal owner;
+    try {
+      server.bind(address);
+      try {
+        Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+      } catch (UnsupportedOperationException e) {
+        // no POSIX permissions; access is left to those of the directory the socket is in
+      }
+      owner = Files.getOwner(socketPath);
+    } catch (IOException e) {
+      server.close();
+      Files.deleteIfExists(socketPath);
+      throw e;
+    }
+    return new CompileDaemon(socketPath, server, owner, threads);
+  }
+
+  /**
+   * Returns whether the peer of a connection runs as the user that owns the socket. A peer whose
+   * credentials cannot be determined is accepted, as only the owner can open the socket file.
+   */
+  private boolean isOwner(SocketChannel channel) throws IOException {
+    if (!channel.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED)) {
+      return true;
+    }
+    UnixDomainPrincipal peer = channel.getOption(ExtendedSocketOptions.SO_PEERCRED);
+    return peer.user().equals(owner);
+  }
+
+  /**
+   * Sets the cache that the results of requests are looked up in and stored to.
+   *
+   * @param cache the cache, or {@code null} to compile every request
+   */
+  public void setResultCache(CompileResultCache cache) {
+    this.resultCache = cache;
+  }
+
+  /**
+   * Accepts and dispatches requests until the daemon is shut down, either by a client request or
+   * by {@link #close()}.
+   *
+   * @throws IOException if accepting a connection fails
+   */
+  public void serve() throws IOException {
+    while (running) {
+      SocketChannel channel;
+      try {
+        channel = server.accept();
+      } catch (ClosedChannelException e) {
+        if (running) throw e;
+        break;
+      }
+      try {
+        if (!isOwner(channel)) {
+          channel.close();
+          continue;
+        }
+      } catch (IOException e) {
+        channel.close();
+        continue;
+      }
+      try {
+        workers.execute(() -> handle(channel));
+      } catch (RejectedExecutionException e) {
+        channel.close();
+      }
+    }
+  }
+
+  /**
+   * Compiles one command line in this daemon, as a request from a client would.
+   *
+   * @param workingDirectory the directory relative paths in {@code args} are resolved against
+   * @param args the javac command line, which may contain {@code @}argfiles
+   * @param out the writer for normal output
+   * @param err the writer for diagnostics
+   * @return the javac exit code
+   */
+  public int compile(Path workingDirectory, List<String> args, PrintWriter out, PrintWriter err) {
+    String[] argv;
+    try {
+      argv = resolveArguments(workingDirectory, args).toArray(new String[0]);
+    } catch (IOException e) {
+      err.println("javac: " + e.getMessage());
+      err.flush();
+      return Main.Result.CMDERR.exitCode;
+    }
+
+    JavacFileManager fileManager = idleFileManagers.pollFirst();
+    boolean reusable = false;
+    try {
+      if (fileManager == null) {
+        fileManager = newFileManager();
+      }
+      fileManager.setPathFactory((first, more) -> workingDirectory.resolve(Paths.get(first, more)));
+      fileManager.setContentCache(SharedContentCache.getSharedInstance());
+      CompileResultCache cache = resultCache;
+      int exitCode;
+      if (cache == null) {
+        exitCode = compile(fileManager, argv, out, err, null);
+      } else {
+        JavacFileManager fm = fileManager;
+        exitCode = cache.compile(fm, out, err, (o, e, lookup) -> compile(fm, argv, o, e, lookup));
+      }
+      reusable = true;
+      return exitCode;
+    } catch (RuntimeException | Error e) {
+      e.printStackTrace(err);
+      return Main.Result.ABNORMAL.exitCode;
+    } finally {
+      out.flush();
+      err.flush();
+      if (fileManager != null) {
+        recycle(fileManager, reusable);
+      }
+    }
+  }
+
+  private static int compile(
+      JavacFileManager fileManager,
+      String[] argv,
+      PrintWriter out,
+      PrintWriter err,
+      CompileResultCache.Lookup lookup) {
+    Context context = new Context();
+    context.put(JavaFileManager.class, fileManager);
+    if (lookup != null) {
+      CachingCompiler.preRegister(context, lookup, Arrays.asList(argv));
+    }
+    return new Main("javac", out, err).compile(argv, context).exitCode;
+  }
+
+  private JavacFileManager newFileManager() {
+    JavaCompiler compiler =
+        ToolProvider.getSystemJavaCompiler(CompileDaemon.class.getClassLoader());
+    if (compiler != null
+        && compiler.getStandardFileManager(null, null, null) instanceof JavacFileManager fm) {
+      return fm;
+    }
+    return new JavacFileManager(new Context(), false, null);
+  }
+
+  private void recycle(JavacFileManager fileManager, boolean reusable) {
+    try {
+      if (reusable && running && idleFileManagers.size() < maxIdleFileManagers) {
+        fileManager.prepareForReuse();
+        idleFileManagers.addFirst(fileManager);
+      } else {
+        fileManager.close();
+      }
+    } catch (IOException | RuntimeException e) {
+      try {
+        fileManager.close();
+      } catch (IOException ignore) {
+      }
+    }
+  }
+
+  /**
+   * Makes a command line independent of the daemon's working directory: argfiles are expanded
+   * relative to the client's working directory, as are the source files they name. Options that
+   * take paths are resolved later through the file manager's path factory.
+   */
+  static List<String> resolveArguments(Path workingDirectory, List<String> args)
+      throws IOException {
+    List<String> withArgFiles = new ArrayList<>(args.size());
+    for (String arg : args) {
+      if (arg.length() > 1 && arg.startsWith("@")) {
+        arg = "@" + resolve(workingDirectory, arg.substring(1));
+      }
+      withArgFiles.add(arg);
+    }
+    List<String> expanded = CommandLine.parse(withArgFiles);
+    List<String> resolved = new ArrayList<>(expanded.size());
+    for (String arg : expanded) {
+      if (!arg.startsWith("-") && arg.endsWith(".java")) {
+        arg = resolve(workingDirectory, arg);
+      }
+      resolved.add(arg);
+    }
+    return resolved;
+  }
+
+  private static String resolve(Path workingDirectory, String path) {
+    try {
+      return workingDirectory.resolve(path).toString();
+    } catch (InvalidPathException e) {
+      return path;
+    }
+  }
+
+  private void handle(SocketChannel channel) {
+    try (channel;
+        DataInputStream in =
+            new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+      int version = in.readInt();
+      if (version != DaemonProtocol.VERSION) {
+        String message = "javac daemon: unsupported protocol version " + version + "\n";
+        DaemonProtocol.writeFrame(
+            out, DaemonProtocol.STDERR, message.getBytes(StandardCharsets.UTF_8));
+        DaemonProtocol.writeExit(out, Main.Result.CMDERR.exitCode);
+        return;
+      }
+      byte kind = in.readByte();
+      Path workingDirectory = Paths.get(DaemonProtocol.readString(in));
+      int argc = in.readInt();
+      List<String> args = new ArrayList<>(Math.max(0, argc));
+      for (int i = 0; i < argc; i++) {
+        args.add(DaemonProtocol.readString(in));
+      }
+      switch (kind) {
+        case DaemonProtocol.PING -> DaemonProtocol.writeExit(out, Main.Result.OK.exitCode);
+        case DaemonProtocol.SHUTDOWN -> {
+          DaemonProtocol.writeExit(out, Main.Result.OK.exitCode);
+          shutdown();
+        }
+        case DaemonProtocol.COMPILE -> {
+          PrintWriter stdout =
+              new PrintWriter(new DaemonProtocol.FrameWriter(out, DaemonProtocol.STDOUT));
+          PrintWriter stderr =
+              new PrintWriter(new DaemonProtocol.FrameWriter(out, DaemonProtocol.STDERR));
+          int exitCode = compile(workingDirectory, args, stdout, stderr);
+          DaemonProtocol.writeExit(out, exitCode);
+        }
+        default -> throw new IOException("unknown request kind: " + kind);
+      }
+    } catch (IOException | InvalidPathException e) {
+      // the client went away or is not speaking the protocol; there is no one to report to
+    }
+  }
+
+  private void shutdown() {
+    running = false;
+    try {
+      server.close();
+    } catch (IOException ignore) {
+    }
+  }
+
+  /**
+   * Stops accepting requests, waits briefly for the ones in progress, and releases the socket and
+   * the pooled file managers.
+   */
+  @Override
+  public void close() throws IOException {
+    shutdown();
+    workers.shutdown();
+    try {
+      workers.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    JavacFileManager fileManager;
+    while ((fileManager = idleFileManagers.pollFirst()) != null) {
+      try {
+        fileManager.close();
+      } catch (IOException ignore) {
+      }
+    }
+    Files.deleteIfExists(socketPath);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A thin command line front end for {@link CompileDaemon}. It forwards its arguments and working
+ * directory to the daemon, copies the compiler output to its own standard streams and exits with
+ * the javac exit code.
+ *
+ * <p>Usage: {@code DaemonClient [--socket <path>] [--ping | --shutdown | <javac arguments>]}. The
+ * socket defaults to the value of the {@code JAVAC_DAEMON_SOCKET} environment variable.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class DaemonClient {
+
+  /** Exit code used when the daemon cannot be reached, matching javac's system error. */
+  private static final int EXIT_SYSERR = 3;
+
+  private DaemonClient() {}
+
+  public static void main(String[] args) {
+    System.exit(run(args));
+  }
+
+  static int run(String[] args) {
+    String socket = System.getenv("JAVAC_DAEMON_SOCKET");
+    byte kind = DaemonProtocol.COMPILE;
+    int first = 0;
+    if (args.length >= 2 && args[0].equals("--socket")) {
+      socket = args[1];
+      first = 2;
+    }
+    if (args.length == first + 1 && args[first].equals("--ping")) {
+      kind = DaemonProtocol.PING;
+      first++;
+    } else if (args.length == first + 1 && args[first].equals("--shutdown")) {
+      kind = DaemonProtocol.SHUTDOWN;
+      first++;
+    }
+    if (socket == null) {
+      System.err.println(
+          "Usage: DaemonClient [--socket <path>] [--ping | --shutdown | <javac arguments>]");
+      return 2;
+    }
+    try {
+      return send(Paths.get(socket), kind, Paths.get("").toAbsolutePath(),
+          Arrays.asList(args).subList(first, args.length), System.out, System.err);
+    } catch (IOException e) {
+      System.err.println("javac daemon: " + socket + ": " + e.getMessage());
+      return EXIT_SYSERR;
+    }
+  }
+
+  /**
+   * Sends a compile request to the daemon listening on {@code socket}.
+   *
+   * @param socket the daemon socket
+   * @param workingDirectory the directory relative paths in {@code args} are resolved against
+   * @param args the javac command line
+   * @param out receives the compiler's normal output
+   * @param err receives the compiler's diagnostics
+   * @return the javac exit code
+   * @throws IOException if the daemon cannot be reached or the connection fails
+   */
+  public static int compile(Path socket, Path workingDirectory, List<String> args,
+      OutputStream out, OutputStream err) throws IOException {
+    return send(socket, DaemonProtocol.COMPILE, workingDirectory, args, out, err);
+  }
+
+  private static int send(Path socket, byte kind, Path workingDirectory, List<String> args,
+      OutputStream out, OutputStream err) throws IOException {
+    try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+      DataOutputStream request =
+          new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+      request.writeInt(DaemonProtocol.VERSION);
+      request.writeByte(kind);
+      DaemonProtocol.writeString(request, workingDirectory.toAbsolutePath().toString());
+      request.writeInt(args.size());
+      for (String arg : args) {
+        DaemonProtocol.writeString(request, arg);
+      }
+      request.flush();
+
+      DataInputStream response =
+          new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      Integer exitCode;
+      do {
+        exitCode = DaemonProtocol.readFrame(response, out, err);
+      } while (exitCode == null);
+      return exitCode;
+    }
+  }
+}
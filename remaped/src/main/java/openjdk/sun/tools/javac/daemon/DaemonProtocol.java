@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The wire format spoken between {@link DaemonClient} and {@link CompileDaemon}.
+ *
+ * <p>A client opens one connection per request and sends the protocol {@link #VERSION}, a request
+ * kind ({@link #COMPILE}, {@link #PING} or {@link #SHUTDOWN}), its working directory and the
+ * command line arguments. Strings are sent as a length-prefixed UTF-8 byte sequence so that
+ * arguments are not limited to the 64K of {@link DataOutputStream#writeUTF}.
+ *
+ * <p>The daemon answers with a sequence of frames: a tag byte followed by an {@code int} payload.
+ * {@link #STDOUT} and {@link #STDERR} frames carry a length-prefixed chunk of output in UTF-8, and
+ * are streamed as the compiler flushes its writers; the final {@link #EXIT} frame carries the exit
+ * code of the request.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class DaemonProtocol {
+
+  static final int VERSION = 1;
+
+  // request kinds
+  static final byte COMPILE = 'C';
+  static final byte PING = 'P';
+  static final byte SHUTDOWN = 'S';
+
+  // response frame tags
+  static final byte STDOUT = 'O';
+  static final byte STDERR = 'E';
+  static final byte EXIT = 'X';
+
+  /** Upper bound on a single string, guarding against a corrupt or foreign peer. */
+  private static final int MAX_STRING_BYTES = 64 * 1024 * 1024;
+
+  private DaemonProtocol() {}
+
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_BYTES) {
+      throw new IOException("bad string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  static void writeFrame(DataOutputStream out, byte tag, byte[] bytes) throws IOException {
+    synchronized (out) {
+      out.writeByte(tag);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      out.flush();
+    }
+  }
+
+  static void writeExit(DataOutputStream out, int exitCode) throws IOException {
+    synchronized (out) {
+      out.writeByte(EXIT);
+      out.writeInt(exitCode);
+      out.flush();
+    }
+  }
+
+  /**
+   * Reads one response frame, copying output frames to the given streams.
+   *
+   * @return the exit code if this was the final frame, otherwise {@code null}
+   */
+  static Integer readFrame(DataInputStream in, OutputStream stdout,
+      OutputStream stderr) throws IOException {
+    int tag = in.read();
+    if (tag < 0) {
+      throw new EOFException("daemon closed the connection");
+    }
+    switch (tag) {
+      case EXIT:
+        return in.readInt();
+      case STDOUT:
+      case STDERR:
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+          throw new IOException("bad frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        OutputStream target = (tag == STDOUT) ? stdout : stderr;
+        target.write(bytes);
+        target.flush();
+        return null;
+      default:
+        throw new IOException("unexpected frame: " + tag);
+    }
+  }
+
+  /**
+   * A writer that sends everything written to it as {@code tag} frames each time it is flushed.
+   */
+  static final class FrameWriter extends Writer {
+    private final DataOutputStream out;
+    private final byte tag;
+    private final StringBuilder buffer = new StringBuilder();
+
+    FrameWriter(DataOutputStream out, byte tag) {
+      this.out = out;
+      this.tag = tag;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      synchronized (buffer) {
+        buffer.append(cbuf, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      String chunk;
+      synchronized (buffer) {
+        if (buffer.length() == 0) {
+          return;
+        }
+        chunk = buffer.toString();
+        buffer.setLength(0);
+      }
+      writeFrame(out, tag, chunk.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes completed output files on a few background threads, so that the compiler thread does not
+ * wait for the disk while generating code. Files are taken from the queue in batches, sorted so
+ * that each output directory is created once, and written in order of their paths.
+ *
+ * <p>The bytes waiting to be written are bounded: a submission that would exceed the bound waits
+ * until the writers have caught up. {@link #finish()} waits for every submitted file and returns
+ * the failures, which the file manager reports before the compilation decides its result; {@link
+ * #takeFailures()} returns the failures so far without waiting.
+ *
+ * <p>Writer threads are started on demand, up to the given number, and stop once they have been
+ * idle for a short while, so an idle compiler holds no threads.
+ *
+ * <p>Waiting is done on a {@link ReentrantLock} rather than a monitor, so that compilations run
+ * on virtual threads release their carrier while they wait for the writers.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class AsyncOutputWriter {
+
+  /** The most bytes submitted but not yet written before submitting blocks. */
+  private static final long MAX_PENDING_BYTES = 16L << 20;
+
+  /** The most files a writer takes from the queue at once. */
+  private static final int MAX_BATCH = 64;
+
+  /** How long an idle writer thread waits for more output before it stops. */
+  private static final long KEEP_ALIVE_MILLIS = 200;
+
+  /** A file waiting to be written. */
+  private record Write(Path path, byte[] bytes, int length, boolean skipUnchanged) {}
+
+  /** A file that could not be written, with the exception the write failed with. */
+  record Failure(Path path, Throwable exception) {}
+
+  private final JavacFileManager owner;
+  private final int threads;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Signalled when work is queued or a write completes. */
+  private final Condition changed = lock.newCondition();
+
+  // All guarded by lock.
+  private final ArrayDeque<Write> queue = new ArrayDeque<>();
+  private final Map<Path, Integer> pending = new HashMap<>();
+  private final Set<Path> createdDirectories = new HashSet<>();
+  private final List<Failure> failures = new ArrayList<>();
+  private long pendingBytes;
+  private int running;
+  private int idle;
+
+  AsyncOutputWriter(JavacFileManager owner, int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads: " + threads);
+    }
+    this.owner = owner;
+    this.threads = threads;
+  }
+
+  /**
+   * Queues {@code length} bytes of {@code bytes} to be written to {@code path}. The array is
+   * owned by the writer from now on. Waits while too many bytes are pending, and for an earlier
+   * write of the same path, so that writes of one file stay in order.
+   */
+  void submit(Path path, byte[] bytes, int length, boolean skipUnchanged)
+      throws InterruptedIOException {
+    lock.lock();
+    try {
+      while (pending.containsKey(path)
+          || (pendingBytes > 0 && pendingBytes + length > MAX_PENDING_BYTES)) {
+        changed.await();
+      }
+      queue.add(new Write(path, bytes, length, skipUnchanged));
+      pending.merge(path, 1, Integer::sum);
+      pendingBytes += length;
+      if (idle > 0) {
+        changed.signalAll();
+      } else if (running < threads) {
+        running++;
+        Thread t = new Thread(this::run, "javac-output-writer");
+        t.setDaemon(true);
+        t.start();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted writing " + path);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Waits until a pending write of {@code path}, if any, has completed. */
+  void await(Path path) throws InterruptedIOException {
+    lock.lock();
+    try {
+      while (pending.containsKey(path)) {
+        changed.await();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for " + path);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until every submitted file has been written and returns the files that could not be
+   * written since the last call.
+   */
+  List<Failure> finish() throws InterruptedIOException {
+    lock.lock();
+    try {
+      while (!pending.isEmpty()) {
+        changed.await();
+      }
+      // directories may be removed between compilations
+      createdDirectories.clear();
+      return takeFailures();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted waiting for output");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the files that could not be written since the last call, without waiting for the
+   * writes still pending.
+   */
+  List<Failure> takeFailures() {
+    lock.lock();
+    try {
+      if (failures.isEmpty()) {
+        return List.of();
+      }
+      List<Failure> result = List.copyOf(failures);
+      failures.clear();
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void run() {
+    List<Write> batch = new ArrayList<>(MAX_BATCH);
+    while (true) {
+      lock.lock();
+      try {
+        if (queue.isEmpty()) {
+          idle++;
+          try {
+            changed.await(KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException e) {
+            // stop, unless there is more to do
+          } finally {
+            idle--;
+          }
+          if (queue.isEmpty()) {
+            running--;
+            return;
+          }
+        }
+        while (batch.size() < MAX_BATCH && !queue.isEmpty()) {
+          batch.add(queue.remove());
+        }
+      } finally {
+        lock.unlock();
+      }
+      batch.sort(Comparator.comparing(Write::path));
+      for (Write w : batch) {
+        // whatever happens, the write must stop being pending, or finish() waits forever
+        Throwable failure = null;
+        try {
+          if (write(w) && w.skipUnchanged()) {
+            owner.outputChanged(w.path());
+          }
+        } catch (Throwable e) {
+          failure = e;
+        } finally {
+          lock.lock();
+          try {
+            if (failure != null) {
+              failures.add(new Failure(w.path(), failure));
+            }
+            pending.computeIfPresent(w.path(), (p, n) -> n == 1 ? null : n - 1);
+            pendingBytes -= w.length();
+            changed.signalAll();
+          } finally {
+            lock.unlock();
+          }
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  /** Writes one file, returning whether it was written rather than skipped as unchanged. */
+  private boolean write(Write w) throws IOException {
+    Path path = w.path();
+    if (w.skipUnchanged() && BufferedOutputFileObject.hasContent(path, w.bytes(), w.length())) {
+      return false;
+    }
+    Path dir = path.getParent();
+    if (dir != null) {
+      boolean create;
+      lock.lock();
+      try {
+        create = createdDirectories.add(dir);
+      } finally {
+        lock.unlock();
+      }
+      if (create) {
+        try {
+          Files.createDirectories(dir);
+        } catch (IOException e) {
+          lock.lock();
+          try {
+            createdDirectories.remove(dir);
+          } finally {
+            lock.unlock();
+          }
+          throw e;
+        }
+      }
+    }
+    try (OutputStream out = Files.newOutputStream(path)) {
+      out.write(w.bytes(), 0, w.length());
+    } catch (NoSuchFileException e) {
+      if (dir == null) throw e;
+      // another writer is still creating the directory
+      Files.createDirectories(dir);
+      try (OutputStream out = Files.newOutputStream(path)) {
+        out.write(w.bytes(), 0, w.length());
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An output file whose content is collected in memory and committed when the stream is closed.
+ * Committing either writes the file right away or hands it to the file manager's background
+ * {@link AsyncOutputWriter}. When unchanged outputs are skipped, the file is only written if its
+ * new content differs from the file on disk, so that an unchanged output keeps its timestamp and
+ * does not trigger the build steps that depend on it.
+ *
+ * <p>Everything but writing is delegated to the file object the file manager would otherwise have
+ * returned. Reading waits for a pending background write of the file to complete.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class BufferedOutputFileObject extends PathFileObject {
+
+  private final JavacFileManager owner;
+  private final PathFileObject delegate;
+  private final AsyncOutputWriter writer;
+  private final boolean skipUnchanged;
+
+  /**
+   * @param writer the background writer to commit to, or {@code null} to write on close
+   * @param skipUnchanged whether to leave the file untouched if its content is unchanged
+   */
+  BufferedOutputFileObject(
+      JavacFileManager fileManager,
+      PathFileObject delegate,
+      AsyncOutputWriter writer,
+      boolean skipUnchanged) {
+    super(fileManager, delegate.getPath());
+    this.owner = fileManager;
+    this.delegate = delegate;
+    this.writer = writer;
+    this.skipUnchanged = skipUnchanged;
+  }
+
+  @Override
+  public String getName() {
+    return delegate.getName();
+  }
+
+  @Override
+  public String getShortName() {
+    return delegate.getShortName();
+  }
+
+  @Override
+  String inferBinaryName(Iterable<? extends Path> paths) {
+    return delegate.inferBinaryName(paths);
+  }
+
+  @Override
+  PathFileObject getSibling(String baseName) {
+    return delegate.getSibling(baseName);
+  }
+
+  @Override
+  public Kind getKind() {
+    return delegate.getKind();
+  }
+
+  @Override
+  public boolean isNameCompatible(String simpleName, Kind kind) {
+    return delegate.isNameCompatible(simpleName, kind);
+  }
+
+  @Override
+  public URI toUri() {
+    return delegate.toUri();
+  }
+
+  @Override
+  public OutputStream openOutputStream() throws IOException {
+    fileManager.updateLastUsedTime();
+    fileManager.flushCache(this);
+    return new ByteArrayOutputStream() {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (writer != null) {
+          writer.submit(path, buf, count, skipUnchanged);
+          return;
+        }
+        if (skipUnchanged && hasContent(path, buf, count)) {
+          return;
+        }
+        try (OutputStream out = delegate.openOutputStream()) {
+          out.write(buf, 0, count);
+        }
+        if (skipUnchanged) {
+          owner.outputChanged(path);
+        }
+      }
+    };
+  }
+
+  @Override
+  public Writer openWriter() throws IOException {
+    String encodingName = fileManager.getEncodingName();
+    Charset charset =
+        (encodingName == null) ? Charset.defaultCharset() : Charset.forName(encodingName);
+    return new OutputStreamWriter(openOutputStream(), charset);
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    awaitWrite();
+    return super.openInputStream();
+  }
+
+  @Override
+  public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+    awaitWrite();
+    return super.getCharContent(ignoreEncodingErrors);
+  }
+
+  @Override
+  public long getLastModified() {
+    try {
+      awaitWrite();
+    } catch (IOException e) {
+      return 0;
+    }
+    return super.getLastModified();
+  }
+
+  @Override
+  public boolean delete() {
+    try {
+      awaitWrite();
+    } catch (IOException e) {
+      return false;
+    }
+    return super.delete();
+  }
+
+  private void awaitWrite() throws IOException {
+    if (writer != null) {
+      writer.await(path);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return delegate.toString();
+  }
+
+  /** Whether {@code file} exists and holds exactly the first {@code length} bytes of {@code b}. */
+  static boolean hasContent(Path file, byte[] b, int length) {
+    try {
+      if (Files.size(file) != length) {
+        return false;
+      }
+      try (InputStream in = Files.newInputStream(file)) {
+        byte[] buf = new byte[Math.min(length, 8192) + 1];
+        int pos = 0;
+        int n;
+        while ((n = in.read(buf)) > 0) {
+          if (pos + n > length) {
+            return false;
+          }
+          for (int i = 0; i < n; i++) {
+            if (buf[i] != b[pos + i]) return false;
+          }
+          pos += n;
+        }
+        return pos == length;
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,712 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javx.tools.StandardLocation.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import javx.tools.ForwardingJavaFileObject;
+import javx.tools.JavaFileManager.Location;
+import javx.tools.JavaFileObject;
+import javx.tools.StandardLocation;
+import openjdk.sun.tools.javac.file.RelativePath.RelativeFile;
+import openjdk.sun.tools.javac.main.JavaCompiler;
+
+/**
+ * An on-disk store of compilation results, keyed by everything a compilation reads, so that a
+ * compilation whose inputs have not changed need not be run again. A result is the files written
+ * to the output locations of the file manager, the text written to the compiler's output and
+ * diagnostic writers, and the exit code. A hit writes the outputs through the file manager and
+ * the text to the writers, in the order it was first written, as the compilation would have.
+ *
+ * <p>The {@linkplain #key key} of a compilation digests the compiler version, the command line,
+ * the content of the source files it names and the {@linkplain
+ * JavacFileManager#getLocationFingerprint fingerprint} of each search path, so it changes with any
+ * file that the compilation could have found there. A compilation that uses {@linkplain
+ * JavacFileManager#putMemorySource in-memory sources}, or that writes class files next to their
+ * sources instead of to an output directory, has no key and is always run. Only successful
+ * compilations are stored.
+ *
+ * <p>Entries are files named by their key, written atomically, so any number of processes can
+ * share a cache directory. When the entries exceed the size bound of the cache, the least recently
+ * used are deleted. Annotation processors are assumed to depend on nothing but the compilation's
+ * inputs.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class CompileResultCache {
+
+  /** The default bound on the total size of the entries of a cache. */
+  public static final long DEFAULT_MAX_BYTES = 512L << 20;
+
+  private static final int MAGIC = 0x4a435243; // "JCRC"
+  private static final int FORMAT = 2;
+  private static final String SUFFIX = ".result";
+
+  /** The locations a compilation reads from, besides the sources it names. */
+  private static final StandardLocation[] INPUT_LOCATIONS = {
+    PLATFORM_CLASS_PATH,
+    SYSTEM_MODULES,
+    UPGRADE_MODULE_PATH,
+    CLASS_PATH,
+    SOURCE_PATH,
+    MODULE_PATH,
+    MODULE_SOURCE_PATH,
+    PATCH_MODULE_PATH,
+    ANNOTATION_PROCESSOR_PATH,
+    ANNOTATION_PROCESSOR_MODULE_PATH
+  };
+
+  private static final StandardLocation[] OUTPUT_LOCATIONS = {
+    CLASS_OUTPUT, SOURCE_OUTPUT, NATIVE_HEADER_OUTPUT
+  };
+
+  /** A compilation whose result may be in the cache. */
+  @FunctionalInterface
+  public interface Compilation {
+    /**
+     * Runs the compilation, writing to the given writers rather than to the ones passed to
+     * {@link CompileResultCache#compile}. Once it has handled its options, and before it compiles
+     * anything, the compilation calls {@link Lookup#replay} and compiles only if that returns
+     * {@code false}.
+     *
+     * @return the exit code of the compilation; {@code 0} means success
+     */
+    int run(PrintWriter out, PrintWriter err, Lookup lookup);
+  }
+
+  private final Path directory;
+  private final long maxBytes;
+
+  // Guarded by this.
+  private long storedBytes = -1;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  private CompileResultCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Opens the cache in a directory, creating the directory if needed.
+   *
+   * @param directory the directory holding the entries
+   * @param maxBytes the bound on the total size of the entries
+   * @return the cache
+   * @throws IOException if the directory cannot be created
+   */
+  public static CompileResultCache open(Path directory, long maxBytes) throws IOException {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes: " + maxBytes);
+    }
+    Files.createDirectories(directory);
+    return new CompileResultCache(directory.toAbsolutePath(), maxBytes);
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /** The compilations whose result was replayed from this cache. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** The compilations with a key that were not in this cache and were run. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** The entries this cache deleted to stay within its size bound. */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /**
+   * Computes the key of a compilation. The file manager must already have been configured with
+   * the options of the compilation, so that its search paths are the ones the compilation will
+   * use.
+   *
+   * @param fileManager the file manager of the compilation
+   * @param options the command line of the compilation, or its options
+   * @param sources the source files named by the compilation
+   * @return the key, or {@code null} if the result of the compilation cannot be cached
+   * @throws IOException if a source file or search path cannot be read
+   */
+  public String key(
+      JavacFileManager fileManager,
+      Iterable<String> options,
+      Iterable<? extends JavaFileObject> sources)
+      throws IOException {
+    if (fileManager.memoryOverlay.hasSources()
+        || fileManager.getLocationAsPaths(CLASS_OUTPUT) == null) {
+      return null;
+    }
+    MessageDigest md = Fingerprints.digest();
+    update(md, "javac result " + FORMAT);
+    update(md, JavaCompiler.fullVersion());
+    for (String option : options) {
+      update(md, option);
+    }
+    update(md, "");
+    for (JavaFileObject source : sources) {
+      update(md, source.toUri().toString());
+      MessageDigest content = Fingerprints.digest();
+      try (InputStream in = source.openInputStream()) {
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+          content.update(buf, 0, n);
+        }
+      }
+      md.update(content.digest());
+    }
+    try {
+      for (StandardLocation location : INPUT_LOCATIONS) {
+        if (!fileManager.hasLocation(location)) {
+          continue;
+        }
+        if (location.isModuleOrientedLocation()) {
+          for (Set<Location> modules : fileManager.listLocationsForModules(location)) {
+            // the modules of a set are in no particular order, which must not change the key
+            Map<String, Location> byName = new TreeMap<>();
+            for (Location module : modules) {
+              byName.put(String.valueOf(fileManager.inferModuleName(module)), module);
+            }
+            for (Map.Entry<String, Location> module : byName.entrySet()) {
+              update(md, module.getKey());
+              update(md, fileManager.getLocationFingerprint(module.getValue()));
+            }
+          }
+        } else {
+          update(md, fileManager.getLocationFingerprint(location));
+        }
+      }
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      // a location that cannot be listed as paths, as from a custom file system provider
+      return null;
+    }
+    return Fingerprints.toHex(md.digest());
+  }
+
+  private static void update(MessageDigest md, String s) {
+    md.update(String.valueOf(s).getBytes(UTF_8));
+    md.update((byte) 0);
+  }
+
+  /**
+   * Runs a compilation, which replays its stored result or compiles and has its result stored.
+   *
+   * @param fileManager the file manager the compilation writes its outputs to
+   * @param out the writer for the normal output of the compilation
+   * @param err the writer for the diagnostics of the compilation
+   * @param compilation the compilation
+   * @return the exit code of the compilation
+   */
+  public int compile(
+      JavacFileManager fileManager, PrintWriter out, PrintWriter err, Compilation compilation) {
+    Transcript transcript = new Transcript();
+    PrintWriter teeOut = new PrintWriter(transcript.tee(out, false));
+    PrintWriter teeErr = new PrintWriter(transcript.tee(err, true));
+    Lookup lookup = new Lookup(fileManager, transcript, teeOut, teeErr);
+    int exitCode;
+    try {
+      exitCode = compilation.run(teeOut, teeErr, lookup);
+    } finally {
+      fileManager.outputRecording = null;
+      teeOut.flush();
+      teeErr.flush();
+    }
+    Recording recording = lookup.recording;
+    if (recording != null && exitCode == 0 && recording.isComplete()) {
+      store(
+          lookup.key,
+          new Result(exitCode, transcript.segments(lookup.mark), recording.outputs()));
+    }
+    return exitCode;
+  }
+
+  /**
+   * The lookup of the result of a compilation, made by the compilation itself once its options
+   * have been handled, so that the key is computed from the options and search paths that the
+   * compilation uses. The text the compilation wrote before the lookup, such as warnings about
+   * its options, is written again by the compilation on a hit, so it is not part of the result.
+   */
+  public final class Lookup {
+    private final JavacFileManager fileManager;
+    private final Transcript transcript;
+    private final PrintWriter out;
+    private final PrintWriter err;
+    private boolean lookedUp;
+    private String key;
+    private int mark;
+    private Recording recording;
+
+    private Lookup(
+        JavacFileManager fileManager, Transcript transcript, PrintWriter out, PrintWriter err) {
+      this.fileManager = fileManager;
+      this.transcript = transcript;
+      this.out = out;
+      this.err = err;
+    }
+
+    /**
+     * Replays the stored result of the compilation if there is one, and otherwise records its
+     * outputs so that its result can be stored. The file manager must have been configured with
+     * the options of the compilation.
+     *
+     * @param options the command line of the compilation, or its options
+     * @param sources the source files named by the compilation
+     * @return whether the result was replayed, in which case the compilation must not compile
+     */
+    public boolean replay(Iterable<String> options, Iterable<? extends JavaFileObject> sources) {
+      if (lookedUp) {
+        throw new IllegalStateException("already looked up");
+      }
+      lookedUp = true;
+      try {
+        key = key(fileManager, options, sources);
+      } catch (IOException e) {
+        // left for the compilation to report
+      }
+      if (key == null) {
+        return false;
+      }
+      mark = transcript.mark();
+      Result result = load(key);
+      if (result != null) {
+        try {
+          result.replay(fileManager, out, err);
+          synchronized (CompileResultCache.this) {
+            hits++;
+          }
+          return true;
+        } catch (IOException | IllegalArgumentException e) {
+          // outputs that can no longer be written: compiling will report why
+        }
+      }
+      synchronized (CompileResultCache.this) {
+        misses++;
+      }
+      recording = new Recording(fileManager);
+      fileManager.outputRecording = recording;
+      return false;
+    }
+  }
+
+  private Path entry(String key) {
+    return directory.resolve(key.substring(0, 2)).resolve(key + SUFFIX);
+  }
+
+  private Result load(String key) {
+    Path file = entry(key);
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file);
+    } catch (IOException e) {
+      return null;
+    }
+    try {
+      Result result = Result.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+      try {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+      } catch (IOException ignore) {
+        // the entry is merely more likely to be evicted
+      }
+      return result;
+    } catch (IOException | RuntimeException e) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException ignore) {
+      }
+      return null;
+    }
+  }
+
+  private void store(String key, Result result) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      result.write(out);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    if (bytes.size() > maxBytes / 2) {
+      return;
+    }
+    Path file = entry(key);
+    Path tmp = null;
+    try {
+      Files.createDirectories(file.getParent());
+      tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+        bytes.writeTo(out);
+      }
+      try {
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmp = null;
+    } catch (IOException e) {
+      // a cache that cannot be written to is only a slower cache
+      return;
+    } finally {
+      if (tmp != null) {
+        try {
+          Files.deleteIfExists(tmp);
+        } catch (IOException ignore) {
+        }
+      }
+    }
+    trim(bytes.size());
+  }
+
+  /** Deletes the least recently used entries once the entries exceed the bound. */
+  private synchronized void trim(long added) {
+    if (storedBytes >= 0) {
+      storedBytes += added;
+      if (storedBytes <= maxBytes) {
+        return;
+      }
+    }
+    record Stored(Path file, long size, long lastUsed) {}
+    List<Stored> stored = new ArrayList<>();
+    try (Stream<Path> files = Files.walk(directory, 2)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (!file.getFileName().toString().endsWith(SUFFIX)) continue;
+        try {
+          stored.add(
+              new Stored(file, Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+        } catch (NoSuchFileException e) {
+          // deleted by another process sharing the directory
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      storedBytes = -1;
+      return;
+    }
+    long total = 0;
+    for (Stored s : stored) {
+      total += s.size();
+    }
+    stored.sort(Comparator.comparingLong(Stored::lastUsed));
+    for (int i = 0; i < stored.size() && total > maxBytes; i++) {
+      try {
+        Files.deleteIfExists(stored.get(i).file());
+        total -= stored.get(i).size();
+        evictions++;
+      } catch (IOException ignore) {
+      }
+    }
+    storedBytes = total;
+  }
+
+  /** Deletes every entry. */
+  public synchronized void clear() throws IOException {
+    try (Stream<Path> files = Files.walk(directory, 2)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        if (file.getFileName().toString().endsWith(SUFFIX)) {
+          Files.deleteIfExists(file);
+        }
+      }
+    }
+    storedBytes = 0;
+    hits = misses = evictions = 0;
+  }
+
+  /** Encodes an output location of a file manager as a string that outlives it. */
+  private static String describe(JavacFileManager fileManager, Location location)
+      throws IOException {
+    if (location instanceof StandardLocation) {
+      return location.getName();
+    }
+    String module = fileManager.inferModuleName(location);
+    if (module != null) {
+      for (StandardLocation parent : OUTPUT_LOCATIONS) {
+        if (fileManager.hasLocation(parent)
+            && fileManager.getLocationForModule(parent, module) == location) {
+          return parent.getName() + "/" + module;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static Location resolve(JavacFileManager fileManager, String location)
+      throws IOException {
+    int slash = location.indexOf('/');
+    if (slash < 0) {
+      return StandardLocation.valueOf(location);
+    }
+    StandardLocation parent = StandardLocation.valueOf(location.substring(0, slash));
+    return fileManager.getLocationForModule(parent, location.substring(slash + 1));
+  }
+
+  private record Output(String location, String name, byte[] content) {}
+
+  private record Segment(boolean err, String text) {}
+
+  private record Result(int exitCode, List<Segment> transcript, List<Output> outputs) {
+
+    void replay(JavacFileManager fileManager, PrintWriter out, PrintWriter err) throws IOException {
+      for (Output output : outputs) {
+        Location location = resolve(fileManager, output.location());
+        try (OutputStream os =
+            fileManager.getFileForOutput(location, "", output.name(), null).openOutputStream()) {
+          os.write(output.content());
+        }
+      }
+      fileManager.flush();
+      for (Segment segment : transcript) {
+        (segment.err() ? err : out).write(segment.text());
+      }
+      out.flush();
+      err.flush();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT);
+      out.writeInt(exitCode);
+      out.writeInt(transcript.size());
+      for (Segment segment : transcript) {
+        out.writeBoolean(segment.err());
+        writeString(out, segment.text());
+      }
+      out.writeInt(outputs.size());
+      for (Output output : outputs) {
+        writeString(out, output.location());
+        writeString(out, output.name());
+        out.writeInt(output.content().length);
+        out.write(output.content());
+      }
+    }
+
+    static Result read(DataInputStream in) throws IOException {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+        throw new IOException("not a compilation result");
+      }
+      int exitCode = in.readInt();
+      int segments = in.readInt();
+      List<Segment> transcript = new ArrayList<>();
+      for (int i = 0; i < segments; i++) {
+        boolean err = in.readBoolean();
+        transcript.add(new Segment(err, readString(in)));
+      }
+      int count = in.readInt();
+      List<Output> outputs = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        String location = readString(in);
+        String name = readString(in);
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        outputs.add(new Output(location, name, content));
+      }
+      return new Result(exitCode, transcript, outputs);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+      byte[] bytes = s.getBytes(UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      return new String(bytes, UTF_8);
+    }
+  }
+
+  /** The text written to the output and diagnostic writers, in the order it was written. */
+  private static final class Transcript {
+    private final List<Segment> segments = new ArrayList<>();
+    private final StringBuilder current = new StringBuilder();
+    private boolean currentErr;
+
+    synchronized void record(boolean err, char[] cbuf, int off, int len) {
+      if (err != currentErr && current.length() > 0) {
+        segments.add(new Segment(currentErr, current.toString()));
+        current.setLength(0);
+      }
+      currentErr = err;
+      current.append(cbuf, off, len);
+    }
+
+    /** Ends the current segment, and returns the number of segments so far. */
+    synchronized int mark() {
+      if (current.length() > 0) {
+        segments.add(new Segment(currentErr, current.toString()));
+        current.setLength(0);
+      }
+      return segments.size();
+    }
+
+    /** Returns the segments from {@code from}, a value returned by {@link #mark()}. */
+    synchronized List<Segment> segments(int from) {
+      List<Segment> result = new ArrayList<>(segments.subList(from, segments.size()));
+      if (current.length() > 0) {
+        result.add(new Segment(currentErr, current.toString()));
+      }
+      return result;
+    }
+
+    Writer tee(Writer target, boolean err) {
+      return new Writer() {
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+          target.write(cbuf, off, len);
+          record(err, cbuf, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+          target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+          target.flush();
+        }
+      };
+    }
+  }
+
+  /** The files a compilation writes to the output locations of a file manager. */
+  final class Recording {
+    private final JavacFileManager fileManager;
+    // Guarded by this.
+    private final Map<String, Output> outputs = new LinkedHashMap<>();
+    private long bytes;
+    private boolean complete = true;
+
+    Recording(JavacFileManager fileManager) {
+      this.fileManager = fileManager;
+    }
+
+    /** Wraps a file object for output so that what is written to it is recorded. */
+    JavaFileObject wrap(Location location, RelativeFile name, JavaFileObject file)
+        throws IOException {
+      String described = describe(fileManager, location);
+      if (described == null) {
+        synchronized (this) {
+          complete = false;
+        }
+        return file;
+      }
+      return new ForwardingJavaFileObject<JavaFileObject>(file) {
+        @Override
+        public OutputStream openOutputStream() throws IOException {
+          ByteArrayOutputStream copy = new ByteArrayOutputStream();
+          OutputStream target = super.openOutputStream();
+          return new OutputStream() {
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+              target.write(b);
+              copy.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+              target.write(b, off, len);
+              copy.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+              target.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+              if (closed) return;
+              closed = true;
+              target.close();
+              written(new Output(described, name.path, copy.toByteArray()));
+            }
+          };
+        }
+
+        @Override
+        public Writer openWriter() throws IOException {
+          String encodingName = fileManager.getEncodingName();
+          Charset charset =
+              (encodingName == null) ? Charset.defaultCharset() : Charset.forName(encodingName);
+          return new OutputStreamWriter(openOutputStream(), charset);
+        }
+      };
+    }
+
+    private synchronized void written(Output output) {
+      if (!complete) {
+        return;
+      }
+      Output previous = outputs.put(output.location() + "\0" + output.name(), output);
+      if (previous != null) {
+        bytes -= previous.content().length;
+      }
+      bytes += output.content().length;
+      if (bytes > maxBytes / 2) {
+        complete = false;
+        outputs.clear();
+      }
+    }
+
+    synchronized boolean isComplete() {
+      return complete;
+    }
+
+    synchronized List<Output> outputs() {
+      return new ArrayList<>(outputs.values());
+    }
+  }
+}
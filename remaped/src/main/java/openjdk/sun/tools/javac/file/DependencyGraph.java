@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What the compilation units of one or more compilations were seen to read through a {@link
+ * JavacFileManager} that {@linkplain JavacFileManager#setRecordDependencies records
+ * dependencies}: the class and source files of the classes they caused to be completed, the
+ * files they looked up, and the packages they listed, including those that turned out empty. A
+ * build tool can recompile just the units that read a changed file, or that listed a package in
+ * which a file was added or removed.
+ *
+ * <p>Units and files are identified by the string form of their URIs; reads that happened
+ * outside of any compilation unit are attributed to {@link #UNATTRIBUTED}. Packages are
+ * identified as {@code <location name>:<package name>}.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class DependencyGraph {
+
+  /** The unit to which reads outside of any compilation unit are attributed. */
+  public static final String UNATTRIBUTED = "-";
+
+  private final SortedMap<String, SortedSet<String>> files;
+  private final SortedMap<String, SortedMap<String, Boolean>> packages;
+
+  DependencyGraph(
+      SortedMap<String, SortedSet<String>> files,
+      SortedMap<String, SortedMap<String, Boolean>> packages) {
+    this.files = files;
+    this.packages = packages;
+  }
+
+  /** The compilation units that read anything. */
+  public SortedSet<String> getUnits() {
+    SortedSet<String> units = new TreeSet<>(files.keySet());
+    units.addAll(packages.keySet());
+    return Collections.unmodifiableSortedSet(units);
+  }
+
+  /** The files read by {@code unit}. */
+  public SortedSet<String> getFiles(String unit) {
+    return Collections.unmodifiableSortedSet(files.getOrDefault(unit, new TreeSet<>()));
+  }
+
+  /** The packages listed by {@code unit}. */
+  public SortedSet<String> getPackages(String unit) {
+    return Collections.unmodifiableSortedSet(
+        new TreeSet<>(packages.getOrDefault(unit, new TreeMap<>()).keySet()));
+  }
+
+  /** The packages listed by {@code unit} that were empty. */
+  public SortedSet<String> getEmptyPackages(String unit) {
+    SortedSet<String> result = new TreeSet<>();
+    packages
+        .getOrDefault(unit, new TreeMap<>())
+        .forEach(
+            (p, empty) -> {
+              if (empty) result.add(p);
+            });
+    return Collections.unmodifiableSortedSet(result);
+  }
+
+  /** The compilation units that read {@code file}. */
+  public SortedSet<String> getDependents(String file) {
+    SortedSet<String> result = new TreeSet<>();
+    for (Map.Entry<String, SortedSet<String>> e : files.entrySet()) {
+      if (e.getValue().contains(file)) result.add(e.getKey());
+    }
+    return Collections.unmodifiableSortedSet(result);
+  }
+
+  /**
+   * Writes this graph as lines of text: {@code unit <uri>} starts the entries of a unit, which
+   * are {@code file <uri>}, {@code package <package>} and {@code empty <package>} lines.
+   */
+  public void write(Writer out) throws IOException {
+    for (String unit : getUnits()) {
+      out.write("unit " + unit + "\n");
+      for (String file : getFiles(unit)) {
+        out.write("file " + file + "\n");
+      }
+      for (Map.Entry<String, Boolean> e :
+          packages.getOrDefault(unit, new TreeMap<>()).entrySet()) {
+        out.write((e.getValue() ? "empty " : "package ") + e.getKey() + "\n");
+      }
+    }
+    out.flush();
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import javx.tools.FileObject;
+import javx.tools.JavaFileManager.Location;
+import javx.tools.JavaFileObject;
+import openjdk.sun.tools.javac.code.Symbol.ClassSymbol;
+import openjdk.sun.tools.javac.util.Context;
+import openjdk.sun.tools.javac.util.Dependencies;
+import openjdk.sun.tools.javac.util.Log;
+
+/**
+ * Collects the reads of a file manager by compilation unit, for a {@link DependencyGraph}. The
+ * unit is the source file the compiler's log is reporting against at the time of the read.
+ *
+ * <p>The file manager itself only sees whole packages being listed, so the files that were
+ * actually used come from the compiler: a {@link CompletionRecorder} registered as the {@link
+ * Dependencies} of the compilation records the file of every class read by the class reader.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class DependencyRecorder {
+
+  // Guarded by this.
+  private final Map<String, SortedSet<String>> files = new HashMap<>();
+  private final Map<String, SortedMap<String, Boolean>> packages = new HashMap<>();
+
+  synchronized void read(JavaFileObject unit, FileObject file) {
+    files.computeIfAbsent(key(unit), k -> new TreeSet<>()).add(file.toUri().toString());
+  }
+
+  synchronized void listed(
+      JavaFileObject unit, Location location, String packageName, boolean empty) {
+    packages
+        .computeIfAbsent(key(unit), k -> new TreeMap<>())
+        .merge(location.getName() + ":" + packageName, empty, Boolean::logicalAnd);
+  }
+
+  synchronized DependencyGraph snapshot() {
+    SortedMap<String, SortedSet<String>> f = new TreeMap<>();
+    files.forEach((unit, set) -> f.put(unit, new TreeSet<>(set)));
+    SortedMap<String, SortedMap<String, Boolean>> p = new TreeMap<>();
+    packages.forEach((unit, map) -> p.put(unit, new TreeMap<>(map)));
+    return new DependencyGraph(f, p);
+  }
+
+  synchronized void clear() {
+    files.clear();
+    packages.clear();
+  }
+
+  private static String key(JavaFileObject unit) {
+    return (unit == null) ? DependencyGraph.UNATTRIBUTED : unit.toUri().toString();
+  }
+
+  /**
+   * Records the file of each class completed by the class reader against the compilation unit
+   * that caused it.
+   */
+  static final class CompletionRecorder extends Dependencies {
+
+    private final DependencyRecorder recorder;
+    private final Log log;
+
+    private CompletionRecorder(Context context, DependencyRecorder recorder, Log log) {
+      super(context);
+      this.recorder = recorder;
+      this.log = log;
+    }
+
+    /**
+     * Registers a recorder for {@code context}, unless the compilation has its own {@link
+     * Dependencies} already, as with {@code -XDcompletionDeps}.
+     */
+    static void register(Context context, DependencyRecorder recorder, Log log) {
+      if (context.get(dependenciesKey) == null) {
+        new CompletionRecorder(context, recorder, log);
+      }
+    }
+
+    @Override
+    public void push(ClassSymbol c, CompletionCause cause) {
+      if (cause == CompletionCause.CLASS_READER && c.classfile != null) {
+        JavaFileObject unit = log.currentSourceFile();
+        if (c.classfile != unit) {
+          recorder.read(unit, c.classfile);
+        }
+      }
+    }
+
+    @Override
+    public void pop() {}
+  }
+}
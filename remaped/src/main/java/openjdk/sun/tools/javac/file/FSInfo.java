@@ -94,6 +94,13 @@ public class FSInfo {
   }
 
   public List<Path> getJarClassPath(Path file) throws IOException {
+    Object event = FileManagerEvents.beginJarClassPath();
+    List<Path> list = readJarClassPath(file);
+    FileManagerEvents.commitJarClassPath(event, file, list.size());
+    return list;
+  }
+
+  private List<Path> readJarClassPath(Path file) throws IOException {
     try (JarFile jarFile = new JarFile(file.toFile())) {
       Manifest man = jarFile.getManifest();
       if (man == null) return Collections.emptyList();
@@ -142,11 +149,13 @@ public class FSInfo {
     return retVal;
   }
 
-  private FileSystemProvider jarFSProvider;
+  // racing threads find the same provider, so it is published without a lock
+  private volatile FileSystemProvider jarFSProvider;
 
-  public synchronized FileSystemProvider getJarFSProvider() {
-    if (jarFSProvider != null) {
-      return jarFSProvider;
+  public FileSystemProvider getJarFSProvider() {
+    FileSystemProvider provider = jarFSProvider;
+    if (provider != null) {
+      return provider;
     }
 
     try {
@@ -158,9 +167,9 @@ public class FSInfo {
       // ignored
     }
 
-    for (FileSystemProvider provider : FileSystemProvider.installedProviders()) {
-      if (provider.getScheme().equals("jar")) {
-        return (jarFSProvider = provider);
+    for (FileSystemProvider installed : FileSystemProvider.installedProviders()) {
+      if (installed.getScheme().equals("jar")) {
+        return (jarFSProvider = installed);
       }
     }
     return null;
@@ -0,0 +1,390 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import static openjdk.sun.tools.reflection.android.AndroidSupport.isDalvik;
+
+import java.nio.file.Path;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the file manager, its containers and locations.
+ *
+ * <p>Call sites pair a {@code begin*} call with the matching {@code commit*} call and pass the
+ * returned token through unchanged. The token is {@code null} when {@code jdk.jfr} is not present
+ * (as on Dalvik) or the event is not enabled in any running recording, so the cost outside a
+ * recording is a check of the event type, and no event is allocated. Only the event classes
+ * nested in {@link Jfr} refer to {@code jdk.jfr}, and they are loaded only once {@link #ENABLED}
+ * has been checked.
+ *
+ * <p>Events are emitted for the work the caches avoid: a container being opened, a JRT package
+ * being indexed, a jar manifest being read. Lookups satisfied from a cache are not recorded.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion without
+ * notice.</b>
+ */
+final class FileManagerEvents {
+
+  private FileManagerEvents() {}
+
+  static final boolean ENABLED = !isDalvik() && isJfrPresent();
+
+  private static boolean isJfrPresent() {
+    try {
+      Class.forName("jdk.jfr.Event", false, FileManagerEvents.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  static Object beginGetContainer() {
+    return ENABLED ? Jfr.beginGetContainer() : null;
+  }
+
+  static void commitGetContainer(Object token, Path path, String kind) {
+    if (token != null) Jfr.commitGetContainer(token, path, kind);
+  }
+
+  static Object beginArchiveOpen() {
+    return ENABLED ? Jfr.beginArchiveOpen() : null;
+  }
+
+  static void commitArchiveOpen(Object token, Path path, String multiRelease, int packages) {
+    if (token != null) Jfr.commitArchiveOpen(token, path, multiRelease, packages);
+  }
+
+  static Object beginContainerList() {
+    return ENABLED ? Jfr.beginContainerList() : null;
+  }
+
+  static void commitContainerList(
+      Object token,
+      String location,
+      Path path,
+      String kind,
+      RelativePath subdirectory,
+      boolean recurse,
+      int results) {
+    if (token != null) {
+      Jfr.commitContainerList(token, location, path, kind, subdirectory, recurse, results);
+    }
+  }
+
+  static Object beginContainerGetFileObject() {
+    return ENABLED ? Jfr.beginContainerGetFileObject() : null;
+  }
+
+  static void commitContainerGetFileObject(
+      Object token, String location, Path path, String kind, RelativePath name, boolean found) {
+    if (token != null) Jfr.commitContainerGetFileObject(token, location, path, kind, name, found);
+  }
+
+  static Object beginJRTIndexEntry() {
+    return ENABLED ? Jfr.beginJRTIndexEntry() : null;
+  }
+
+  static void commitJRTIndexEntry(Object token, RelativePath dir, int files, int subdirs) {
+    if (token != null) Jfr.commitJRTIndexEntry(token, dir, files, subdirs);
+  }
+
+  static Object beginModulePathScan() {
+    return ENABLED ? Jfr.beginModulePathScan() : null;
+  }
+
+  static void commitModulePathScan(Object token, String location, Path path, int modules) {
+    if (token != null) Jfr.commitModulePathScan(token, location, path, modules);
+  }
+
+  static Object beginJarClassPath() {
+    return ENABLED ? Jfr.beginJarClassPath() : null;
+  }
+
+  static void commitJarClassPath(Object token, Path path, int entries) {
+    if (token != null) Jfr.commitJarClassPath(token, path, entries);
+  }
+
+  private static String toString(Object o) {
+    return o == null ? null : o.toString();
+  }
+
+  /** The event types; only touched when {@link #ENABLED}. */
+  private static final class Jfr {
+    // Event instances are only created in this class: were FileManagerEvents to pass one as an
+    // Event, verifying it would load jdk.jfr.Event even where it does not exist.
+    //
+    // Whether an event is enabled is asked of its type, which is looked up once, so that no event
+    // is allocated for a lookup or listing made outside a recording that enables it.
+    private static final EventType GET_CONTAINER = EventType.getEventType(GetContainer.class);
+    private static final EventType ARCHIVE_OPEN = EventType.getEventType(ArchiveOpen.class);
+    private static final EventType CONTAINER_LIST = EventType.getEventType(ContainerList.class);
+    private static final EventType CONTAINER_GET_FILE_OBJECT =
+        EventType.getEventType(ContainerGetFileObject.class);
+    private static final EventType JRT_INDEX_ENTRY = EventType.getEventType(JRTIndexEntry.class);
+    private static final EventType MODULE_PATH_SCAN = EventType.getEventType(ModulePathScan.class);
+    private static final EventType JAR_CLASS_PATH = EventType.getEventType(JarClassPath.class);
+
+    static Object beginGetContainer() {
+      return GET_CONTAINER.isEnabled() ? begin(new GetContainer()) : null;
+    }
+
+    static Object beginArchiveOpen() {
+      return ARCHIVE_OPEN.isEnabled() ? begin(new ArchiveOpen()) : null;
+    }
+
+    static Object beginContainerList() {
+      return CONTAINER_LIST.isEnabled() ? begin(new ContainerList()) : null;
+    }
+
+    static Object beginContainerGetFileObject() {
+      return CONTAINER_GET_FILE_OBJECT.isEnabled() ? begin(new ContainerGetFileObject()) : null;
+    }
+
+    static Object beginJRTIndexEntry() {
+      return JRT_INDEX_ENTRY.isEnabled() ? begin(new JRTIndexEntry()) : null;
+    }
+
+    static Object beginModulePathScan() {
+      return MODULE_PATH_SCAN.isEnabled() ? begin(new ModulePathScan()) : null;
+    }
+
+    static Object beginJarClassPath() {
+      return JAR_CLASS_PATH.isEnabled() ? begin(new JarClassPath()) : null;
+    }
+
+    private static Object begin(Event event) {
+      event.begin();
+      return event;
+    }
+
+    static void commitGetContainer(Object token, Path path, String kind) {
+      GetContainer event = (GetContainer) token;
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = FileManagerEvents.toString(path);
+        event.kind = kind;
+        event.commit();
+      }
+    }
+
+    static void commitArchiveOpen(Object token, Path path, String multiRelease, int packages) {
+      ArchiveOpen event = (ArchiveOpen) token;
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = FileManagerEvents.toString(path);
+        event.multiRelease = multiRelease;
+        event.packages = packages;
+        event.commit();
+      }
+    }
+
+    static void commitContainerList(
+        Object token,
+        String location,
+        Path path,
+        String kind,
+        RelativePath subdirectory,
+        boolean recurse,
+        int results) {
+      ContainerList event = (ContainerList) token;
+      event.end();
+      if (event.shouldCommit()) {
+        event.location = location;
+        event.path = FileManagerEvents.toString(path);
+        event.kind = kind;
+        event.directory = subdirectory.path;
+        event.recurse = recurse;
+        event.results = results;
+        event.commit();
+      }
+    }
+
+    static void commitContainerGetFileObject(
+        Object token, String location, Path path, String kind, RelativePath name, boolean found) {
+      ContainerGetFileObject event = (ContainerGetFileObject) token;
+      event.end();
+      if (event.shouldCommit()) {
+        event.location = location;
+        event.path = FileManagerEvents.toString(path);
+        event.kind = kind;
+        event.name = name.path;
+        event.found = found;
+        event.commit();
+      }
+    }
+
+    static void commitJRTIndexEntry(Object token, RelativePath dir, int files, int subdirs) {
+      JRTIndexEntry event = (JRTIndexEntry) token;
+      event.end();
+      if (event.shouldCommit()) {
+        event.directory = dir.path;
+        event.files = files;
+        event.subdirectories = subdirs;
+        event.commit();
+      }
+    }
+
+    static void commitModulePathScan(Object token, String location, Path path, int modules) {
+      ModulePathScan event = (ModulePathScan) token;
+      event.end();
+      if (event.shouldCommit()) {
+        event.location = location;
+        event.path = FileManagerEvents.toString(path);
+        event.modules = modules;
+        event.commit();
+      }
+    }
+
+    static void commitJarClassPath(Object token, Path path, int entries) {
+      JarClassPath event = (JarClassPath) token;
+      event.end();
+      if (event.shouldCommit()) {
+        event.path = FileManagerEvents.toString(path);
+        event.entries = entries;
+        event.commit();
+      }
+    }
+
+    @Name("javac.file.GetContainer")
+    @Label("Open Container")
+    @Description("A class path, source path or module path entry opened as a container")
+    @Category({"Java Compiler", "File Manager"})
+    @StackTrace(false)
+    static final class GetContainer extends Event {
+      @Label("Path")
+      String path;
+
+      @Label("Kind")
+      @Description("directory, archive, jrt or missing")
+      String kind;
+    }
+
+    @Name("javac.file.ArchiveOpen")
+    @Label("Open Archive")
+    @Description("A jar or zip file system opened and its package directories indexed")
+    @Category({"Java Compiler", "File Manager"})
+    @StackTrace(false)
+    static final class ArchiveOpen extends Event {
+      @Label("Path")
+      String path;
+
+      @Label("Multi-Release")
+      String multiRelease;
+
+      @Label("Packages")
+      int packages;
+    }
+
+    @Name("javac.file.ContainerList")
+    @Label("List Container")
+    @Category({"Java Compiler", "File Manager"})
+    @StackTrace(false)
+    static final class ContainerList extends Event {
+      @Label("Location")
+      String location;
+
+      @Label("Path")
+      String path;
+
+      @Label("Kind")
+      String kind;
+
+      @Label("Directory")
+      String directory;
+
+      @Label("Recurse")
+      boolean recurse;
+
+      @Label("Results")
+      int results;
+    }
+
+    @Name("javac.file.ContainerGetFileObject")
+    @Label("Container Lookup")
+    @Category({"Java Compiler", "File Manager"})
+    @StackTrace(false)
+    static final class ContainerGetFileObject extends Event {
+      @Label("Location")
+      String location;
+
+      @Label("Path")
+      String path;
+
+      @Label("Kind")
+      String kind;
+
+      @Label("Name")
+      String name;
+
+      @Label("Found")
+      boolean found;
+    }
+
+    @Name("javac.file.JRTIndexEntry")
+    @Label("Index JRT Package")
+    @Description("A package directory of the jrt: file system read into the JRT index")
+    @Category({"Java Compiler", "File Manager"})
+    @StackTrace(false)
+    static final class JRTIndexEntry extends Event {
+      @Label("Directory")
+      String directory;
+
+      @Label("Files")
+      int files;
+
+      @Label("Subdirectories")
+      int subdirectories;
+    }
+
+    @Name("javac.file.ModulePathScan")
+    @Label("Scan Module Path Entry")
+    @Category({"Java Compiler", "File Manager"})
+    @StackTrace(false)
+    static final class ModulePathScan extends Event {
+      @Label("Location")
+      String location;
+
+      @Label("Path")
+      String path;
+
+      @Label("Modules")
+      int modules;
+    }
+
+    @Name("javac.file.JarClassPath")
+    @Label("Read Jar Class-Path")
+    @Description("The Class-Path manifest attribute of a jar read to expand a search path")
+    @Category({"Java Compiler", "File Manager"})
+    @StackTrace(false)
+    static final class JarClassPath extends Event {
+      @Label("Path")
+      String path;
+
+      @Label("Entries")
+      int entries;
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for the caches and I/O of a {@link JavacFileManager}, read through {@link
+ * JavacFileManager#getMetrics()} and cleared with {@link JavacFileManager#resetMetrics()}, e.g.
+ * between compilations.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion without
+ * notice.</b>
+ */
+public final class FileManagerMetrics {
+
+  /** The caches maintained by the file manager. */
+  public enum Cache {
+    /** Containers opened for search path entries, keyed by path. */
+    CONTAINERS,
+    /** The per-location index of containers by package directory. */
+    LOCATION_INDEX,
+    /** Decoded source file content. */
+    CONTENT,
+    /**
+     * Package entries of the shared {@link JRTIndex}, as seen by this file manager. The index
+     * sheds its entries itself under {@linkplain MemoryPressure memory pressure}, so no evictions
+     * are counted for it.
+     */
+    JRT_INDEX
+  }
+
+  /** Operations whose cumulative time is recorded. */
+  public enum Operation {
+    /** Opening a container that was not cached, including indexing an archive. */
+    OPEN_CONTAINER,
+    /** Building the package index of a location. */
+    INDEX_LOCATION,
+    /** {@code list} over all containers of a location. */
+    LIST,
+    /** {@code getJavaFileForInput} and {@code getFileForInput}. */
+    GET_FILE_FOR_INPUT,
+    /** Reading a package directory of the jrt: file system into the JRT index. */
+    JRT_INDEX_ENTRY
+  }
+
+  private static final int CACHES = Cache.values().length;
+  private static final int OPERATIONS = Operation.values().length;
+
+  private final LongAdder[] hits = adders(CACHES);
+  private final LongAdder[] misses = adders(CACHES);
+  private final LongAdder[] evictions = adders(CACHES);
+  private final LongAdder[] operationCounts = adders(OPERATIONS);
+  private final LongAdder[] operationNanos = adders(OPERATIONS);
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder archiveBytesMapped = new LongAdder();
+
+  FileManagerMetrics() {}
+
+  private static LongAdder[] adders(int n) {
+    LongAdder[] result = new LongAdder[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = new LongAdder();
+    }
+    return result;
+  }
+
+  void hit(Cache cache) {
+    hits[cache.ordinal()].increment();
+  }
+
+  void miss(Cache cache) {
+    misses[cache.ordinal()].increment();
+  }
+
+  void evicted(Cache cache, long count) {
+    if (count > 0) evictions[cache.ordinal()].add(count);
+  }
+
+  /** Records one execution of {@code op} that started at {@code startNanos}. */
+  void timed(Operation op, long startNanos) {
+    operationCounts[op.ordinal()].increment();
+    operationNanos[op.ordinal()].add(System.nanoTime() - startNanos);
+  }
+
+  void bytesRead(long count) {
+    bytesRead.add(count);
+  }
+
+  void archiveMapped(long size) {
+    archiveBytesMapped.add(size);
+  }
+
+  void reset() {
+    for (int i = 0; i < CACHES; i++) {
+      hits[i].reset();
+      misses[i].reset();
+      evictions[i].reset();
+    }
+    for (int i = 0; i < OPERATIONS; i++) {
+      operationCounts[i].reset();
+      operationNanos[i].reset();
+    }
+    bytesRead.reset();
+    archiveBytesMapped.reset();
+  }
+
+  Snapshot snapshot(Map<Cache, Integer> sizes, int containersOpen) {
+    return new Snapshot(this, sizes, containersOpen);
+  }
+
+  /** An immutable copy of the counters, taken at one point in time. */
+  public static final class Snapshot {
+    private final long[] hits = new long[CACHES];
+    private final long[] misses = new long[CACHES];
+    private final long[] evictions = new long[CACHES];
+    private final int[] sizes = new int[CACHES];
+    private final long[] operationCounts = new long[OPERATIONS];
+    private final long[] operationNanos = new long[OPERATIONS];
+    private final long bytesRead;
+    private final long archiveBytesMapped;
+    private final int containersOpen;
+
+    private Snapshot(FileManagerMetrics m, Map<Cache, Integer> sizes, int containersOpen) {
+      for (int i = 0; i < CACHES; i++) {
+        hits[i] = m.hits[i].sum();
+        misses[i] = m.misses[i].sum();
+        evictions[i] = m.evictions[i].sum();
+      }
+      for (Map.Entry<Cache, Integer> e : sizes.entrySet()) {
+        this.sizes[e.getKey().ordinal()] = e.getValue();
+      }
+      for (int i = 0; i < OPERATIONS; i++) {
+        operationCounts[i] = m.operationCounts[i].sum();
+        operationNanos[i] = m.operationNanos[i].sum();
+      }
+      this.bytesRead = m.bytesRead.sum();
+      this.archiveBytesMapped = m.archiveBytesMapped.sum();
+      this.containersOpen = containersOpen;
+    }
+
+    public long hits(Cache cache) {
+      return hits[cache.ordinal()];
+    }
+
+    public long misses(Cache cache) {
+      return misses[cache.ordinal()];
+    }
+
+    /**
+     * Entries dropped from {@code cache}: invalidated, cleared by the GC, flushed, or shed under
+     * memory pressure.
+     */
+    public long evictions(Cache cache) {
+      return evictions[cache.ordinal()];
+    }
+
+    /** The hit rate of {@code cache} in {@code [0, 1]}, or {@code NaN} if it was not used. */
+    public double hitRate(Cache cache) {
+      long total = hits(cache) + misses(cache);
+      return total == 0 ? Double.NaN : (double) hits(cache) / total;
+    }
+
+    /** The number of entries held by {@code cache} when the snapshot was taken. */
+    public int size(Cache cache) {
+      return sizes[cache.ordinal()];
+    }
+
+    public long count(Operation op) {
+      return operationCounts[op.ordinal()];
+    }
+
+    public long time(Operation op, TimeUnit unit) {
+      return unit.convert(operationNanos[op.ordinal()], TimeUnit.NANOSECONDS);
+    }
+
+    /** Bytes of file content read through the file manager to be decoded as source. */
+    public long bytesRead() {
+      return bytesRead;
+    }
+
+    /** Total size of the archives opened as containers. */
+    public long archiveBytesMapped() {
+      return archiveBytesMapped;
+    }
+
+    /** The number of distinct containers currently open, excluding missing path entries. */
+    public int containersOpen() {
+      return containersOpen;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder("FileManagerMetrics[");
+      for (Cache c : Cache.values()) {
+        sb.append(c)
+            .append("={hits=")
+            .append(hits(c))
+            .append(",misses=")
+            .append(misses(c))
+            .append(",evictions=")
+            .append(evictions(c))
+            .append(",size=")
+            .append(size(c))
+            .append("},");
+      }
+      for (Operation op : Operation.values()) {
+        sb.append(op)
+            .append("={count=")
+            .append(count(op))
+            .append(",ms=")
+            .append(time(op, TimeUnit.MILLISECONDS))
+            .append("},");
+      }
+      sb.append("bytesRead=").append(bytesRead);
+      sb.append(",archiveBytesMapped=").append(archiveBytesMapped);
+      sb.append(",containersOpen=").append(containersOpen);
+      return sb.append("]").toString();
+    }
+  }
+}
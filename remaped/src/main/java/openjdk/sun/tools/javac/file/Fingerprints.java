@@ -0,0 +1,207 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Digests that identify what a container of a search path makes visible, without reading all of
+ * it. An archive is identified by its central directory, which holds the name, size and CRC of
+ * every entry; a directory by the relative path, size and modification time of every file in
+ * it; the platform image by its size, modification time and {@code release} file.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class Fingerprints {
+
+  private static final int EOCD_SIG = 0x06054b50;
+  private static final int EOCD_SIZE = 22;
+  private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int ZIP64_EOCD_SIG = 0x06064b50;
+
+  /** The fingerprint of a path that does not exist. */
+  static final byte[] MISSING = digest().digest("missing".getBytes(UTF_8));
+
+  private Fingerprints() {}
+
+  static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /** Digests the central directory of a zip file, or the whole file if it has none. */
+  static byte[] archive(Path file) throws IOException {
+    MessageDigest md = digest();
+    md.update("archive\0".getBytes(UTF_8));
+    try (FileChannel ch = FileChannel.open(file)) {
+      long size = ch.size();
+      long[] cd = findCentralDirectory(ch, size);
+      if (cd != null) {
+        update(md, ch, cd[0], cd[1]);
+      } else {
+        update(md, ch, 0, size);
+      }
+    }
+    return md.digest();
+  }
+
+  /** Returns the offset and size of the central directory, or {@code null}. */
+  private static long[] findCentralDirectory(FileChannel ch, long size) throws IOException {
+    int tail = (int) Math.min(size, 0xFFFF + EOCD_SIZE);
+    if (tail < EOCD_SIZE) {
+      return null;
+    }
+    ByteBuffer buf = read(ch, size - tail, tail);
+    for (int i = tail - EOCD_SIZE; i >= 0; i--) {
+      if (buf.getInt(i) != EOCD_SIG) {
+        continue;
+      }
+      long cdSize = buf.getInt(i + 12) & 0xFFFFFFFFL;
+      long cdOffset = buf.getInt(i + 16) & 0xFFFFFFFFL;
+      if (cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+        long locator = size - tail + i - ZIP64_LOCATOR_SIZE;
+        if (locator < 0) {
+          return null;
+        }
+        ByteBuffer loc = read(ch, locator, ZIP64_LOCATOR_SIZE);
+        if (loc.getInt(0) != ZIP64_LOCATOR_SIG) {
+          return null;
+        }
+        long eocd64 = loc.getLong(8);
+        if (eocd64 < 0 || eocd64 + 56 > size) {
+          return null;
+        }
+        ByteBuffer e = read(ch, eocd64, 56);
+        if (e.getInt(0) != ZIP64_EOCD_SIG) {
+          return null;
+        }
+        cdSize = e.getLong(40);
+        cdOffset = e.getLong(48);
+      }
+      return (cdOffset >= 0 && cdSize >= 0 && cdOffset + cdSize <= size)
+          ? new long[] {cdOffset, cdSize}
+          : null;
+    }
+    return null;
+  }
+
+  /** Digests the relative path, size and modification time of every file under {@code dir}. */
+  static byte[] directory(Path dir) throws IOException {
+    Map<String, String> files = new TreeMap<>();
+    try {
+      Files.walkFileTree(
+          dir,
+          new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+              files.put(
+                  dir.relativize(file).toString(),
+                  attrs.size() + "\0" + attrs.lastModifiedTime().toMillis());
+              return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+              return FileVisitResult.CONTINUE;
+            }
+          });
+    } catch (NoSuchFileException e) {
+      return MISSING;
+    }
+    MessageDigest md = digest();
+    md.update("directory\0".getBytes(UTF_8));
+    for (Map.Entry<String, String> e : files.entrySet()) {
+      md.update((e.getKey() + "\0" + e.getValue() + "\n").getBytes(UTF_8));
+    }
+    return md.digest();
+  }
+
+  /**
+   * Digests a platform image by the size and modification time of its {@code lib/modules} file
+   * and the content of its {@code release} file.
+   */
+  static byte[] image(Path modules) throws IOException {
+    MessageDigest md = digest();
+    md.update("image\0".getBytes(UTF_8));
+    BasicFileAttributes attrs = Files.readAttributes(modules, BasicFileAttributes.class);
+    md.update((attrs.size() + "\0" + attrs.lastModifiedTime().toMillis() + "\n").getBytes(UTF_8));
+    Path home = modules.getParent() == null ? null : modules.getParent().getParent();
+    Path release = home == null ? null : home.resolve("release");
+    if (release != null && Files.isRegularFile(release)) {
+      md.update(Files.readAllBytes(release));
+    }
+    return md.digest();
+  }
+
+  static String toHex(byte[] bytes) {
+    char[] digits = "0123456789abcdef".toCharArray();
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(digits[(b >> 4) & 0xF]).append(digits[b & 0xF]);
+    }
+    return sb.toString();
+  }
+
+  private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buf.hasRemaining()) {
+      if (ch.read(buf, position + buf.position()) < 0) {
+        throw new IOException("unexpected end of file");
+      }
+    }
+    return buf.flip();
+  }
+
+  private static void update(MessageDigest md, FileChannel ch, long position, long length)
+      throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(64 << 10);
+    long end = position + length;
+    while (position < end) {
+      buf.clear().limit((int) Math.min(buf.capacity(), end - position));
+      int n = ch.read(buf, position);
+      if (n < 0) {
+        throw new IOException("unexpected end of file");
+      }
+      buf.flip();
+      md.update(buf);
+      position += n;
+    }
+  }
+}
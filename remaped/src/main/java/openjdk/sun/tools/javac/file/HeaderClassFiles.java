@@ -0,0 +1,624 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces a class file to its application binary interface: what another compilation can see of
+ * it. Method bodies, private fields and methods, synthetic members and the attributes that only
+ * describe code or debugging information are dropped; signatures, annotations, constant values
+ * and the other attributes javac reads when compiling against a class are kept. Local and
+ * anonymous classes have no header at all.
+ *
+ * <p>The constant pool is rebuilt from what is kept, in the order it is first referred to, so
+ * that two class files that differ only in their method bodies or private members reduce to the
+ * same bytes. Together with {@linkplain JavacFileManager#setSkipUnchangedOutput skipping
+ * unchanged outputs}, the headers of a module keep their timestamps, and so do not invalidate the
+ * compilations that depend on them, until its interface changes.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class HeaderClassFiles {
+
+  private static final int MAGIC = 0xCAFEBABE;
+
+  private static final int CONSTANT_Utf8 = 1;
+  private static final int CONSTANT_Integer = 3;
+  private static final int CONSTANT_Float = 4;
+  private static final int CONSTANT_Long = 5;
+  private static final int CONSTANT_Double = 6;
+  private static final int CONSTANT_Class = 7;
+  private static final int CONSTANT_String = 8;
+  private static final int CONSTANT_Fieldref = 9;
+  private static final int CONSTANT_Methodref = 10;
+  private static final int CONSTANT_InterfaceMethodref = 11;
+  private static final int CONSTANT_NameAndType = 12;
+  private static final int CONSTANT_MethodHandle = 15;
+  private static final int CONSTANT_MethodType = 16;
+  private static final int CONSTANT_Dynamic = 17;
+  private static final int CONSTANT_InvokeDynamic = 18;
+  private static final int CONSTANT_Module = 19;
+  private static final int CONSTANT_Package = 20;
+
+  private static final int ACC_PRIVATE = 0x0002;
+  private static final int ACC_SYNTHETIC = 0x1000;
+  private static final int ACC_MODULE = 0x8000;
+
+  private HeaderClassFiles() {}
+
+  /**
+   * Returns the header of a class file.
+   *
+   * @param classFile the class file
+   * @return the header, or {@code null} if the class is local or anonymous
+   * @throws IOException if the class file is malformed or uses constants this reduction does not
+   *     know how to keep
+   */
+  static byte[] header(byte[] classFile) throws IOException {
+    try {
+      return new Reducer(classFile).reduce();
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("truncated class file", e);
+    }
+  }
+
+  private static final class Reducer {
+    private final ByteBuffer in;
+    private final int[] offsets;
+    private final Pool pool;
+    private String thisClass;
+
+    Reducer(byte[] classFile) throws IOException {
+      in = ByteBuffer.wrap(classFile);
+      if (in.getInt() != MAGIC) {
+        throw new IOException("not a class file");
+      }
+      in.getInt(); // minor and major version
+      int count = u2();
+      offsets = new int[count];
+      for (int i = 1; i < count; i++) {
+        offsets[i] = in.position();
+        int tag = u1();
+        switch (tag) {
+          case CONSTANT_Utf8 -> {
+            int length = u2();
+            in.position(in.position() + length);
+          }
+          case CONSTANT_Class, CONSTANT_String, CONSTANT_MethodType, CONSTANT_Module,
+              CONSTANT_Package -> in.position(in.position() + 2);
+          case CONSTANT_MethodHandle -> in.position(in.position() + 3);
+          case CONSTANT_Integer, CONSTANT_Float, CONSTANT_Fieldref, CONSTANT_Methodref,
+              CONSTANT_InterfaceMethodref, CONSTANT_NameAndType, CONSTANT_Dynamic,
+              CONSTANT_InvokeDynamic -> in.position(in.position() + 4);
+          case CONSTANT_Long, CONSTANT_Double -> {
+            in.position(in.position() + 8);
+            i++;
+          }
+          default -> throw new IOException("bad constant pool tag " + tag);
+        }
+      }
+      pool = new Pool(this);
+    }
+
+    byte[] reduce() throws IOException {
+      int access = u2();
+      int thisIndex = u2();
+      thisClass = className(thisIndex);
+      if ((access & ACC_MODULE) != 0) {
+        return in.array();
+      }
+      int superIndex = u2();
+      int[] interfaces = new int[u2()];
+      for (int i = 0; i < interfaces.length; i++) {
+        interfaces[i] = u2();
+      }
+
+      // the body is written first, so that the pool holds exactly what it refers to
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(body);
+      out.writeShort(access);
+      out.writeShort(pool.copy(thisIndex));
+      out.writeShort(superIndex == 0 ? 0 : pool.copy(superIndex));
+      out.writeShort(interfaces.length);
+      for (int i : interfaces) {
+        out.writeShort(pool.copy(i));
+      }
+      members(out, false);
+      members(out, true);
+
+      List<byte[]> attributes = new ArrayList<>();
+      int innerClasses = -1;
+      int count = u2();
+      for (int i = 0; i < count; i++) {
+        String name = utf8(u2());
+        int length = in.getInt();
+        int end = in.position() + length;
+        switch (name) {
+          case "InnerClasses" -> innerClasses = in.position();
+          case "EnclosingMethod" -> {
+            return null;
+          }
+          case "Signature", "Deprecated", "Synthetic", "RuntimeVisibleAnnotations",
+              "RuntimeInvisibleAnnotations", "RuntimeVisibleTypeAnnotations",
+              "RuntimeInvisibleTypeAnnotations", "Record", "PermittedSubclasses" ->
+              attributes.add(attribute(name));
+          default -> {
+            // code, debugging information and nest membership are not part of the interface
+          }
+        }
+        in.position(end);
+      }
+      if (innerClasses >= 0) {
+        in.position(innerClasses);
+        byte[] inner = innerClasses();
+        if (inner == null) {
+          return null;
+        }
+        if (inner.length > 0) {
+          attributes.add(inner);
+        }
+      }
+      out.writeShort(attributes.size());
+      for (byte[] a : attributes) {
+        out.write(a);
+      }
+
+      ByteArrayOutputStream result = new ByteArrayOutputStream(body.size() + pool.size() + 10);
+      DataOutputStream header = new DataOutputStream(result);
+      header.write(in.array(), 0, 8);
+      pool.writeTo(header);
+      body.writeTo(result);
+      return result.toByteArray();
+    }
+
+    /** Copies the non-private, non-synthetic fields or methods. */
+    private void members(DataOutputStream out, boolean methods) throws IOException {
+      int count = u2();
+      ByteArrayOutputStream kept = new ByteArrayOutputStream();
+      DataOutputStream members = new DataOutputStream(kept);
+      int keptCount = 0;
+      for (int i = 0; i < count; i++) {
+        int access = u2();
+        int name = u2();
+        int descriptor = u2();
+        int attributeCount = u2();
+        boolean keep = (access & (ACC_PRIVATE | ACC_SYNTHETIC)) == 0;
+        List<byte[]> attributes = new ArrayList<>();
+        for (int j = 0; j < attributeCount; j++) {
+          String attribute = utf8(u2());
+          int length = in.getInt();
+          int end = in.position() + length;
+          if (keep && keepMemberAttribute(attribute, methods)) {
+            attributes.add(attribute(attribute));
+          }
+          in.position(end);
+        }
+        if (keep) {
+          keptCount++;
+          members.writeShort(access);
+          members.writeShort(pool.copy(name));
+          members.writeShort(pool.copy(descriptor));
+          members.writeShort(attributes.size());
+          for (byte[] a : attributes) {
+            members.write(a);
+          }
+        }
+      }
+      out.writeShort(keptCount);
+      kept.writeTo(out);
+    }
+
+    private static boolean keepMemberAttribute(String name, boolean method) {
+      return switch (name) {
+        case "Signature", "Deprecated", "Synthetic", "RuntimeVisibleAnnotations",
+            "RuntimeInvisibleAnnotations", "RuntimeVisibleTypeAnnotations",
+            "RuntimeInvisibleTypeAnnotations" -> true;
+        case "ConstantValue" -> !method;
+        case "Exceptions", "AnnotationDefault", "MethodParameters",
+            "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations" -> method;
+        default -> false;
+      };
+    }
+
+    /**
+     * Copies the attribute whose name was just read, its length having been read too, remapping
+     * the constants it refers to.
+     */
+    private byte[] attribute(String name) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      switch (name) {
+        case "Signature", "ConstantValue" -> out.writeShort(pool.copy(u2()));
+        case "Deprecated", "Synthetic" -> {}
+        case "Exceptions", "PermittedSubclasses" -> {
+          int n = u2();
+          out.writeShort(n);
+          for (int i = 0; i < n; i++) {
+            out.writeShort(pool.copy(u2()));
+          }
+        }
+        case "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations" -> {
+          int n = u2();
+          out.writeShort(n);
+          for (int i = 0; i < n; i++) {
+            annotation(out);
+          }
+        }
+        case "RuntimeVisibleParameterAnnotations", "RuntimeInvisibleParameterAnnotations" -> {
+          int parameters = u1();
+          out.writeByte(parameters);
+          for (int p = 0; p < parameters; p++) {
+            int n = u2();
+            out.writeShort(n);
+            for (int i = 0; i < n; i++) {
+              annotation(out);
+            }
+          }
+        }
+        case "RuntimeVisibleTypeAnnotations", "RuntimeInvisibleTypeAnnotations" -> {
+          int n = u2();
+          out.writeShort(n);
+          for (int i = 0; i < n; i++) {
+            typeAnnotation(out);
+          }
+        }
+        case "AnnotationDefault" -> elementValue(out);
+        case "MethodParameters" -> {
+          int n = u1();
+          out.writeByte(n);
+          for (int i = 0; i < n; i++) {
+            int parameterName = u2();
+            out.writeShort(parameterName == 0 ? 0 : pool.copy(parameterName));
+            out.writeShort(u2());
+          }
+        }
+        case "Record" -> {
+          int n = u2();
+          out.writeShort(n);
+          for (int i = 0; i < n; i++) {
+            out.writeShort(pool.copy(u2()));
+            out.writeShort(pool.copy(u2()));
+            int attributeCount = u2();
+            List<byte[]> attributes = new ArrayList<>();
+            for (int j = 0; j < attributeCount; j++) {
+              String attribute = utf8(u2());
+              int length = in.getInt();
+              int end = in.position() + length;
+              if (keepMemberAttribute(attribute, false)) {
+                attributes.add(attribute(attribute));
+              }
+              in.position(end);
+            }
+            out.writeShort(attributes.size());
+            for (byte[] a : attributes) {
+              out.write(a);
+            }
+          }
+        }
+        default -> throw new AssertionError(name);
+      }
+      return withHeader(name, bytes);
+    }
+
+    private byte[] withHeader(String name, ByteArrayOutputStream content) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.size() + 6);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeShort(pool.utf8(name));
+      out.writeInt(content.size());
+      content.writeTo(out);
+      return bytes.toByteArray();
+    }
+
+    private void annotation(DataOutputStream out) throws IOException {
+      out.writeShort(pool.copy(u2()));
+      int pairs = u2();
+      out.writeShort(pairs);
+      for (int i = 0; i < pairs; i++) {
+        out.writeShort(pool.copy(u2()));
+        elementValue(out);
+      }
+    }
+
+    private void elementValue(DataOutputStream out) throws IOException {
+      int tag = u1();
+      out.writeByte(tag);
+      switch (tag) {
+        case 'B', 'C', 'D', 'F', 'I', 'J', 'S', 'Z', 's', 'c' -> out.writeShort(pool.copy(u2()));
+        case 'e' -> {
+          out.writeShort(pool.copy(u2()));
+          out.writeShort(pool.copy(u2()));
+        }
+        case '@' -> annotation(out);
+        case '[' -> {
+          int n = u2();
+          out.writeShort(n);
+          for (int i = 0; i < n; i++) {
+            elementValue(out);
+          }
+        }
+        default -> throw new IOException("bad element value tag " + tag);
+      }
+    }
+
+    private void typeAnnotation(DataOutputStream out) throws IOException {
+      int target = u1();
+      out.writeByte(target);
+      switch (target) {
+        case 0x00, 0x01, 0x16 -> out.writeByte(u1());
+        case 0x10, 0x11, 0x12, 0x17 -> out.writeShort(u2());
+        case 0x13, 0x14, 0x15 -> {}
+        default -> throw new IOException("bad type annotation target " + target);
+      }
+      int pathLength = u1();
+      out.writeByte(pathLength);
+      for (int i = 0; i < pathLength; i++) {
+        out.writeShort(u2());
+      }
+      annotation(out);
+    }
+
+    private record InnerClass(String inner, String outer, int name, int access) {}
+
+    /**
+     * Copies the entries of the InnerClasses attribute that describe this class, its member
+     * classes and the nested classes the header refers to.
+     *
+     * @return the attribute, an empty array if no entry is kept, or {@code null} if this class is
+     *     local or anonymous, or a member of one
+     */
+    private byte[] innerClasses() throws IOException {
+      int n = u2();
+      Map<String, InnerClass> entries = new LinkedHashMap<>();
+      for (int i = 0; i < n; i++) {
+        int inner = u2();
+        int outer = u2();
+        int name = u2();
+        int access = u2();
+        String innerName = className(inner);
+        entries.put(
+            innerName,
+            new InnerClass(innerName, outer == 0 ? null : className(outer), name, access));
+      }
+      for (String c = thisClass; c != null; ) {
+        InnerClass e = entries.get(c);
+        if (e == null) break;
+        if (e.outer() == null || e.name() == 0) {
+          return null;
+        }
+        c = e.outer();
+      }
+
+      Map<String, InnerClass> kept = new LinkedHashMap<>();
+      for (InnerClass e : entries.values()) {
+        boolean member = e.outer() != null && e.name() != 0;
+        if (e.inner().equals(thisClass)
+            || member && (thisClass.equals(e.outer()) || pool.refersTo(e.inner()))) {
+          kept.put(e.inner(), e);
+        }
+      }
+      // the classes enclosing a kept member class are needed to name it
+      for (List<InnerClass> added = new ArrayList<>(kept.values()); !added.isEmpty(); ) {
+        List<InnerClass> next = new ArrayList<>();
+        for (InnerClass e : added) {
+          InnerClass enclosing = entries.get(e.outer());
+          if (enclosing != null && !kept.containsKey(enclosing.inner())) {
+            kept.put(enclosing.inner(), enclosing);
+            next.add(enclosing);
+          }
+        }
+        added = next;
+      }
+      if (kept.isEmpty()) {
+        return new byte[0];
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeShort(kept.size());
+      for (InnerClass e : kept.values()) {
+        out.writeShort(pool.classEntry(e.inner()));
+        out.writeShort(e.outer() == null ? 0 : pool.classEntry(e.outer()));
+        out.writeShort(e.name() == 0 ? 0 : pool.copy(e.name()));
+        out.writeShort(e.access());
+      }
+      return withHeader("InnerClasses", bytes);
+    }
+
+    private int u1() {
+      return in.get() & 0xff;
+    }
+
+    private int u2() {
+      return in.getShort() & 0xffff;
+    }
+
+    int tag(int index) throws IOException {
+      if (index <= 0 || index >= offsets.length || offsets[index] == 0) {
+        throw new IOException("bad constant pool index " + index);
+      }
+      return in.get(offsets[index]) & 0xff;
+    }
+
+    /** The index of the constant referred to at {@code offset} bytes into constant {@code i}. */
+    int ref(int index, int offset) {
+      return in.getShort(offsets[index] + offset) & 0xffff;
+    }
+
+    byte[] raw(int index, int length) {
+      return Arrays.copyOfRange(in.array(), offsets[index] + 1, offsets[index] + 1 + length);
+    }
+
+    String utf8(int index) throws IOException {
+      if (tag(index) != CONSTANT_Utf8) {
+        throw new IOException("not a Utf8 constant: " + index);
+      }
+      int offset = offsets[index];
+      int length = in.getShort(offset + 1) & 0xffff;
+      try {
+        return new DataInputStream(new ByteArrayInputStream(in.array(), offset + 1, length + 2))
+            .readUTF();
+      } catch (IOException e) {
+        throw new IOException("bad Utf8 constant " + index, e);
+      }
+    }
+
+    String className(int index) throws IOException {
+      if (tag(index) != CONSTANT_Class) {
+        throw new IOException("not a Class constant: " + index);
+      }
+      return utf8(ref(index, 1));
+    }
+  }
+
+  /** The constant pool of a header, built up as constants are referred to. */
+  private static final class Pool {
+    private final Reducer reducer;
+    private final Map<Integer, Integer> copied = new HashMap<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final List<String> classNames = new ArrayList<>();
+    private final List<String> strings = new ArrayList<>();
+    private int count = 1;
+
+    Pool(Reducer reducer) {
+      this.reducer = reducer;
+    }
+
+    /** Copies a constant of the class file, and the constants it refers to, into this pool. */
+    int copy(int index) throws IOException {
+      Integer known = copied.get(index);
+      if (known != null) {
+        return known;
+      }
+      int tag = reducer.tag(index);
+      int result =
+          switch (tag) {
+            case CONSTANT_Utf8 -> utf8(reducer.utf8(index));
+            case CONSTANT_Integer, CONSTANT_Float -> raw(tag, reducer.raw(index, 4), 1);
+            case CONSTANT_Long, CONSTANT_Double -> raw(tag, reducer.raw(index, 8), 2);
+            case CONSTANT_Class -> classEntry(reducer.className(index));
+            case CONSTANT_String, CONSTANT_MethodType, CONSTANT_Module, CONSTANT_Package ->
+                entry(tag, copy(reducer.ref(index, 1)), -1);
+            case CONSTANT_Fieldref, CONSTANT_Methodref, CONSTANT_InterfaceMethodref,
+                CONSTANT_NameAndType ->
+                entry(tag, copy(reducer.ref(index, 1)), copy(reducer.ref(index, 3)));
+            case CONSTANT_MethodHandle -> {
+              int kind = reducer.raw(index, 1)[0];
+              int ref = copy(reducer.ref(index, 2));
+              String key = tag + ":" + kind + ":" + ref;
+              Integer i = indexes.get(key);
+              if (i != null) yield i;
+              out.writeByte(tag);
+              out.writeByte(kind);
+              out.writeShort(ref);
+              yield add(key, 1);
+            }
+            // bootstrap methods are code, which a header does not have
+            default -> throw new IOException("cannot keep constant of kind " + tag);
+          };
+      copied.put(index, result);
+      return result;
+    }
+
+    int utf8(String s) throws IOException {
+      String key = CONSTANT_Utf8 + ":" + s;
+      Integer i = indexes.get(key);
+      if (i != null) return i;
+      out.writeByte(CONSTANT_Utf8);
+      out.writeUTF(s);
+      strings.add(s);
+      return add(key, 1);
+    }
+
+    int classEntry(String name) throws IOException {
+      int utf8 = utf8(name);
+      String key = CONSTANT_Class + ":" + utf8;
+      Integer i = indexes.get(key);
+      if (i != null) return i;
+      out.writeByte(CONSTANT_Class);
+      out.writeShort(utf8);
+      classNames.add(name);
+      return add(key, 1);
+    }
+
+    private int entry(int tag, int a, int b) throws IOException {
+      String key = tag + ":" + a + ":" + b;
+      Integer i = indexes.get(key);
+      if (i != null) return i;
+      out.writeByte(tag);
+      out.writeShort(a);
+      if (b >= 0) out.writeShort(b);
+      return add(key, 1);
+    }
+
+    private int raw(int tag, byte[] value, int slots) throws IOException {
+      String key = tag + ":" + Arrays.toString(value);
+      Integer i = indexes.get(key);
+      if (i != null) return i;
+      out.writeByte(tag);
+      out.write(value);
+      return add(key, slots);
+    }
+
+    private int add(String key, int slots) throws IOException {
+      int index = count;
+      count += slots;
+      if (count > 0xffff) {
+        throw new IOException("constant pool too large");
+      }
+      indexes.put(key, index);
+      return index;
+    }
+
+    /** Whether a class is named by a constant of this pool, or in a descriptor or signature. */
+    boolean refersTo(String className) {
+      if (classNames.contains(className)) return true;
+      String plain = "L" + className + ";";
+      String generic = "L" + className + "<";
+      for (String s : strings) {
+        if (s.contains(plain) || s.contains(generic)) return true;
+      }
+      return false;
+    }
+
+    int size() {
+      return bytes.size() + 2;
+    }
+
+    void writeTo(DataOutputStream header) throws IOException {
+      header.writeShort(count);
+      bytes.writeTo(header);
+    }
+  }
+}
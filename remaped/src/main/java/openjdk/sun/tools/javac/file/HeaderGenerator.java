@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import javx.tools.JavaFileObject;
+import javx.tools.StandardLocation;
+import openjdk.sun.source.util.TaskEvent;
+import openjdk.sun.source.util.TaskListener;
+import openjdk.sun.tools.javac.api.MultiTaskListener;
+import openjdk.sun.tools.javac.code.Symbol.ClassSymbol;
+import openjdk.sun.tools.javac.comp.AttrContext;
+import openjdk.sun.tools.javac.comp.Env;
+import openjdk.sun.tools.javac.comp.Todo;
+import openjdk.sun.tools.javac.jvm.ClassWriter;
+import openjdk.sun.tools.javac.main.Arguments;
+import openjdk.sun.tools.javac.resources.CompilerProperties.Errors;
+import openjdk.sun.tools.javac.tree.JCTree;
+import openjdk.sun.tools.javac.tree.JCTree.JCClassDecl;
+import openjdk.sun.tools.javac.util.Context;
+import openjdk.sun.tools.javac.util.DefinedBy;
+import openjdk.sun.tools.javac.util.DefinedBy.Api;
+import openjdk.sun.tools.javac.util.Log;
+import openjdk.sun.tools.javac.util.Options;
+
+/**
+ * Compiles to headers without analyzing method bodies, as turbine does. The compilation is
+ * stopped once its classes have been entered, their members too, and annotation processing is
+ * done: before attribution, flow analysis, desugaring and code generation. When it is finished,
+ * each class declared in a compilation unit is written by the class writer from its symbol,
+ * which has no code, and reduced to its {@linkplain HeaderClassFiles header} on the way out.
+ *
+ * <p>Errors in method bodies are therefore not reported. With {@code -implicit:none}, only the
+ * classes of the input files and of the files generated by annotation processors are written.
+ * Package and module declarations are not written.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class HeaderGenerator implements TaskListener {
+
+  private static final Context.Key<HeaderGenerator> headerGeneratorKey = new Context.Key<>();
+
+  private final Context context;
+  private final JavacFileManager fileManager;
+
+  private HeaderGenerator(Context context, JavacFileManager fileManager) {
+    this.context = context;
+    this.fileManager = fileManager;
+  }
+
+  /**
+   * Makes the compilation of {@code context}, which is yet to be set up, stop after member entry
+   * and write headers when it finishes, unless it is already told where to stop, in which case
+   * the class files that it generates are reduced to headers instead.
+   */
+  static void register(Context context, JavacFileManager fileManager) {
+    if (context.get(headerGeneratorKey) != null) {
+      return;
+    }
+    Options options = Options.instance(context);
+    if (options.isSet("should-stop.at") || options.isSet("should-stop.ifNoError")) {
+      return;
+    }
+    // annotation processing runs, attribution does not
+    options.put("should-stop.ifNoError", "PROCESS");
+    HeaderGenerator generator = new HeaderGenerator(context, fileManager);
+    context.put(headerGeneratorKey, generator);
+    MultiTaskListener.instance(context).add(generator);
+  }
+
+  @Override
+  @DefinedBy(Api.COMPILER_TREE)
+  public void finished(TaskEvent e) {
+    if (e.getKind() != TaskEvent.Kind.COMPILATION) {
+      return;
+    }
+    Log log = Log.instance(context);
+    if (log.nerrors > 0) {
+      return;
+    }
+    Set<JavaFileObject> inputs =
+        "none".equals(Options.instance(context).get("-implicit"))
+            ? Arguments.instance(context).getFileObjects()
+            : null;
+    ClassWriter writer = ClassWriter.instance(context);
+    Set<ClassSymbol> written = new LinkedHashSet<>();
+    for (Env<AttrContext> env : Todo.instance(context)) {
+      if (env.tree instanceof JCClassDecl tree && isWritten(env.toplevel.sourcefile, inputs)) {
+        JavaFileObject prev = log.useSource(env.toplevel.sourcefile);
+        try {
+          write(writer, log, tree, written);
+        } finally {
+          log.useSource(prev);
+        }
+      }
+    }
+  }
+
+  private boolean isWritten(JavaFileObject file, Set<JavaFileObject> inputs) {
+    if (inputs == null || inputs.contains(file)) {
+      return true;
+    }
+    try {
+      return fileManager.contains(StandardLocation.SOURCE_OUTPUT, file);
+    } catch (IOException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /** Writes a class and its member classes, as code generation would. */
+  private static void write(
+      ClassWriter writer, Log log, JCClassDecl tree, Set<ClassSymbol> written) {
+    ClassSymbol c = tree.sym;
+    if (c == null || !written.add(c)) {
+      return;
+    }
+    try {
+      writer.writeClass(c);
+    } catch (IOException ex) {
+      log.error(tree.pos(), Errors.ClassCantWrite(c, ex.getMessage()));
+    } catch (ClassWriter.PoolOverflow ex) {
+      log.error(tree.pos(), Errors.LimitPool);
+    } catch (ClassWriter.StringOverflow ex) {
+      log.error(tree.pos(), Errors.LimitStringOverflow(ex.value.substring(0, 20)));
+    }
+    for (JCTree def : tree.defs) {
+      if (def instanceof JCClassDecl member) {
+        write(writer, log, member, written);
+      }
+    }
+  }
+}
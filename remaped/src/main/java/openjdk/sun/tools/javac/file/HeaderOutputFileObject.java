@@ -0,0 +1,66 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javx.tools.ForwardingJavaFileObject;
+import javx.tools.JavaFileObject;
+
+/**
+ * A class file output that receives the {@linkplain HeaderClassFiles header} of the class file
+ * written to it. Nothing is written for a local or anonymous class. A class file that cannot be
+ * reduced is written as it is, which is still fine to compile against.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class HeaderOutputFileObject extends ForwardingJavaFileObject<JavaFileObject> {
+
+  HeaderOutputFileObject(JavaFileObject delegate) {
+    super(delegate);
+  }
+
+  @Override
+  public OutputStream openOutputStream() {
+    return new ByteArrayOutputStream() {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        byte[] classFile = toByteArray();
+        byte[] header;
+        try {
+          header = HeaderClassFiles.header(classFile);
+        } catch (IOException e) {
+          header = classFile;
+        }
+        if (header != null) {
+          try (OutputStream out = fileObject.openOutputStream()) {
+            out.write(header);
+          }
+        }
+      }
+    };
+  }
+}
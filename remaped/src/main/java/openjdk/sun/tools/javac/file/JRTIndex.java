@@ -29,7 +29,6 @@ import static openjdk.sun.tools.reflection.android.AndroidSupport.isDalvik;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.lang.ref.SoftReference;
 import java.net.URI;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
@@ -38,14 +37,15 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.ProviderNotFoundException;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.NoSuchElementException;
 import java.util.ResourceBundle;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
 import javax.tools.FileObject;
 import openjdk.sun.tools.javac.file.RelativePath.RelativeDirectory;
 import openjdk.sun.tools.javac.util.Context;
@@ -54,17 +54,27 @@ import org.kodtik.ide.zipfs2.AndroidFsProvider;
 /** A package-oriented index into the jrt: filesystem. */
 public class JRTIndex {
   /** Get a shared instance of the cache. */
-  private static JRTIndex sharedInstance;
+  private static volatile JRTIndex sharedInstance;
 
-  public static synchronized JRTIndex getSharedInstance() {
-    if (sharedInstance == null) {
-      try {
+  /** Guards creating the shared instance; a lock rather than a monitor, as it is held over I/O. */
+  private static final ReentrantLock sharedInstanceLock = new ReentrantLock();
+
+  public static JRTIndex getSharedInstance() {
+    JRTIndex instance = sharedInstance;
+    if (instance != null) {
+      return instance;
+    }
+    sharedInstanceLock.lock();
+    try {
+      if (sharedInstance == null) {
         sharedInstance = new JRTIndex();
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
       }
+      return sharedInstance;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      sharedInstanceLock.unlock();
     }
-    return sharedInstance;
   }
 
   /** Get a context-specific instance of a cache. */
@@ -95,28 +105,62 @@ public class JRTIndex {
   /** The jrt: file system. */
   private final FileSystem jrtfs;
 
-  /** A lazily evaluated set of entries about the contents of the jrt: file system. */
-  private final Map<RelativeDirectory, SoftReference<Entry>> entries;
+  /**
+   * A lazily evaluated set of entries about the contents of the jrt: file system. Entries are
+   * held until {@linkplain MemoryPressure memory is short}: at a moderate level, those not used
+   * since the previous time memory was short are dropped, and at a critical level all are.
+   */
+  private final Map<RelativeDirectory, Entry> entries;
+
+  /** Kept here, as {@link MemoryPressure} holds its listeners weakly. */
+  private final MemoryPressure.Listener memoryListener = this::shed;
 
   /** An entry provides cached info about a specific package directory within jrt:. */
   class Entry {
+    /** The package directory this entry describes. */
+    final RelativeDirectory dir;
+
     /**
-     * The regular files for this package. For now, assume just one instance of each file across all
-     * modules.
+     * The regular files for this package, by name, each with the directory of its module. For
+     * now, assume just one instance of each file across all modules.
      */
-    final Map<String, Path> files;
+    final NameTable files;
 
-    /** The set of subdirectories in jrt: for this package. */
-    final Set<RelativeDirectory> subdirs;
+    /** The names of the subdirectories in jrt: for this package. */
+    final NameTable subdirNames;
 
     /** The info that used to be in ct.sym for classes in this package. */
     final CtSym ctSym;
 
-    private Entry(Map<String, Path> files, Set<RelativeDirectory> subdirs, CtSym ctSym) {
+    /** Whether the entry was used since memory was last short. */
+    volatile boolean referenced = true;
+
+    private Entry(RelativeDirectory dir, NameTable files, NameTable subdirNames, CtSym ctSym) {
+      this.dir = dir;
       this.files = files;
-      this.subdirs = subdirs;
+      this.subdirNames = subdirNames;
       this.ctSym = ctSym;
     }
+
+    /** The subdirectories in jrt: for this package, created as they are reached. */
+    Iterable<RelativeDirectory> subdirs() {
+      List<String> names = subdirNames.names();
+      return () ->
+          new Iterator<RelativeDirectory>() {
+            int i;
+
+            @Override
+            public boolean hasNext() {
+              return i < names.size();
+            }
+
+            @Override
+            public RelativeDirectory next() {
+              if (!hasNext()) throw new NoSuchElementException();
+              return new RelativeDirectory(dir, names.get(i++));
+            }
+          };
+    }
   }
 
   /** The info that used to be in ct.sym for classes in a package. */
@@ -169,19 +213,40 @@ public class JRTIndex {
       jrtfs = FileSystems.getFileSystem(URI.create("jrt:/"));
     }
 
-    entries = new HashMap<>();
+    entries = new ConcurrentHashMap<>();
+    MemoryPressure.addListener(memoryListener);
   }
 
   public CtSym getCtSym(CharSequence packageName) throws IOException {
     return getEntry(RelativeDirectory.forPackage(packageName)).ctSym;
   }
 
-  synchronized Entry getEntry(RelativeDirectory rd) throws IOException {
-    SoftReference<Entry> ref = entries.get(rd);
-    Entry e = (ref == null) ? null : ref.get();
+  Entry getEntry(RelativeDirectory rd) throws IOException {
+    return getEntry(rd, null);
+  }
+
+  /**
+   * Get the entry for a package directory, recording the lookup in {@code metrics} if given. An
+   * entry is read without a lock held, so threads that miss on the same directory at once each
+   * read it, and the last one read is kept.
+   */
+  Entry getEntry(RelativeDirectory rd, FileManagerMetrics metrics) throws IOException {
+    Entry e = entries.get(rd);
+    if (e != null && !e.referenced) {
+      e.referenced = true;
+    }
+    if (metrics != null) {
+      if (e != null) {
+        metrics.hit(FileManagerMetrics.Cache.JRT_INDEX);
+      } else {
+        metrics.miss(FileManagerMetrics.Cache.JRT_INDEX);
+      }
+    }
     if (e == null) {
-      Map<String, Path> files = new LinkedHashMap<>();
-      Set<RelativeDirectory> subdirs = new LinkedHashSet<>();
+      long start = System.nanoTime();
+      Object event = FileManagerEvents.beginJRTIndexEntry();
+      NameTable.Builder files = new NameTable.Builder();
+      NameTable.Builder subdirs = new NameTable.Builder();
       Path dir;
       if (rd.path.isEmpty()) {
         dir = jrtfs.getPath("/modules");
@@ -200,25 +265,82 @@ public class JRTIndex {
                 String name = entry.getFileName().toString();
                 if (Files.isRegularFile(entry)) {
                   // TODO: consider issue of files with same name in different modules
-                  files.put(name, entry);
+                  files.add(name, p);
                 } else if (Files.isDirectory(entry)) {
-                  subdirs.add(new RelativeDirectory(rd, name));
+                  subdirs.add(name);
                 }
               }
             }
           }
         }
       }
-      e =
-          new Entry(
-              Collections.unmodifiableMap(files),
-              Collections.unmodifiableSet(subdirs),
-              getCtInfo(rd));
-      entries.put(rd, new SoftReference<>(e));
+      e = new Entry(rd, files.build(), subdirs.build(), getCtInfo(rd));
+      entries.put(rd, e);
+      FileManagerEvents.commitJRTIndexEntry(event, rd, files.size(), subdirs.size());
+      if (metrics != null) metrics.timed(FileManagerMetrics.Operation.JRT_INDEX_ENTRY, start);
     }
     return e;
   }
 
+  /** Whether an entry is held for every package, as read by {@link #preload}. */
+  private volatile boolean preloaded;
+
+  /**
+   * Reads the entry of every package in the jrt: file system that is not yet held, stopping
+   * early once {@code stop} returns true.
+   */
+  void preload(BooleanSupplier stop) throws IOException {
+    if (preloaded) {
+      return;
+    }
+    try (DirectoryStream<Path> packages = Files.newDirectoryStream(jrtfs.getPath("/packages"))) {
+      for (Path p : packages) {
+        if (stop.getAsBoolean()) {
+          return;
+        }
+        getEntry(RelativeDirectory.forPackage(p.getFileName().toString()), null);
+      }
+    }
+    preloaded = true;
+  }
+
+  /** The number of package entries currently held. */
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Drops the entries {@code level} calls for: at {@link MemoryPressure.Level#MODERATE}, those
+   * not used since the previous call, and at {@link MemoryPressure.Level#CRITICAL}, all of them.
+   *
+   * @return the number of entries dropped
+   */
+  int shed(MemoryPressure.Level level) {
+    int size = entries.size();
+    switch (level) {
+      case LOW:
+        return 0;
+      case MODERATE:
+        entries
+            .values()
+            .removeIf(
+                e -> {
+                  if (!e.referenced) return true;
+                  e.referenced = false;
+                  return false;
+                });
+        break;
+      case CRITICAL:
+        entries.clear();
+        break;
+    }
+    int dropped = Math.max(0, size - entries.size());
+    if (dropped > 0) {
+      preloaded = false;
+    }
+    return dropped;
+  }
+
   public boolean isInJRT(FileObject fo) {
     if (fo instanceof PathFileObject pathFileObject) {
       Path path = pathFileObject.getPath();
@@ -259,5 +381,5 @@ public class JRTIndex {
     }
   }
 
-  private ResourceBundle ctBundle;
+  private volatile ResourceBundle ctBundle;
 }
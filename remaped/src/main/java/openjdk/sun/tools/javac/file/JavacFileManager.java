@@ -26,20 +26,26 @@
 package openjdk.sun.tools.javac.file;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.FileVisitOption.FOLLOW_LINKS;
 import static javx.tools.StandardLocation.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.module.Configuration;
 import java.lang.module.ModuleFinder;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitOption;
@@ -53,18 +59,38 @@ import java.nio.file.ProviderNotFoundException;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.spi.FileSystemProvider;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.jar.Manifest;
 import java.util.stream.Stream;
 import java.util.zip.ZipException;
 import javx.lang.model.SourceVersion;
@@ -72,6 +98,10 @@ import javx.tools.FileObject;
 import javx.tools.JavaFileManager;
 import javx.tools.JavaFileObject;
 import javx.tools.StandardJavaFileManager;
+import javx.tools.StandardLocation;
+import openjdk.sun.source.util.TaskEvent;
+import openjdk.sun.source.util.TaskListener;
+import openjdk.sun.tools.javac.api.MultiTaskListener;
 import openjdk.sun.tools.javac.file.RelativePath.RelativeDirectory;
 import openjdk.sun.tools.javac.file.RelativePath.RelativeFile;
 import openjdk.sun.tools.javac.main.Option;
@@ -84,6 +114,7 @@ import openjdk.sun.tools.javac.util.DefinedBy.Api;
 import openjdk.sun.tools.javac.util.List;
 import openjdk.sun.tools.javac.util.ListBuffer;
 import openjdk.sun.tools.javac.util.Options;
+import openjdk.sun.tools.javac.util.StringUtils;
 
 
 /**
@@ -98,6 +129,9 @@ import openjdk.sun.tools.javac.util.Options;
 public class JavacFileManager extends BaseFileManager implements StandardJavaFileManager {
 
     public static char[] toArray(CharBuffer buffer) {
+        // the decoded content is usually at the start of its array already
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0)
+            return buffer.array();
         if (buffer.hasArray())
             return buffer.compact().flip().array();
         else
@@ -135,13 +169,31 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
      * the values for every Location+RelativeDirectory pair. Once the PathsAndContainers are needed
      * for a single Location, we should know all valid RelativeDirectory mappings. Because the
      * indexing is costly for very large classpaths, this can result in a significant savings.
+     *
+     * <p>The outer maps are concurrent, as indexes built by {@link #prefetch} are published from
+     * background threads; an index, once published, is only used by the compiling thread.
      */
     private Map<Location, Map<RelativeDirectory, java.util.List<PathAndContainer>>>
-        pathsAndContainersByLocationAndRelativeDirectory = new HashMap<>();
+        pathsAndContainersByLocationAndRelativeDirectory = new ConcurrentHashMap<>();
 
     /** Containers that have no indexing by {@link RelativeDirectory}, keyed by {@link Location}. */
     private Map<Location, java.util.List<PathAndContainer>> nonIndexingContainersByLocation =
-        new HashMap<>();
+        new ConcurrentHashMap<>();
+
+    /**
+     * Guards {@link #indexGeneration}, and publishing an index built in the background against
+     * the indexes being cleared.
+     */
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    /** Counts the times location indexes were cleared, so that stale prefetches are dropped. */
+    private long indexGeneration;
+
+    /**
+     * Guards the state that {@link Locations} computes lazily for module-oriented locations, and
+     * changes to locations, against module names being resolved by {@link #prefetch}.
+     */
+    private final ReentrantLock locationsLock = new ReentrantLock();
 
     /**
      * Register a Context.Factory to create a JavacFileManager.
@@ -161,6 +213,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         if (register)
             context.put(JavaFileManager.class, this);
         setContext(context);
+        MemoryPressure.addListener(memoryListener);
     }
 
     /**
@@ -168,10 +221,13 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
      */
     @Override
     public void setContext(Context context) {
+        this.context = context;
         super.setContext(context);
         fsInfo = FSInfo.instance(context);
     }
 
+    private Context context;
+
     @Override
     protected void applyOptions(Options options) {
         super.applyOptions(options);
@@ -182,6 +238,64 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         if (sf != null) {
             sortFiles = (sf.equals("reverse") ? SortFiles.REVERSE : SortFiles.FORWARD);
         }
+
+        // -d cannot name an existing file, so a class output archive is given with -XD
+        String jar = options.get("classOutputJar");
+        if (jar != null) {
+            if (options.isSet("classOutputJarStored")) {
+                outputArchiveStored = true;
+            }
+            try {
+                setLocationFromPaths(CLASS_OUTPUT, java.util.List.of(getPath(jar)));
+            } catch (IOException | IllegalArgumentException e) {
+                log.error(Errors.InvalidPath(jar));
+            }
+        }
+
+        if (options.isSet("headerOutput")) {
+            headerOutput = true;
+        }
+        if (headerOutput && context != null)
+            HeaderGenerator.register(context, this);
+
+        // -XDasyncOutput or -XDasyncOutput=<threads>
+        String async = options.get("asyncOutput");
+        if (async != null) {
+            int threads = DEFAULT_ASYNC_OUTPUT_THREADS;
+            try {
+                threads = Integer.parseInt(async);
+            } catch (NumberFormatException e) {
+                // just the flag
+            }
+            asyncOutput = (threads > 0) ? new AsyncOutputWriter(this, threads) : null;
+        }
+        if (context != null && context != asyncOutputContext) {
+            asyncOutputContext = context;
+            MultiTaskListener.instance(context).add(new AsyncOutputReporter());
+        }
+
+        // -XDsharedContentCache or -XDsharedContentCache=<megabytes>
+        String shared = options.get("sharedContentCache");
+        if (shared != null) {
+            SharedContentCache cache = SharedContentCache.getSharedInstance();
+            try {
+                cache.setMaxBytes(Long.parseLong(shared) << 20);
+            } catch (NumberFormatException e) {
+                // just the flag
+            }
+            setContentCache(cache);
+        }
+
+        // -XDdependencyGraph=<file>
+        String graph = options.get("dependencyGraph");
+        if (graph != null) {
+            dependencyGraphFile = getPath(graph);
+            if (dependencyRecorder == null)
+                dependencyRecorder = new DependencyRecorder();
+        }
+        DependencyRecorder deps = dependencyRecorder;
+        if (deps != null && context != null)
+            DependencyRecorder.CompletionRecorder.register(context, deps, log);
     }
 
     @Override @DefinedBy(DefinedBy.Api.COMPILER)
@@ -291,18 +405,38 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         System.out.println(message);
     }
 
-    private final Map<Path, Container> containers = new HashMap<>();
+    private final Map<Path, Container> containers = new ConcurrentHashMap<>();
+
+    /**
+     * Guards changes to {@link #containers} that involve more than one entry. Containers are
+     * opened outside it, so that a thread opening an archive does not hold up lookups of other
+     * paths, nor pin the carrier of a virtual thread; when two threads open the same path, the
+     * one that registers its container second closes it and uses the first.
+     */
+    private final ReentrantLock containersLock = new ReentrantLock();
 
-  synchronized Container getContainer(Path path) throws IOException {
+  Container getContainer(Path path) throws IOException {
     Container fs = containers.get(path);
 
     if (fs != null) {
+      metrics.hit(FileManagerMetrics.Cache.CONTAINERS);
       return fs;
     }
 
+    metrics.miss(FileManagerMetrics.Cache.CONTAINERS);
+    long start = System.nanoTime();
+    Object event = FileManagerEvents.beginGetContainer();
+    fs = openContainer(path);
+    FileManagerEvents.commitGetContainer(event, path, containerKind(fs));
+    metrics.timed(FileManagerMetrics.Operation.OPEN_CONTAINER, start);
+    return fs;
+  }
+
+  private Container openContainer(Path path) throws IOException {
+    Container fs;
+
     if (fsInfo.isFile(path) && path.equals(Locations.thisSystemModules)) {
-      containers.put(path, fs = new JRTImageContainer());
-      return fs;
+      return register(path, null, new JRTImageContainer());
     }
 
     Path realPath = fsInfo.getCanonicalFile(path);
@@ -310,8 +444,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     fs = containers.get(realPath);
 
     if (fs != null) {
-      containers.put(path, fs);
-      return fs;
+      return register(path, realPath, fs);
     }
 
     BasicFileAttributes attr = null;
@@ -339,9 +472,16 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
       }
     }
 
-    if (attr != null) {
+    Map.Entry<Path, String> nested;
+    if (attr == null && memoryOverlay.containsUnder(realPath)) {
+      fs = new DirectoryContainer(realPath);
+    } else if (attr == null && (nested = NestedArchive.split(path)) != null) {
+      fs = new NestedArchiveContainer(NestedArchive.open(nested.getKey(), nested.getValue()));
+    } else if (attr != null) {
       if (attr.isDirectory()) {
         fs = new DirectoryContainer(realPath);
+      } else if (NestedArchive.isAar(realPath)) {
+        fs = new NestedArchiveContainer(NestedArchive.open(realPath, NestedArchive.AAR_CLASSES));
       } else {
         try {
           fs = new ArchiveContainer(path);
@@ -351,10 +491,38 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
       }
     }
 
-    containers.put(realPath, fs);
-    containers.put(path, fs);
+    return register(path, realPath, fs);
+  }
 
-    return fs;
+  /**
+   * Makes {@code fs} the container of {@code path} and {@code realPath}, unless another thread
+   * registered one first, in which case {@code fs} is closed and that container is returned.
+   */
+  private Container register(Path path, Path realPath, Container fs) throws IOException {
+    Container existing;
+    containersLock.lock();
+    try {
+      existing = containers.get(path);
+      if (existing == null && realPath != null) existing = containers.get(realPath);
+      if (existing == null) {
+        if (realPath != null) containers.put(realPath, fs);
+        containers.put(path, fs);
+        return fs;
+      }
+      containers.put(path, existing);
+    } finally {
+      containersLock.unlock();
+    }
+    if (existing != fs) fs.close();
+    return existing;
+  }
+
+  private static String containerKind(Container container) {
+    if (container instanceof DirectoryContainer) return "directory";
+    if (container instanceof ArchiveContainer) return "archive";
+    if (container instanceof NestedArchiveContainer) return "nested archive";
+    if (container instanceof JRTImageContainer) return "jrt";
+    return "missing";
   }
 
     private interface Container {
@@ -367,6 +535,22 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                   Set<JavaFileObject.Kind> fileKinds,
                                   boolean recurse,
                                   ListBuffer<JavaFileObject> resultList) throws IOException;
+
+        /**
+         * Insert the binary names of all files in subdirectory subdirectory of container
+         * which match fileKinds into resultList, without creating file objects for them
+         */
+        public default void listNames(Path userPath,
+                                      RelativeDirectory subdirectory,
+                                      Set<JavaFileObject.Kind> fileKinds,
+                                      boolean recurse,
+                                      ListBuffer<String> resultList) throws IOException {
+            ListBuffer<JavaFileObject> files = new ListBuffer<>();
+            list(userPath, subdirectory, fileKinds, recurse, files);
+            for (JavaFileObject fo : files)
+                resultList.append(((PathFileObject) fo).inferBinaryName(List.of(userPath)));
+        }
+
         public abstract JavaFileObject getFileObject(Path userPath, RelativeFile name) throws IOException;
         public abstract void close() throws IOException;
         public abstract boolean maintainsDirectoryIndex();
@@ -376,6 +560,18 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
          * an empty iterable.
          */
         public abstract Iterable<RelativeDirectory> indexedDirectories();
+
+        /**
+         * A digest of what this container makes visible, for {@link #getLocationFingerprint}.
+         */
+        public abstract byte[] fingerprint() throws IOException;
+
+        /**
+         * Whether what this container was opened from has changed on disk since.
+         */
+        public default boolean isStale() {
+            return false;
+        }
     }
 
     private static final Container MISSING_CONTAINER =  new Container() {
@@ -400,9 +596,23 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         public Iterable<RelativeDirectory> indexedDirectories() {
             return List.nil();
         }
+        @Override
+        public byte[] fingerprint() {
+            return Fingerprints.MISSING;
+        }
     };
 
     private final class JRTImageContainer implements Container {
+        // racing threads may each compute it, rather than wait on a lock held over the I/O
+        private volatile byte[] fingerprint;
+
+        @Override
+        public byte[] fingerprint() throws IOException {
+            byte[] f = fingerprint;
+            if (f == null)
+                fingerprint = f = Fingerprints.image(Locations.thisSystemModules);
+            return f;
+        }
 
         /**
          * Insert all files in a subdirectory of the platform image
@@ -414,21 +624,46 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                          Set<JavaFileObject.Kind> fileKinds,
                          boolean recurse,
                          ListBuffer<JavaFileObject> resultList) throws IOException {
+            list(userPath, subdirectory, fileKinds, recurse, resultList, null);
+        }
+
+        @Override
+        public void listNames(Path userPath,
+                              RelativeDirectory subdirectory,
+                              Set<JavaFileObject.Kind> fileKinds,
+                              boolean recurse,
+                              ListBuffer<String> resultList) throws IOException {
+            list(userPath, subdirectory, fileKinds, recurse, null, resultList);
+        }
+
+        /**
+         * Lists into exactly one of resultList and nameList.
+         */
+        private void list(Path userPath,
+                          RelativeDirectory subdirectory,
+                          Set<JavaFileObject.Kind> fileKinds,
+                          boolean recurse,
+                          ListBuffer<JavaFileObject> resultList,
+                          ListBuffer<String> nameList) {
             try {
-                JRTIndex.Entry e = getJRTIndex().getEntry(subdirectory);
+                JRTIndex.Entry e = getJRTIndex().getEntry(subdirectory, metrics);
                 if (symbolFileEnabled && e.ctSym.hidden)
                     return;
-                for (Path file: e.files.values()) {
-                    if (fileKinds.contains(getKind(file))) {
-                        JavaFileObject fe
-                                = PathFileObject.forJRTPath(JavacFileManager.this, file);
-                        resultList.append(fe);
+                for (int i = 0; i < e.files.size(); i++) {
+                    String fname = e.files.name(i);
+                    if (fileKinds.contains(getKind(fname))) {
+                        if (nameList != null) {
+                            nameList.append(binaryName(subdirectory, fname));
+                        } else {
+                            resultList.append(PathFileObject.forJRTPath(JavacFileManager.this,
+                                    e.files.path(i)));
+                        }
                     }
                 }
 
                 if (recurse) {
-                    for (RelativeDirectory rd: e.subdirs) {
-                        list(userPath, rd, fileKinds, recurse, resultList);
+                    for (RelativeDirectory rd: e.subdirs()) {
+                        list(userPath, rd, fileKinds, recurse, resultList, nameList);
                     }
                 }
             } catch (IOException ex) {
@@ -439,7 +674,7 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
         @Override
         public JavaFileObject getFileObject(Path userPath, RelativeFile name) throws IOException {
-            JRTIndex.Entry e = getJRTIndex().getEntry(name.dirname());
+            JRTIndex.Entry e = getJRTIndex().getEntry(name.dirname(), metrics);
             if (symbolFileEnabled && e.ctSym.hidden)
                 return null;
             Path p = e.files.get(name.basename());
@@ -465,13 +700,14 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         }
     }
 
-    private synchronized JRTIndex getJRTIndex() {
-        if (jrtIndex == null)
-            jrtIndex = JRTIndex.getSharedInstance();
-        return jrtIndex;
+    private JRTIndex getJRTIndex() {
+        JRTIndex index = jrtIndex;
+        if (index == null)
+            jrtIndex = index = JRTIndex.getSharedInstance();
+        return index;
     }
 
-    private JRTIndex jrtIndex;
+    private volatile JRTIndex jrtIndex;
 
     private final class DirectoryContainer implements Container {
         private final Path directory;
@@ -480,6 +716,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             this.directory = directory;
         }
 
+        /** Directories change file by file, so they are summarized on every call. */
+        @Override
+        public byte[] fingerprint() throws IOException {
+            return Fingerprints.directory(directory);
+        }
+
         /**
          * Insert all files in subdirectory subdirectory of directory userPath
          * which match fileKinds into resultList
@@ -490,26 +732,55 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                          Set<JavaFileObject.Kind> fileKinds,
                          boolean recurse,
                          ListBuffer<JavaFileObject> resultList) throws IOException {
+            list(userPath, subdirectory, fileKinds, recurse, resultList, null);
+        }
+
+        @Override
+        public void listNames(Path userPath,
+                              RelativeDirectory subdirectory,
+                              Set<JavaFileObject.Kind> fileKinds,
+                              boolean recurse,
+                              ListBuffer<String> resultList) throws IOException {
+            list(userPath, subdirectory, fileKinds, recurse, null, resultList);
+        }
+
+        /**
+         * Lists into exactly one of resultList and nameList.
+         */
+        private void list(Path userPath,
+                          RelativeDirectory subdirectory,
+                          Set<JavaFileObject.Kind> fileKinds,
+                          boolean recurse,
+                          ListBuffer<JavaFileObject> resultList,
+                          ListBuffer<String> nameList) throws IOException {
             Path d;
+            Path overlayDir;
             try {
                 d = subdirectory.resolveAgainst(userPath);
+                overlayDir = subdirectory.resolveAgainst(directory);
             } catch (InvalidPathException ignore) {
                 return ;
             }
 
-            if (!Files.exists(d)) {
-               return;
-            }
-
-            if (!caseMapCheck(d, subdirectory)) {
-                return;
-            }
+            // files held in memory shadow those on disk, and may be in directories that
+            // do not exist on disk
+            Map<String, MemoryOverlay.Entry> overlaid = memoryOverlay.list(overlayDir);
+            Set<String> overlaidDirs = recurse
+                    ? memoryOverlay.subdirectories(overlayDir)
+                    : Collections.emptySet();
 
             java.util.List<Path> files;
-            try (Stream<Path> s = Files.list(d)) {
-                files = (sortFiles == null ? s : s.sorted(sortFiles)).toList();
-            } catch (IOException ignore) {
-                return;
+            if (!Files.exists(d) || !caseMapCheck(d, subdirectory)) {
+                if (overlaid.isEmpty() && overlaidDirs.isEmpty()) {
+                    return;
+                }
+                files = java.util.List.of();
+            } else {
+                try (Stream<Path> s = Files.list(d)) {
+                    files = (sortFiles == null ? s : s.sorted(sortFiles)).toList();
+                } catch (IOException ignore) {
+                    return;
+                }
             }
 
             for (Path f: files) {
@@ -517,15 +788,21 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                 if (fname.endsWith("/"))
                     fname = fname.substring(0, fname.length() - 1);
                 if (Files.isDirectory(f)) {
+                    overlaidDirs.remove(fname);
                     if (recurse && SourceVersion.isIdentifier(fname)) {
                         list(userPath,
                              new RelativeDirectory(subdirectory, fname),
                              fileKinds,
                              recurse,
-                             resultList);
+                             resultList,
+                             nameList);
                     }
-                } else {
+                } else if (!overlaid.containsKey(fname)) {
                     if (isValidFile(fname, fileKinds)) {
+                        if (nameList != null) {
+                            nameList.append(binaryName(subdirectory, fname));
+                            continue;
+                        }
                         try {
                             RelativeFile file = new RelativeFile(subdirectory, fname);
                             JavaFileObject fe = PathFileObject.forDirectoryPath(JavacFileManager.this,
@@ -537,12 +814,37 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                     }
                 }
             }
+
+            for (String dname : overlaidDirs) {
+                if (SourceVersion.isIdentifier(dname)) {
+                    list(userPath,
+                         new RelativeDirectory(subdirectory, dname),
+                         fileKinds,
+                         recurse,
+                         resultList,
+                         nameList);
+                }
+            }
+            for (String fname : overlaid.keySet()) {
+                if (isValidFile(fname, fileKinds)) {
+                    if (nameList != null) {
+                        nameList.append(binaryName(subdirectory, fname));
+                        continue;
+                    }
+                    RelativeFile file = new RelativeFile(subdirectory, fname);
+                    resultList.append(new MemoryFileObject(JavacFileManager.this,
+                            file.resolveAgainst(directory), file.resolveAgainst(userPath), file));
+                }
+            }
         }
 
         @Override
         public JavaFileObject getFileObject(Path userPath, RelativeFile name) throws IOException {
             try {
                 Path f = name.resolveAgainst(userPath);
+                Path overlaid = name.resolveAgainst(directory);
+                if (memoryOverlay.get(overlaid) != null)
+                    return new MemoryFileObject(JavacFileManager.this, overlaid, f, name);
                 if (Files.exists(f))
                     return PathFileObject.forSimplePath(JavacFileManager.this,
                             fsInfo.getCanonicalFile(f), f);
@@ -569,20 +871,75 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     private static final Set<FileVisitOption> NO_FILE_VISIT_OPTIONS = Set.of();
     private static final Set<FileVisitOption> FOLLOW_LINKS_OPTIONS = Set.of(FOLLOW_LINKS);
 
+    /** A package directory of an archive, and the version directory it is in, if any. */
+    private record PackageDirectory(Path directory, Path versionRoot) {}
+
+    /**
+     * The packages of a multi-release jar as seen for one release: the directories of each
+     * package with versioned entries, highest version first and the base directory last, and
+     * all package directories.
+     */
+    private record ReleaseView(Map<RelativeDirectory, PackageDirectory[]> overlays,
+                               Set<RelativeDirectory> directories) {}
+
+    /**
+     * The release whose entries of multi-release jars are used, or 0 for their base entries
+     * only.
+     */
+    private int multiReleaseVersion() {
+        String value = multiReleaseValue;
+        if (value == null)
+            return 0;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * An archive on a search path. A multi-release jar is opened once, without a versioned
+     * view, and its base and versioned package directories are indexed separately; the view
+     * for the release being compiled for is derived from them on first use, so the container
+     * serves compilations for any number of releases.
+     */
     private final class ArchiveContainer implements Container {
         private final Path archivePath;
         private final FileSystem fileSystem;
-        private final Map<RelativeDirectory, Path> packages;
+        /**
+         * The package directories, by the path of their {@link RelativeDirectory}, each with the
+         * root it is in. The paths of the directories are created as they are used, rather than
+         * held for the life of the container.
+         */
+        private final NameTable packages;
+        /** The package directories under each {@code META-INF/versions/N}, by {@code N}. */
+        private final NavigableMap<Integer, NameTable> versionedPackages;
+        /** The {@code META-INF/versions/N} directories, by {@code N}. */
+        private final Map<Integer, Path> versionRoots;
+        /** The release views built so far, by the highest version they include. */
+        private final Map<Integer, ReleaseView> releaseViews = new ConcurrentHashMap<>();
+        private final BasicFileAttributes openedAttributes;
+        private volatile byte[] fingerprint;
+        /**
+         * Held while the file system's directories are read. A zip file system takes its lock
+         * for each directory stream while holding the stream's monitor, so listings made
+         * concurrently from virtual threads would pin their carriers waiting for one another;
+         * they wait for this lock instead.
+         */
+        private final ReentrantLock listLock = new ReentrantLock();
 
         public ArchiveContainer(Path archivePath) throws IOException, ProviderNotFoundException {
+            Object event = FileManagerEvents.beginArchiveOpen();
             this.archivePath = archivePath;
             Map<String,String> env = new HashMap<>();
             // ignores timestamps not stored in ZIP central directory, reducing I/O
             // This key is handled by ZipFileSystem only.
             env.put("zipinfo-time", "false");
 
-            if (multiReleaseValue != null && archivePath.toString().endsWith(".jar")) {
-                env.put("multi-release", multiReleaseValue);
+            // versioned entries are resolved here, per release, rather than by the
+            // "multi-release" view of the file system, which is fixed when it is opened
+            boolean isJar = archivePath.toString().endsWith(".jar");
+            if (multiReleaseValue != null && isJar) {
                 FileSystemProvider jarFSProvider = fsInfo.getJarFSProvider();
                 Assert.checkNonNull(jarFSProvider, "should have been caught before!");
                 try {
@@ -595,20 +952,133 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                 // or if non "*.jar" files are on the classpath.
                 this.fileSystem = FileSystems.newFileSystem(archivePath, env, (ClassLoader)null);
             }
-            packages = new HashMap<>();
+            NameTable.Builder index = new NameTable.Builder();
+            versionedPackages = new TreeMap<>();
+            versionRoots = new HashMap<>();
             for (Path root : fileSystem.getRootDirectories()) {
-                Files.walkFileTree(root, NO_FILE_VISIT_OPTIONS, Integer.MAX_VALUE,
-                        new SimpleFileVisitor<Path>() {
-                            @Override
-                            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                                if (isValid(dir.getFileName())) {
-                                    packages.put(new RelativeDirectory(root.relativize(dir).toString()), dir);
-                                    return FileVisitResult.CONTINUE;
-                                } else {
-                                    return FileVisitResult.SKIP_SUBTREE;
-                                }
+                indexPackages(root, index);
+                if (isJar && isMultiRelease(root)) {
+                    indexVersions(root.resolve("META-INF").resolve("versions"));
+                }
+            }
+            packages = index.build();
+            FileManagerEvents.commitArchiveOpen(event, archivePath,
+                    versionedPackages.isEmpty() ? null : versionedPackages.keySet().toString(),
+                    packages.size());
+            BasicFileAttributes attrs = null;
+            try {
+                attrs = Files.readAttributes(archivePath, BasicFileAttributes.class);
+                metrics.archiveMapped(attrs.size());
+            } catch (IOException ignore) {
+            }
+            openedAttributes = attrs;
+        }
+
+        private void indexPackages(Path root, NameTable.Builder index)
+                throws IOException {
+            Files.walkFileTree(root, NO_FILE_VISIT_OPTIONS, Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                            if (dir.equals(root) || isValid(dir.getFileName())) {
+                                index.add(new RelativeDirectory(root.relativize(dir).toString()).path, root);
+                                return FileVisitResult.CONTINUE;
+                            } else {
+                                return FileVisitResult.SKIP_SUBTREE;
                             }
-                        });
+                        }
+                    });
+        }
+
+        private boolean isMultiRelease(Path root) throws IOException {
+            Path mf = root.resolve("META-INF").resolve("MANIFEST.MF");
+            if (!Files.isRegularFile(mf))
+                return false;
+            try (InputStream in = Files.newInputStream(mf)) {
+                String value = new Manifest(in).getMainAttributes().getValue("Multi-Release");
+                return "true".equalsIgnoreCase(value);
+            }
+        }
+
+        private void indexVersions(Path versions) throws IOException {
+            if (!Files.isDirectory(versions))
+                return;
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(versions)) {
+                for (Path dir : ds) {
+                    int version;
+                    try {
+                        version = Integer.parseInt(dir.getFileName().toString().replace("/", ""));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    // as for java.util.jar.JarFile, versions before 9 are not used
+                    if (version >= 9 && Files.isDirectory(dir)) {
+                        NameTable.Builder index = new NameTable.Builder();
+                        indexPackages(dir, index);
+                        versionedPackages.put(version, index.build());
+                        versionRoots.put(version, dir);
+                    }
+                }
+            }
+        }
+
+        /**
+         * The view of this archive for the release being compiled for, or {@code null} if that
+         * is just its base entries.
+         */
+        private ReleaseView releaseView() {
+            if (versionedPackages.isEmpty())
+                return null;
+            Integer top = versionedPackages.floorKey(multiReleaseVersion());
+            return (top == null) ? null : releaseViews.computeIfAbsent(top, this::buildView);
+        }
+
+        private ReleaseView buildView(int top) {
+            Map<RelativeDirectory, java.util.List<PackageDirectory>> dirs = new HashMap<>();
+            for (Map.Entry<Integer, NameTable> e
+                    : versionedPackages.headMap(top, true).descendingMap().entrySet()) {
+                Path versionRoot = versionRoots.get(e.getKey());
+                NameTable index = e.getValue();
+                for (int i = 0; i < index.size(); i++) {
+                    dirs.computeIfAbsent(new RelativeDirectory(index.name(i)), d -> new ArrayList<>())
+                            .add(new PackageDirectory(index.path(i), versionRoot));
+                }
+            }
+            Map<RelativeDirectory, PackageDirectory[]> overlays = new HashMap<>();
+            dirs.forEach((dir, list) -> {
+                Path base = packages.get(dir.path);
+                if (base != null)
+                    list.add(new PackageDirectory(base, null));
+                overlays.put(dir, list.toArray(new PackageDirectory[0]));
+            });
+            Set<RelativeDirectory> directories = new HashSet<>();
+            relativeDirectories(packages).forEach(directories::add);
+            directories.addAll(overlays.keySet());
+            return new ReleaseView(overlays, directories);
+        }
+
+        @Override
+        public byte[] fingerprint() throws IOException {
+            byte[] f = fingerprint;
+            if (f == null)
+                fingerprint = f = Fingerprints.archive(archivePath);
+            return f;
+        }
+
+        /**
+         * Whether the archive has been rewritten or removed since this container was opened.
+         */
+        @Override
+        public boolean isStale() {
+            if (openedAttributes == null)
+                return true;
+            try {
+                BasicFileAttributes attrs =
+                        Files.readAttributes(archivePath, BasicFileAttributes.class);
+                return attrs.size() != openedAttributes.size()
+                        || !attrs.lastModifiedTime().equals(openedAttributes.lastModifiedTime());
+            } catch (IOException e) {
+                return true;
             }
         }
 
@@ -622,7 +1092,49 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                          Set<JavaFileObject.Kind> fileKinds,
                          boolean recurse,
                          ListBuffer<JavaFileObject> resultList) throws IOException {
-            Path resolvedSubdirectory = packages.get(subdirectory);
+            list(subdirectory, fileKinds, recurse, resultList, null);
+        }
+
+        @Override
+        public void listNames(Path userPath,
+                              RelativeDirectory subdirectory,
+                              Set<JavaFileObject.Kind> fileKinds,
+                              boolean recurse,
+                              ListBuffer<String> resultList) throws IOException {
+            list(subdirectory, fileKinds, recurse, null, resultList);
+        }
+
+        /**
+         * Lists into exactly one of resultList and nameList.
+         */
+        private void list(RelativeDirectory subdirectory,
+                          Set<JavaFileObject.Kind> fileKinds,
+                          boolean recurse,
+                          ListBuffer<JavaFileObject> resultList,
+                          ListBuffer<String> nameList) throws IOException {
+            listLock.lock();
+            try {
+                listLocked(subdirectory, fileKinds, recurse, resultList, nameList);
+            } finally {
+                listLock.unlock();
+            }
+        }
+
+        private void listLocked(RelativeDirectory subdirectory,
+                                Set<JavaFileObject.Kind> fileKinds,
+                                boolean recurse,
+                                ListBuffer<JavaFileObject> resultList,
+                                ListBuffer<String> nameList) throws IOException {
+            ReleaseView view = releaseView();
+            if (view != null && (recurse || view.overlays().containsKey(subdirectory))) {
+                for (RelativeDirectory dir : view.directories()) {
+                    if (dir.equals(subdirectory) || recurse && subdirectory.contains(dir))
+                        listVersioned(view, dir, fileKinds, resultList, nameList);
+                }
+                return;
+            }
+
+            Path resolvedSubdirectory = packages.get(subdirectory.path);
 
             if (resolvedSubdirectory == null)
                 return ;
@@ -642,9 +1154,14 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                         @Override
                         public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
                             if (attrs.isRegularFile() && fileKinds.contains(getKind(file.getFileName().toString()))) {
-                                JavaFileObject fe = PathFileObject.forJarPath(
-                                        JavacFileManager.this, file, archivePath);
-                                resultList.append(fe);
+                                if (nameList != null) {
+                                    nameList.append(
+                                            PathFileObject.toBinaryName(file.getRoot().relativize(file)));
+                                } else {
+                                    JavaFileObject fe = PathFileObject.forJarPath(
+                                            JavacFileManager.this, file, archivePath);
+                                    resultList.append(fe);
+                                }
                             }
                             return FileVisitResult.CONTINUE;
                         }
@@ -652,6 +1169,46 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
         }
 
+        /**
+         * Lists one package of a release view, taking each file from the highest version
+         * that has it.
+         */
+        private void listVersioned(ReleaseView view,
+                                   RelativeDirectory dir,
+                                   Set<JavaFileObject.Kind> fileKinds,
+                                   ListBuffer<JavaFileObject> resultList,
+                                   ListBuffer<String> nameList) throws IOException {
+            PackageDirectory[] dirs = view.overlays().get(dir);
+            if (dirs == null)
+                dirs = new PackageDirectory[] { new PackageDirectory(packages.get(dir.path), null) };
+            Set<String> seen = new HashSet<>();
+            for (PackageDirectory pd : dirs) {
+                Files.walkFileTree(pd.directory(), FOLLOW_LINKS_OPTIONS, 1,
+                        new SimpleFileVisitor<Path>() {
+                            @Override
+                            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                                String name = file.getFileName().toString();
+                                if (attrs.isRegularFile()
+                                        && fileKinds.contains(getKind(name))
+                                        && seen.add(name)) {
+                                    if (nameList != null)
+                                        nameList.append(binaryName(dir, name));
+                                    else
+                                        resultList.append(jarFileObject(pd, file, archivePath));
+                                }
+                                return FileVisitResult.CONTINUE;
+                            }
+                        });
+            }
+        }
+
+        private JavaFileObject jarFileObject(PackageDirectory pd, Path file, Path userPath) {
+            return (pd.versionRoot() == null)
+                    ? PathFileObject.forJarPath(JavacFileManager.this, file, userPath)
+                    : new VersionedJarFileObject(JavacFileManager.this, file, userPath,
+                            pd.versionRoot());
+        }
+
         private boolean isValid(Path fileName) {
             if (fileName == null) {
                 return true;
@@ -667,7 +1224,17 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         @Override
         public JavaFileObject getFileObject(Path userPath, RelativeFile name) throws IOException {
             RelativeDirectory root = name.dirname();
-            Path packagepath = packages.get(root);
+            ReleaseView view = releaseView();
+            PackageDirectory[] dirs = (view != null) ? view.overlays().get(root) : null;
+            if (dirs != null) {
+                for (PackageDirectory pd : dirs) {
+                    Path relpath = pd.directory().resolve(name.basename());
+                    if (Files.exists(relpath))
+                        return jarFileObject(pd, relpath, userPath);
+                }
+                return null;
+            }
+            Path packagepath = packages.get(root.path);
             if (packagepath != null) {
                 Path relpath = packagepath.resolve(name.basename());
                 if (Files.exists(relpath)) {
@@ -689,7 +1256,105 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
         @Override
         public Iterable<RelativeDirectory> indexedDirectories() {
-            return packages.keySet();
+            ReleaseView view = releaseView();
+            return (view != null) ? view.directories() : relativeDirectories(packages);
+        }
+    }
+
+    /** The directories named by the paths in {@code table}, created as they are reached. */
+    private static Iterable<RelativeDirectory> relativeDirectories(NameTable table) {
+        return () -> table.names().stream().map(RelativeDirectory::new).iterator();
+    }
+
+    /**
+     * A jar inside another archive, such as the classes of an Android library.
+     */
+    private final class NestedArchiveContainer implements Container {
+        private final NestedArchive archive;
+
+        NestedArchiveContainer(NestedArchive archive) {
+            this.archive = archive;
+        }
+
+        @Override
+        public void list(Path userPath,
+                         RelativeDirectory subdirectory,
+                         Set<JavaFileObject.Kind> fileKinds,
+                         boolean recurse,
+                         ListBuffer<JavaFileObject> resultList) {
+            list(subdirectory, fileKinds, recurse, resultList, null);
+        }
+
+        @Override
+        public void listNames(Path userPath,
+                              RelativeDirectory subdirectory,
+                              Set<JavaFileObject.Kind> fileKinds,
+                              boolean recurse,
+                              ListBuffer<String> resultList) {
+            list(subdirectory, fileKinds, recurse, null, resultList);
+        }
+
+        private void list(RelativeDirectory subdirectory,
+                          Set<JavaFileObject.Kind> fileKinds,
+                          boolean recurse,
+                          ListBuffer<JavaFileObject> resultList,
+                          ListBuffer<String> nameList) {
+            if (!recurse) {
+                list(subdirectory, fileKinds, resultList, nameList);
+                return;
+            }
+            for (RelativeDirectory dir : new TreeSet<>(archive.directories())) {
+                if (dir.equals(subdirectory) || subdirectory.contains(dir))
+                    list(dir, fileKinds, resultList, nameList);
+            }
+        }
+
+        private void list(RelativeDirectory dir,
+                          Set<JavaFileObject.Kind> fileKinds,
+                          ListBuffer<JavaFileObject> resultList,
+                          ListBuffer<String> nameList) {
+            for (Map.Entry<String, NestedArchive.Entry> e : archive.list(dir).entrySet()) {
+                if (!fileKinds.contains(getKind(e.getKey())))
+                    continue;
+                if (nameList != null)
+                    nameList.append(binaryName(dir, e.getKey()));
+                else
+                    resultList.append(
+                            new NestedJarFileObject(JavacFileManager.this, archive, e.getValue()));
+            }
+        }
+
+        @Override
+        public JavaFileObject getFileObject(Path userPath, RelativeFile name) {
+            NestedArchive.Entry entry = archive.entry(name.dirname(), name.basename());
+            return (entry == null)
+                    ? null
+                    : new NestedJarFileObject(JavacFileManager.this, archive, entry);
+        }
+
+        @Override
+        public void close() {
+            // shared with other file managers; unmapped once unreachable
+        }
+
+        @Override
+        public boolean maintainsDirectoryIndex() {
+            return true;
+        }
+
+        @Override
+        public Iterable<RelativeDirectory> indexedDirectories() {
+            return archive.directories();
+        }
+
+        @Override
+        public byte[] fingerprint() {
+            return archive.fingerprint();
+        }
+
+        @Override
+        public boolean isStale() {
+            return archive.isStale();
         }
     }
 
@@ -701,6 +1366,13 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         return fileKinds.contains(kind);
     }
 
+    /** The binary name of the class in file fname of package directory dir. */
+    private static String binaryName(RelativeDirectory dir, String fname) {
+        int dot = fname.lastIndexOf('.');
+        String simpleName = (dot < 0) ? fname : fname.substring(0, dot);
+        return dir.path.isEmpty() ? simpleName : dir.path.replace('/', '.') + simpleName;
+    }
+
     private static final boolean fileSystemIsCaseSensitive =
         File.separatorChar == '/';
 
@@ -736,13 +1408,344 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         return j < 0;
     }
 
+    /**
+     * Returns a fingerprint of everything that can be found through {@code location}: a digest
+     * of what each of its paths makes visible, in order. Two locations with the same
+     * fingerprint present the same classes and sources, wherever their files are, so the
+     * fingerprint can key a build cache.
+     *
+     * <p>A jar or zip file is identified by a digest of its central directory, which is
+     * computed when the file is first needed and kept with its open container; a path of the
+     * location whose archive has changed since it was opened is reopened, so only changed
+     * archives are digested again. A directory is summarized from the relative paths, sizes and
+     * modification times of its files on every call. The platform image is identified by its
+     * size, modification time and release file. Sources held in memory are not included.
+     *
+     * <p>This should not be called while a compilation is using this file manager.
+     *
+     * @param location a location
+     * @return the fingerprint as a hexadecimal string
+     * @throws IOException if a path of the location cannot be read
+     */
+    public String getLocationFingerprint(Location location) throws IOException {
+        nullCheck(location);
+        Collection<? extends Path> paths = getLocationAsPaths(location);
+        MessageDigest md = Fingerprints.digest();
+        md.update(location.getName().getBytes(UTF_8));
+        if (paths != null) {
+            for (Path path : paths) {
+                md.update(fingerprint(path));
+            }
+        }
+        return Fingerprints.toHex(md.digest());
+    }
+
+    private byte[] fingerprint(Path path) throws IOException {
+        // a JDK home, as for the system modules
+        Path modules = path.resolve("lib").resolve("modules");
+        if (Files.isDirectory(path) && Files.isRegularFile(modules))
+            return Fingerprints.image(modules);
+        Container container = getContainer(path);
+        if (container.isStale()
+                || container == MISSING_CONTAINER && Files.exists(path)) {
+            Container stale = container;
+            containersLock.lock();
+            try {
+                int size = containers.size();
+                containers.values().removeIf(c -> c == stale);
+                metrics.evicted(FileManagerMetrics.Cache.CONTAINERS, size - containers.size());
+            } finally {
+                containersLock.unlock();
+            }
+            clearLocationIndexes();
+            stale.close();
+            container = getContainer(path);
+        }
+        return container.fingerprint();
+    }
+
     /** Flush any output resources.
      */
     @Override @DefinedBy(Api.COMPILER)
-    public void flush() {
-        contentCache.clear();
-        pathsAndContainersByLocationAndRelativeDirectory.clear();
-        nonIndexingContainersByLocation.clear();
+    public void flush() throws IOException {
+        try {
+            finishAsyncOutput();
+        } finally {
+            metrics.evicted(FileManagerMetrics.Cache.CONTENT, contentCache.size());
+            contentCache.clear();
+            sharedContentAttributes.clear();
+            clearLocationIndexes();
+        }
+        writeOutputArchive();
+        writeDependencyGraph();
+        closePendingContainers();
+    }
+
+    private volatile DependencyRecorder dependencyRecorder;
+    private Path dependencyGraphFile;
+
+    /**
+     * Sets whether the reads of the compilations using this file manager are recorded for a
+     * {@link DependencyGraph}: the class files and sources that each compilation unit caused
+     * to be read, the files it looked up and the packages it listed. Recording must be turned
+     * on before the compilation is set up, so that it can be attached to the compiler. The
+     * command line equivalent is {@code -XDdependencyGraph=<file>}, which also writes the graph
+     * to the file when the file manager is flushed at the end of the compilation.
+     *
+     * @param record whether to record dependencies
+     */
+    public void setRecordDependencies(boolean record) {
+        if (!record)
+            dependencyRecorder = null;
+        else if (dependencyRecorder == null)
+            dependencyRecorder = new DependencyRecorder();
+    }
+
+    /**
+     * Returns the dependencies recorded since recording was turned on or {@linkplain
+     * #clearDependencies() cleared}, or {@code null} if dependencies are not being recorded.
+     */
+    public DependencyGraph getDependencies() {
+        DependencyRecorder deps = dependencyRecorder;
+        return (deps == null) ? null : deps.snapshot();
+    }
+
+    /** Forgets the dependencies recorded so far. */
+    public void clearDependencies() {
+        DependencyRecorder deps = dependencyRecorder;
+        if (deps != null)
+            deps.clear();
+    }
+
+    private void writeDependencyGraph() {
+        DependencyRecorder deps = dependencyRecorder;
+        Path file = dependencyGraphFile;
+        if (deps == null || file == null)
+            return;
+        try (Writer out = Files.newBufferedWriter(file)) {
+            deps.snapshot().write(out);
+        } catch (IOException e) {
+            log.error(Errors.ErrorWritingFile(file.toString(), getMessage(e)));
+        }
+    }
+
+    private static final int DEFAULT_ASYNC_OUTPUT_THREADS =
+            Math.min(2, Runtime.getRuntime().availableProcessors());
+
+    private volatile AsyncOutputWriter asyncOutput;
+
+    /**
+     * Sets the number of background threads that write class files to output directories, or
+     * zero to write each class file on the compiler thread as it is generated. Writing in the
+     * background overlaps output I/O with code generation. The files that could not be written
+     * are reported as errors of the compilation as code generation goes on, and at the end of the
+     * compilation, once every pending file is written, before the compiler decides its result;
+     * {@link #flush()} and {@link #close()} also wait for the pending files. The command line
+     * equivalent is {@code -XDasyncOutput} or {@code -XDasyncOutput=<threads>}.
+     *
+     * <p>Class files written into a {@linkplain #setMemoryOutput memory} or archive class output
+     * are not affected.
+     *
+     * @param threads the number of writer threads, or zero
+     * @throws IOException if output already pending could not be written and there is no log
+     *         to report it to
+     */
+    public void setAsyncOutput(int threads) throws IOException {
+        if (threads < 0) {
+            throw new IllegalArgumentException("threads: " + threads);
+        }
+        finishAsyncOutput();
+        asyncOutput = (threads > 0) ? new AsyncOutputWriter(this, threads) : null;
+    }
+
+    /**
+     * Waits for the background writer, if any, and reports the files it could not write to the
+     * log, or as an exception when there is no log.
+     */
+    private void finishAsyncOutput() throws IOException {
+        AsyncOutputWriter async = asyncOutput;
+        if (async != null) {
+            reportAsyncOutputFailures(async.finish());
+        }
+    }
+
+    private void reportAsyncOutputFailures(java.util.List<AsyncOutputWriter.Failure> failures)
+            throws IOException {
+        IOException failed = null;
+        for (AsyncOutputWriter.Failure f : failures) {
+            IOException e = (f.exception() instanceof IOException ioe)
+                    ? ioe : new IOException(f.exception().toString(), f.exception());
+            if (log != null) {
+                log.error(Errors.ErrorWritingFile(f.path().toString(), getMessage(e)));
+            } else if (failed == null) {
+                failed = e;
+            } else {
+                failed.addSuppressed(e);
+            }
+        }
+        if (failed != null) {
+            throw failed;
+        }
+    }
+
+    /** The context an {@link AsyncOutputReporter} has been added to. */
+    private Context asyncOutputContext;
+
+    /**
+     * Reports the class files the background writer could not write while the compilation that
+     * generated them is still running: those found so far after each class is generated, and the
+     * rest once the compilation is finished, which is before the compiler counts its errors to
+     * decide its result. Waiting only for {@link #flush()} would be too late for that.
+     */
+    private class AsyncOutputReporter implements TaskListener {
+        @Override @DefinedBy(Api.COMPILER_TREE)
+        public void finished(TaskEvent e) {
+            AsyncOutputWriter async = asyncOutput;
+            if (async == null || log == null) {
+                return;
+            }
+            try {
+                switch (e.getKind()) {
+                    case GENERATE -> reportAsyncOutputFailures(async.takeFailures());
+                    case COMPILATION -> reportAsyncOutputFailures(async.finish());
+                    default -> { }
+                }
+            } catch (IOException ex) {
+                // not thrown while there is a log
+            }
+        }
+    }
+
+    private OutputArchive outputArchive;
+    private boolean outputArchiveStored;
+
+    /**
+     * Sets whether class files written into a jar or zip {@linkplain StandardLocation#CLASS_OUTPUT
+     * class output} are stored uncompressed rather than deflated at the fastest level. Storing
+     * makes the archive larger but saves compression time when the archive is consumed right
+     * away, for example by a dexer. The command line equivalent is
+     * {@code -XDclassOutputJarStored}.
+     *
+     * @param stored whether to store entries uncompressed
+     */
+    public synchronized void setClassOutputArchiveStored(boolean stored) {
+        outputArchiveStored = stored;
+    }
+
+    /**
+     * The archive that output to {@code location} goes into, if class output is a jar or zip
+     * file that is not a directory: class output itself, and source output defaulting to it.
+     */
+    private synchronized OutputArchive getOutputArchive(Location location) {
+        Path classOut = getClassOutDir();
+        if (classOut == null
+                || !(location == CLASS_OUTPUT
+                        || location == SOURCE_OUTPUT && getSourceOutDir() == null)
+                || !OutputArchive.isArchiveName(classOut)
+                || Files.isDirectory(classOut)) {
+            return null;
+        }
+        if (outputArchive == null || !outputArchive.getFile().equals(classOut)) {
+            if (outputArchive != null && !outputArchive.isEmpty()) {
+                throw new IllegalStateException("class output changed with pending output");
+            }
+            outputArchive = new OutputArchive(this, classOut, outputArchiveStored);
+        }
+        return outputArchive;
+    }
+
+    /**
+     * Writes the class output archive, if there is one with pending output, after closing any
+     * container that has the previous version open.
+     */
+    private void writeOutputArchive() throws IOException {
+        OutputArchive archive;
+        synchronized (this) {
+            archive = outputArchive;
+            outputArchive = null;
+            if (archive == null || archive.isEmpty()) {
+                return;
+            }
+        }
+        Path file = archive.getFile();
+        Set<Container> open = Collections.newSetFromMap(new IdentityHashMap<>());
+        containersLock.lock();
+        try {
+            containers.entrySet().removeIf(e -> {
+                if (e.getValue() instanceof ArchiveContainer ac
+                        && (e.getKey().equals(file) || ac.archivePath.equals(file))) {
+                    open.add(ac);
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            containersLock.unlock();
+        }
+        for (Container c : open) {
+            c.close();
+        }
+        boolean skip = skipUnchangedOutput;
+        if (archive.write(skip) && skip) {
+            outputChanged(fsInfo.getCanonicalFile(archive.getFile()));
+        }
+    }
+
+    private volatile boolean skipUnchangedOutput;
+    private final Set<Path> changedOutputs = new TreeSet<>();
+    private volatile boolean headerOutput;
+
+    /**
+     * Sets whether class files are written as headers: only the interface of each class, without
+     * method bodies or private members, as is enough to compile other code against it. Local and
+     * anonymous classes are not written. With {@linkplain #setSkipUnchangedOutput unchanged
+     * outputs skipped}, a header is only rewritten when the interface of its class changes. The
+     * command line equivalent is {@code -XDheaderOutput}.
+     *
+     * <p>Headers must be turned on before a compilation is set up with this file manager. The
+     * compilation then stops once its classes and their members are entered and annotation
+     * processing is done, without analyzing or generating code for method bodies, and its
+     * headers are written from the entered classes; see {@link HeaderGenerator}. Only when the
+     * compilation is told where to stop by a {@code -XDshould-stop} option does it run to code
+     * generation, and the class files it generates are reduced to headers.
+     *
+     * @param enabled whether to write headers instead of class files
+     */
+    public void setHeaderOutput(boolean enabled) {
+        headerOutput = enabled;
+    }
+
+    /**
+     * Sets whether output files whose new content is identical to the file already on disk are
+     * left untouched, keeping their timestamps, instead of being rewritten. This applies to
+     * output directories and to a class output archive as a whole. The outputs that were
+     * actually written are reported by {@link #getChangedOutputs()}.
+     *
+     * @param skip whether to skip rewriting unchanged outputs
+     */
+    public void setSkipUnchangedOutput(boolean skip) {
+        skipUnchangedOutput = skip;
+    }
+
+    /**
+     * Returns the output files written with new content while {@linkplain
+     * #setSkipUnchangedOutput unchanged outputs were skipped}, since this file manager was
+     * created or the set was last {@linkplain #clearChangedOutputs() cleared}. For a class
+     * output archive, the archive itself is reported.
+     *
+     * @return a sorted snapshot of the changed outputs
+     */
+    public synchronized SortedSet<Path> getChangedOutputs() {
+        return new TreeSet<>(changedOutputs);
+    }
+
+    /** Forgets the outputs reported by {@link #getChangedOutputs()}. */
+    public synchronized void clearChangedOutputs() {
+        changedOutputs.clear();
+    }
+
+    synchronized void outputChanged(Path file) {
+        changedOutputs.add(file);
     }
 
     /**
@@ -750,22 +1753,107 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
      */
     @Override @DefinedBy(Api.COMPILER)
     public void close() throws IOException {
+        cancelPrefetches();
+        shutdownPrefetchExecutor();
+        finishAsyncOutput();
         if (deferredCloseTimeout > 0) {
             deferredClose();
             return;
         }
 
+        writeOutputArchive();
         locations.close();
         for (Container container: containers.values()) {
             container.close();
         }
+        metrics.evicted(FileManagerMetrics.Cache.CONTAINERS, containers.size());
         containers.clear();
-        pathsAndContainersByLocationAndRelativeDirectory.clear();
-        nonIndexingContainersByLocation.clear();
+        clearLocationIndexes();
+        metrics.evicted(FileManagerMetrics.Cache.CONTENT, contentCache.size());
         contentCache.clear();
+        sharedContentAttributes.clear();
+        memoryOverlay.clear();
         resetOutputFilesWritten();
     }
 
+    /**
+     * Prepares this file manager to serve another, unrelated compilation, as done by a
+     * long-lived compile server. Every location and file manager option is returned to its
+     * default and the per-compilation caches are dropped, while containers whose backing
+     * archive or directory is unchanged stay open so that the next compilation starts warm.
+     * Archives that have been rewritten since they were opened, and paths that did not exist,
+     * are forgotten.
+     *
+     * <p>The caller must ensure that no compilation is using this file manager concurrently.
+     *
+     * @throws IOException if an error occurs closing resources held for the previous compilation
+     */
+    public void prepareForReuse() throws IOException {
+        cancelPrefetches();
+        // every step is taken even if an earlier one fails; the first failure is thrown at the end
+        IOException failure = null;
+        locationsLock.lock();
+        try {
+            locations.reset();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            locationsLock.unlock();
+        }
+        setPathFactory(Paths::get);
+        handleOption(Option.ENCODING, null);
+        multiReleaseValue = null;
+        sortFiles = null;
+        symbolFileEnabled = true;
+        memoryOverlay.clear();
+        memoryOutput = false;
+        synchronized (this) {
+            outputArchive = null;
+            outputArchiveStored = false;
+            changedOutputs.clear();
+        }
+        skipUnchangedOutput = false;
+        headerOutput = false;
+        setContentCache(null);
+        dependencyRecorder = null;
+        dependencyGraphFile = null;
+        closeStaleContainers();
+        try {
+            flush();
+        } catch (IOException e) {
+            if (failure == null)
+                failure = e;
+        }
+        asyncOutput = null;
+        resetOutputFilesWritten();
+        if (failure != null)
+            throw failure;
+    }
+
+    /** Closes and forgets the containers of paths that were missing or have changed on disk. */
+    private void closeStaleContainers() {
+        // staleness is checked on disk before the lock is taken
+        Set<Container> stale = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Container c : containers.values()) {
+            if (c == MISSING_CONTAINER || c.isStale())
+                stale.add(c);
+        }
+        containersLock.lock();
+        try {
+            int size = containers.size();
+            containers.values().removeIf(stale::contains);
+            metrics.evicted(FileManagerMetrics.Cache.CONTAINERS, size - containers.size());
+        } finally {
+            containersLock.unlock();
+        }
+        for (Container c : stale) {
+            try {
+                c.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
     @Override @DefinedBy(Api.COMPILER)
     public ClassLoader getClassLoader(Location location) {
         checkNotModuleOrientedLocation(location);
@@ -796,16 +1884,149 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         nullCheck(packageName);
         nullCheck(kinds);
 
+        long start = System.nanoTime();
         RelativeDirectory subdirectory = RelativeDirectory.forPackage(packageName);
         ListBuffer<JavaFileObject> results = new ListBuffer<>();
 
-        for (PathAndContainer pathAndContainer : pathsAndContainers(location, subdirectory)) {
-            Path directory = pathAndContainer.path;
-            Container container = pathAndContainer.container;
-            container.list(directory, subdirectory, kinds, recurse, results);
-        }
+        for (PathAndContainer pathAndContainer : pathsAndContainers(location, subdirectory)) {
+            listContainer(location, pathAndContainer, subdirectory, kinds, recurse,
+                    Container::list, results);
+        }
+
+        metrics.timed(FileManagerMetrics.Operation.LIST, start);
+        DependencyRecorder deps = dependencyRecorder;
+        if (deps != null)
+            deps.listed(log.currentSourceFile(), location, packageName, results.isEmpty());
+        return results.toList();
+    }
+
+    /**
+     * Lists the files of a package like {@link #list list}, one path of the location at a
+     * time: nothing is listed until the result is iterated, and each path is listed only
+     * when the files of the paths before it have been used up, so a caller that stops at
+     * the first match does not list the rest. The result is meant to be iterated soon, while
+     * the location is unchanged; an I/O error while iterating is thrown as an
+     * {@link UncheckedIOException}.
+     *
+     * @param location a location
+     * @param packageName a package name
+     * @param kinds return objects only of these kinds
+     * @param recurse if true include "subpackages"
+     * @return an Iterable of file objects matching the given criteria
+     * @throws IOException if an I/O error occurred while finding the paths of the location
+     */
+    public Iterable<JavaFileObject> listLazily(Location location,
+                                               String packageName,
+                                               Set<JavaFileObject.Kind> kinds,
+                                               boolean recurse)
+        throws IOException
+    {
+        return listByContainer(location, packageName, kinds, recurse, Container::list);
+    }
+
+    /**
+     * Lists the binary names of the classes or sources that {@link #listLazily listLazily}
+     * would return, without creating file objects for them. Where a name is found in more
+     * than one path of the location, it is returned for each.
+     *
+     * @param location a location
+     * @param packageName a package name
+     * @param kinds return names only of files of these kinds
+     * @param recurse if true include "subpackages"
+     * @return an Iterable of binary names
+     * @throws IOException if an I/O error occurred while finding the paths of the location
+     */
+    public Iterable<String> listBinaryNames(Location location,
+                                            String packageName,
+                                            Set<JavaFileObject.Kind> kinds,
+                                            boolean recurse)
+        throws IOException
+    {
+        return listByContainer(location, packageName, kinds, recurse, Container::listNames);
+    }
+
+    /** A way of listing a container: for file objects or for names. */
+    private interface ContainerLister<T> {
+        void list(Container container,
+                  Path userPath,
+                  RelativeDirectory subdirectory,
+                  Set<JavaFileObject.Kind> fileKinds,
+                  boolean recurse,
+                  ListBuffer<T> resultList) throws IOException;
+    }
+
+    private <T> void listContainer(Location location,
+                                   PathAndContainer pathAndContainer,
+                                   RelativeDirectory subdirectory,
+                                   Set<JavaFileObject.Kind> kinds,
+                                   boolean recurse,
+                                   ContainerLister<T> lister,
+                                   ListBuffer<T> results) throws IOException {
+        Path directory = pathAndContainer.path;
+        Container container = pathAndContainer.container;
+        Object event = FileManagerEvents.beginContainerList();
+        int before = results.size();
+        lister.list(container, directory, subdirectory, kinds, recurse, results);
+        FileManagerEvents.commitContainerList(event, location.getName(), directory,
+                containerKind(container), subdirectory, recurse, results.size() - before);
+    }
+
+    private <T> Iterable<T> listByContainer(Location location,
+                                            String packageName,
+                                            Set<JavaFileObject.Kind> kinds,
+                                            boolean recurse,
+                                            ContainerLister<T> lister)
+        throws IOException
+    {
+        checkNotModuleOrientedLocation(location);
+        nullCheck(packageName);
+        nullCheck(kinds);
+
+        RelativeDirectory subdirectory = RelativeDirectory.forPackage(packageName);
+        java.util.List<PathAndContainer> containers = pathsAndContainers(location, subdirectory);
+        DependencyRecorder deps = dependencyRecorder;
+        JavaFileObject unit = (deps != null) ? log.currentSourceFile() : null;
+
+        return () -> new Iterator<T>() {
+            private int next;
+            private Iterator<T> current = Collections.emptyIterator();
+            private boolean recorded = (deps == null);
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (next == containers.size()) {
+                        record(true);
+                        return false;
+                    }
+                    ListBuffer<T> results = new ListBuffer<>();
+                    try {
+                        listContainer(location, containers.get(next++), subdirectory, kinds,
+                                recurse, lister, results);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    current = results.iterator();
+                }
+                record(false);
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
 
-        return results.toList();
+            /** Records the listing once it is known whether the package is empty. */
+            private void record(boolean empty) {
+                if (!recorded) {
+                    recorded = true;
+                    deps.listed(unit, location, packageName, empty);
+                }
+            }
+        };
     }
 
     @Override @DefinedBy(Api.COMPILER)
@@ -877,12 +2098,29 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     }
 
     private JavaFileObject getFileForInput(Location location, RelativeFile name) throws IOException {
+        long start = System.nanoTime();
+        try {
+            JavaFileObject fo = getFileForInput0(location, name);
+            DependencyRecorder deps = dependencyRecorder;
+            if (deps != null && fo != null)
+                deps.read(log.currentSourceFile(), fo);
+            return fo;
+        } finally {
+            metrics.timed(FileManagerMetrics.Operation.GET_FILE_FOR_INPUT, start);
+        }
+    }
+
+    private JavaFileObject getFileForInput0(Location location, RelativeFile name) throws IOException {
         Iterable<? extends Path> path = getLocationAsPaths(location);
         if (path == null)
             return null;
 
         for (Path file: path) {
-            JavaFileObject fo = getContainer(file).getFileObject(file, name);
+            Container container = getContainer(file);
+            Object event = FileManagerEvents.beginContainerGetFileObject();
+            JavaFileObject fo = container.getFileObject(file, name);
+            FileManagerEvents.commitContainerGetFileObject(event, location.getName(), file,
+                    containerKind(container), name, fo != null);
 
             if (fo != null) {
                 return fo;
@@ -929,6 +2167,44 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                                             RelativeFile fileName,
                                             FileObject sibling)
         throws IOException
+    {
+        JavaFileObject fo = openFileForOutput(location, fileName, sibling);
+        if (headerOutput && fo.getKind() == JavaFileObject.Kind.CLASS)
+            fo = new HeaderOutputFileObject(fo);
+        CompileResultCache.Recording recording = outputRecording;
+        return (recording == null) ? fo : recording.wrap(location, fileName, fo);
+    }
+
+    /** Set by {@link CompileResultCache} while a compilation whose result it stores is running. */
+    volatile CompileResultCache.Recording outputRecording;
+
+    private JavaFileObject openFileForOutput(Location location,
+                                             RelativeFile fileName,
+                                             FileObject sibling)
+        throws IOException
+    {
+        if (!memoryOutput) {
+            OutputArchive archive = getOutputArchive(location);
+            if (archive != null) {
+                return archive.getFileObject(fileName);
+            }
+        }
+        PathFileObject fo = getPathFileForOutput(location, fileName, sibling);
+        if (memoryOutput && !(fo instanceof MemoryFileObject)) {
+            Path path = memoryKey(fo.getPath());
+            return new MemoryFileObject(this, path, path, null);
+        }
+        AsyncOutputWriter async = (fo.getKind() == JavaFileObject.Kind.CLASS) ? asyncOutput : null;
+        if (async != null || skipUnchangedOutput) {
+            return new BufferedOutputFileObject(this, fo, async, skipUnchangedOutput);
+        }
+        return fo;
+    }
+
+    private PathFileObject getPathFileForOutput(Location location,
+                                                RelativeFile fileName,
+                                                FileObject sibling)
+        throws IOException
     {
         Path dir;
         if (location == CLASS_OUTPUT) {
@@ -986,26 +2262,74 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         for (File f: files) {
             Objects.requireNonNull(f);
             Path p = f.toPath();
-            result.add(PathFileObject.forSimplePath(this,
-                    fsInfo.getCanonicalFile(p), p));
+            addFileObjectsForPath(p, result);
         }
         return result;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>A {@code .srcjar} or {@code .zip} stands for the Java source files in it, which are read
+     * from the archive as they are needed. One without Java source files, and any other archive,
+     * such as a {@code .jar}, is a file object of its own.
+     */
     @Override @DefinedBy(Api.COMPILER)
     public Iterable<? extends JavaFileObject> getJavaFileObjectsFromPaths(Collection<? extends Path> paths) {
         ArrayList<PathFileObject> result;
         if (paths != null) {
             result = new ArrayList<>(paths.size());
             for (Path p: paths)
-                result.add(PathFileObject.forSimplePath(this,
-                        fsInfo.getCanonicalFile(p), p));
+                addFileObjectsForPath(p, result);
         } else {
             result = new ArrayList<>();
         }
         return result;
     }
 
+    private void addFileObjectsForPath(Path p, Collection<PathFileObject> result) {
+        if (isSourceArchive(p)) {
+            try {
+                ListBuffer<JavaFileObject> sources = new ListBuffer<>();
+                getContainer(p).list(p, new RelativeDirectory(""),
+                        EnumSet.of(JavaFileObject.Kind.SOURCE), true, sources);
+                java.util.List<PathFileObject> entries = new ArrayList<>(sources.size());
+                for (JavaFileObject fo : sources) {
+                    if (fo instanceof PathFileObject pfo)
+                        entries.add(pfo);
+                }
+                if (!entries.isEmpty()) {
+                    entries.sort(Comparator.comparing(fo -> fo.getPath().toString()));
+                    result.addAll(entries);
+                    return;
+                }
+            } catch (IOException e) {
+                // not readable as an archive: the compiler will report the file as it is
+            }
+        }
+        result.add(getFileObjectForPath(p));
+    }
+
+    /** Whether {@code p} is an archive whose sources are compiled when it is given as a source. */
+    private boolean isSourceArchive(Path p) {
+        Path name = p.getFileName();
+        if (name == null)
+            return false;
+        String n = StringUtils.toLowerCase(name.toString());
+        return (n.endsWith(".srcjar") || n.endsWith(".zip"))
+                && fsInfo.isFile(p)
+                && (memoryOverlay.isEmpty() || memoryOverlay.get(memoryKey(p)) == null);
+    }
+
+    private PathFileObject getFileObjectForPath(Path p) {
+        if (!memoryOverlay.isEmpty()) {
+            Path key = memoryKey(p);
+            if (memoryOverlay.get(key) != null)
+                return new MemoryFileObject(this, key, p, null);
+        }
+        return PathFileObject.forSimplePath(this, fsInfo.getCanonicalFile(p), p);
+    }
+
     @Override @DefinedBy(Api.COMPILER)
     public Iterable<? extends JavaFileObject> getJavaFileObjects(File... files) {
         return getJavaFileObjectsFromFiles(Arrays.asList(nullCheck(files)));
@@ -1022,7 +2346,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         throws IOException
     {
         nullCheck(location);
-        locations.setLocation(location, asPaths(searchpath));
+        locationsLock.lock();
+        try {
+            locations.setLocation(location, asPaths(searchpath));
+        } finally {
+            locationsLock.unlock();
+        }
         clearCachesForLocation(location);
     }
 
@@ -1032,7 +2361,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         throws IOException
     {
         nullCheck(location);
-        locations.setLocation(location, nullCheck(searchpath));
+        locationsLock.lock();
+        try {
+            locations.setLocation(location, nullCheck(searchpath));
+        } finally {
+            locationsLock.unlock();
+        }
         clearCachesForLocation(location);
     }
 
@@ -1050,24 +2384,39 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
 
     private java.util.List<PathAndContainer> pathsAndContainers(
             Location location, RelativeDirectory relativeDirectory) throws IOException {
+        applyPendingShed();
         try {
-            return pathsAndContainersByLocationAndRelativeDirectory.computeIfAbsent(
-                    location, this::indexPathsAndContainersByRelativeDirectory)
-                .computeIfAbsent(
+            Map<RelativeDirectory, java.util.List<PathAndContainer>> index =
+                    pathsAndContainersByLocationAndRelativeDirectory.get(location);
+            if (index != null) {
+                metrics.hit(FileManagerMetrics.Cache.LOCATION_INDEX);
+            } else {
+                metrics.miss(FileManagerMetrics.Cache.LOCATION_INDEX);
+                long start = System.nanoTime();
+                java.util.List<PathAndContainer> nonIndexingContainers = new ArrayList<>();
+                index = indexPathsAndContainersByRelativeDirectory(location, nonIndexingContainers);
+                nonIndexingContainersByLocation.put(location, nonIndexingContainers);
+                pathsAndContainersByLocationAndRelativeDirectory.put(location, index);
+                metrics.timed(FileManagerMetrics.Operation.INDEX_LOCATION, start);
+            }
+            return index.computeIfAbsent(
                     relativeDirectory, d -> nonIndexingContainersByLocation.get(location));
         } catch (UncheckedIOException e) {
             throw e.getCause();
         }
     }
 
+    /**
+     * Indexes the containers of {@code location}, adding those that keep no index of their own
+     * to {@code nonIndexingContainers}.
+     */
     private Map<RelativeDirectory, java.util.List<PathAndContainer>> indexPathsAndContainersByRelativeDirectory(
-            Location location) {
+            Location location, java.util.List<PathAndContainer> nonIndexingContainers) {
         Map<RelativeDirectory, java.util.List<PathAndContainer>> result = new HashMap<>();
         java.util.List<PathAndContainer> allPathsAndContainers = pathsAndContainers(location);
 
         // First collect all of the containers that don't maintain their own index on
         // RelativeDirectory. These need to always be included for all mappings
-        java.util.List<PathAndContainer> nonIndexingContainers = new ArrayList<>();
         for (PathAndContainer pathAndContainer : allPathsAndContainers) {
             if (!pathAndContainer.container.maintainsDirectoryIndex()) {
                 nonIndexingContainers.add(pathAndContainer);
@@ -1085,7 +2434,6 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
                 }
             }
         }
-        nonIndexingContainersByLocation.put(location, nonIndexingContainers);
 
         // Sorting preserves the search order used in the uncached Location path, which has
         // maintains consistency with the classpath order
@@ -1152,7 +2500,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         nullCheck(location);
         nullCheck(fo);
         Path p = asPath(fo);
-        return locations.contains(location, p);
+        locationsLock.lock();
+        try {
+            return locations.contains(location, p);
+        } finally {
+            locationsLock.unlock();
+        }
     }
 
     private Path getClassOutDir() {
@@ -1169,7 +2522,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
         nullCheck(moduleName);
         if (location == SOURCE_OUTPUT && getSourceOutDir() == null)
             location = CLASS_OUTPUT;
-        return locations.getLocationForModule(location, moduleName);
+        locationsLock.lock();
+        try {
+            return locations.getLocationForModule(location, moduleName);
+        } finally {
+            locationsLock.unlock();
+        }
     }
 
     @Override @DefinedBy(Api.COMPILER)
@@ -1196,7 +2554,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             return null;
         Path p = Locations.normalize(pathFileObject.path);
             // need to find p in location
-        return locations.getLocationForModule(location, p);
+        locationsLock.lock();
+        try {
+            return locations.getLocationForModule(location, p);
+        } finally {
+            locationsLock.unlock();
+        }
     }
 
     @Override @DefinedBy(Api.COMPILER)
@@ -1204,7 +2567,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
             throws IOException {
         nullCheck(location);
         checkModuleOrientedOrOutputLocation(location);
-        locations.setLocationForModule(location, nullCheck(moduleName), nullCheck(paths));
+        locationsLock.lock();
+        try {
+            locations.setLocationForModule(location, nullCheck(moduleName), nullCheck(paths));
+        } finally {
+            locationsLock.unlock();
+        }
         clearCachesForLocation(location);
     }
 
@@ -1217,7 +2585,12 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     @Override @DefinedBy(Api.COMPILER)
     public Iterable<Set<Location>> listLocationsForModules(Location location) throws IOException {
         checkModuleOrientedOrOutputLocation(location);
-        return locations.listLocationsForModules(location);
+        locationsLock.lock();
+        try {
+            return locations.listLocationsForModules(location);
+        } finally {
+            locationsLock.unlock();
+        }
     }
 
     @Override @DefinedBy(Api.COMPILER)
@@ -1365,15 +2738,582 @@ public class JavacFileManager extends BaseFileManager implements StandardJavaFil
     @Override
     public boolean handleOption(Option option, String value) {
         if (javacFileManagerOptions.contains(option)) {
-            pathsAndContainersByLocationAndRelativeDirectory.clear();
-            nonIndexingContainersByLocation.clear();
+            clearLocationIndexes();
+        }
+        locationsLock.lock();
+        try {
+            return super.handleOption(option, value);
+        } finally {
+            locationsLock.unlock();
         }
-        return super.handleOption(option, value);
     }
 
     private void clearCachesForLocation(Location location) {
         nullCheck(location);
-        pathsAndContainersByLocationAndRelativeDirectory.remove(location);
-        nonIndexingContainersByLocation.remove(location);
+        indexLock.lock();
+        try {
+            indexGeneration++;
+            if (pathsAndContainersByLocationAndRelativeDirectory.remove(location) != null)
+                metrics.evicted(FileManagerMetrics.Cache.LOCATION_INDEX, 1);
+            nonIndexingContainersByLocation.remove(location);
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    private void clearLocationIndexes() {
+        indexLock.lock();
+        try {
+            indexGeneration++;
+            metrics.evicted(FileManagerMetrics.Cache.LOCATION_INDEX,
+                    pathsAndContainersByLocationAndRelativeDirectory.size());
+            pathsAndContainersByLocationAndRelativeDirectory.clear();
+            nonIndexingContainersByLocation.clear();
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /** Prefetches not yet complete, cancelled when the file manager is closed or reused. */
+    private final Set<CompletableFuture<Void>> prefetches = ConcurrentHashMap.newKeySet();
+
+    /** The most threads of {@link #prefetchExecutor}. */
+    private static final int PREFETCH_THREADS =
+            Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Runs the prefetches started without an executor of their own; created on first use and
+     * shut down when the file manager is closed. Prefetch tasks block on the disk, so they are
+     * kept off shared pools such as the common pool, whose workers the host application needs.
+     */
+    private ThreadPoolExecutor prefetchExecutor;
+
+    private synchronized Executor prefetchExecutor() {
+        if (prefetchExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    PREFETCH_THREADS, PREFETCH_THREADS, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread t = new Thread(r, "javac-prefetch");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            // an idle file manager holds no threads
+            executor.allowCoreThreadTimeOut(true);
+            prefetchExecutor = executor;
+        }
+        return prefetchExecutor;
+    }
+
+    private synchronized void shutdownPrefetchExecutor() {
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdown();
+            prefetchExecutor = null;
+        }
+    }
+
+    /**
+     * Warms this file manager for {@code locations} on a few daemon threads owned by this file
+     * manager, which stop when idle and are shut down when it is closed.
+     *
+     * @see #prefetch(Set, Executor)
+     */
+    public CompletableFuture<Void> prefetch(Set<? extends Location> locations) {
+        return prefetch(locations, prefetchExecutor());
+    }
+
+    /**
+     * Warms this file manager for {@code locations} on background threads, so that the first
+     * compilation finds their containers open and indexed: every search path entry is opened,
+     * with one task per entry, and each location is then indexed by package. The modules of
+     * a module-oriented location are resolved and each is warmed as a location of its own, and
+     * a location that includes the system image has an entry read into the {@link JRTIndex} for
+     * every platform package.
+     *
+     * <p>A compilation may start before the prefetch completes; it uses what is ready and does
+     * the rest itself. Entries that cannot be opened are skipped, to be reported by the
+     * compilation. The returned future completes once all the work is done, and may be
+     * cancelled, e.g. when the project configuration changes, to stop the work not yet started.
+     * Indexes of locations that change while they are being built are dropped rather than
+     * published. Closing the file manager or {@linkplain #prepareForReuse() preparing it for
+     * reuse} cancels every prefetch.
+     *
+     * @param locations the locations to warm
+     * @param executor runs the background tasks
+     * @return a future completed when the prefetch is done
+     */
+    public CompletableFuture<Void> prefetch(Set<? extends Location> locations, Executor executor) {
+        long generation;
+        indexLock.lock();
+        try {
+            generation = indexGeneration;
+        } finally {
+            indexLock.unlock();
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        prefetches.add(result);
+        result.whenComplete((r, e) -> prefetches.remove(result));
+        java.util.List<CompletableFuture<Void>> parts = new ArrayList<>();
+        for (Location location : locations) {
+            parts.add(CompletableFuture
+                    .supplyAsync(() -> prefetchTargets(location, result), executor)
+                    .thenCompose(targets -> {
+                        java.util.List<CompletableFuture<Void>> all = new ArrayList<>();
+                        for (Location target : targets) {
+                            all.add(prefetchContainers(target, result, executor)
+                                    .thenRunAsync(
+                                            () -> prefetchIndex(target, generation, result),
+                                            executor));
+                        }
+                        return CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]));
+                    }));
+        }
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((r, e) -> {
+                    if (e != null)
+                        result.completeExceptionally(e);
+                    else
+                        result.complete(null);
+                });
+        return result;
+    }
+
+    /** Cancels every prefetch not yet complete. */
+    private void cancelPrefetches() {
+        for (CompletableFuture<Void> f : prefetches) {
+            f.cancel(false);
+        }
+    }
+
+    /** The locations to warm for {@code location}: its modules, or the location itself. */
+    private java.util.List<Location> prefetchTargets(
+            Location location, CompletableFuture<?> prefetch) {
+        if (!location.isModuleOrientedLocation())
+            return java.util.List.of(location);
+        java.util.List<Location> targets = new ArrayList<>();
+        locationsLock.lock();
+        try {
+            for (Set<Location> set : locations.listLocationsForModules(location)) {
+                for (Location l : set) {
+                    if (prefetch.isDone())
+                        return targets;
+                    // the location returned when the compiler looks the module up by name
+                    String name = locations.inferModuleName(l);
+                    Location resolved =
+                            (name == null) ? null : locations.getLocationForModule(location, name);
+                    targets.add(resolved != null ? resolved : l);
+                }
+            }
+        } catch (IOException e) {
+            // left for the compilation to report
+        } finally {
+            locationsLock.unlock();
+        }
+        return targets;
+    }
+
+    /** Opens the containers of {@code location}, one task per search path entry. */
+    private CompletableFuture<Void> prefetchContainers(
+            Location location, CompletableFuture<?> prefetch, Executor executor) {
+        Collection<? extends Path> paths = getLocationAsPaths(location);
+        if (paths == null)
+            return CompletableFuture.completedFuture(null);
+        java.util.List<CompletableFuture<Void>> opened = new ArrayList<>(paths.size());
+        for (Path path : paths) {
+            opened.add(CompletableFuture.runAsync(() -> {
+                if (prefetch.isDone())
+                    return;
+                try {
+                    if (getContainer(path) instanceof JRTImageContainer)
+                        getJRTIndex().preload(prefetch::isDone);
+                } catch (IOException e) {
+                    // left for the compilation to report
+                }
+            }, executor));
+        }
+        return CompletableFuture.allOf(opened.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Builds the package index of {@code location} and publishes it, unless the compilation
+     * built one first or the location indexes were cleared since the prefetch started.
+     */
+    private void prefetchIndex(Location location, long generation, CompletableFuture<?> prefetch) {
+        if (prefetch.isDone()
+                || pathsAndContainersByLocationAndRelativeDirectory.containsKey(location))
+            return;
+        long start = System.nanoTime();
+        java.util.List<PathAndContainer> nonIndexingContainers = new ArrayList<>();
+        Map<RelativeDirectory, java.util.List<PathAndContainer>> index;
+        try {
+            index = indexPathsAndContainersByRelativeDirectory(location, nonIndexingContainers);
+        } catch (UncheckedIOException e) {
+            // left for the compilation to report
+            return;
+        }
+        indexLock.lock();
+        try {
+            if (indexGeneration != generation
+                    || pathsAndContainersByLocationAndRelativeDirectory.containsKey(location))
+                return;
+            nonIndexingContainersByLocation.put(location, nonIndexingContainers);
+            pathsAndContainersByLocationAndRelativeDirectory.put(location, index);
+        } finally {
+            indexLock.unlock();
+        }
+        metrics.timed(FileManagerMetrics.Operation.INDEX_LOCATION, start);
+    }
+
+    final MemoryOverlay memoryOverlay = new MemoryOverlay();
+    private volatile boolean memoryOutput;
+
+    /**
+     * Registers the content of a source file that is to be used instead of the file on disk,
+     * such as an unsaved editor buffer. The file need not exist: it is found through any
+     * package-oriented location, such as {@link StandardLocation#SOURCE_PATH}, whose directories
+     * contain {@code file}, and by {@link #getJavaFileObjectsFromPaths}. Registering a file again
+     * replaces its content.
+     *
+     * @param file the path of the source file
+     * @param content the content of the file
+     */
+    public void putMemorySource(Path file, CharSequence content) {
+        nullCheck(content);
+        putMemoryEntry(memoryKey(nullCheck(file)), MemoryOverlay.Entry.source(content));
+    }
+
+    /**
+     * Registers the content of a source file identified by a {@code file:} URI.
+     *
+     * @param uri the URI of the source file
+     * @param content the content of the file
+     * @see #putMemorySource(Path, CharSequence)
+     */
+    public void putMemorySource(URI uri, CharSequence content) {
+        putMemorySource(Paths.get(nullCheck(uri)), content);
+    }
+
+    /**
+     * Removes a source registered with {@link #putMemorySource}, so that the file on disk, if
+     * any, is used again.
+     *
+     * @param file the path of the source file
+     * @return whether a source was registered for the file
+     */
+    public boolean removeMemorySource(Path file) {
+        Path key = memoryKey(nullCheck(file));
+        MemoryOverlay.Entry entry = memoryOverlay.get(key);
+        if (entry == null || entry.isOutput())
+            return false;
+        memoryOverlay.remove(key);
+        clearLocationIndexes();
+        return true;
+    }
+
+    /** Removes all sources registered with {@link #putMemorySource}. */
+    public void clearMemorySources() {
+        memoryOverlay.clear(false);
+        clearLocationIndexes();
+    }
+
+    /**
+     * Sets whether files written to output locations are kept in memory instead of being written
+     * to disk. In-memory outputs are visible to later lookups in the same file manager, as a file
+     * written to disk would be, and are returned by {@link #getMemoryOutputs()}.
+     *
+     * @param enabled whether outputs are kept in memory
+     */
+    public void setMemoryOutput(boolean enabled) {
+        memoryOutput = enabled;
+    }
+
+    /**
+     * Returns the files written to output locations while in-memory output was enabled, by the
+     * path they would have been written to.
+     *
+     * @return a sorted snapshot of the in-memory outputs
+     */
+    public SortedMap<Path, byte[]> getMemoryOutputs() {
+        return memoryOverlay.outputs();
+    }
+
+    /** Discards the files written to output locations while in-memory output was enabled. */
+    public void clearMemoryOutputs() {
+        memoryOverlay.clear(true);
+        clearLocationIndexes();
+    }
+
+    void putMemoryEntry(Path key, MemoryOverlay.Entry entry) {
+        if (memoryOverlay.put(key, entry)) {
+            // a directory that was missing may now have content
+            containers.values().removeIf(c -> c == MISSING_CONTAINER);
+            clearLocationIndexes();
+        }
+        contentCache.remove(new MemoryFileObject(this, key, key, null));
+    }
+
+    /** The canonical form of {@code file}, which need not exist, as used by the overlay. */
+    private Path memoryKey(Path file) {
+        Path path = file.toAbsolutePath().normalize();
+        Path parent = path.getParent();
+        return (parent == null)
+                ? path
+                : fsInfo.getCanonicalFile(parent).resolve(path.getFileName());
+    }
+
+    private final FileManagerMetrics metrics = new FileManagerMetrics();
+
+    /**
+     * Returns a snapshot of the cache and I/O counters of this file manager, accumulated since it
+     * was created or {@linkplain #resetMetrics() last reset}.
+     */
+    public FileManagerMetrics.Snapshot getMetrics() {
+        Map<FileManagerMetrics.Cache, Integer> sizes = new EnumMap<>(FileManagerMetrics.Cache.class);
+        int containersOpen;
+        containersLock.lock();
+        try {
+            Set<Container> open = Collections.newSetFromMap(new IdentityHashMap<>());
+            open.addAll(containers.values());
+            open.remove(MISSING_CONTAINER);
+            containersOpen = open.size();
+            sizes.put(FileManagerMetrics.Cache.CONTAINERS, containers.size());
+        } finally {
+            containersLock.unlock();
+        }
+        sizes.put(FileManagerMetrics.Cache.LOCATION_INDEX,
+                pathsAndContainersByLocationAndRelativeDirectory.size());
+        sizes.put(FileManagerMetrics.Cache.CONTENT, contentCache.size());
+        if (jrtIndex != null)
+            sizes.put(FileManagerMetrics.Cache.JRT_INDEX, jrtIndex.size());
+        return metrics.snapshot(sizes, containersOpen);
+    }
+
+    /** Clears the counters reported by {@link #getMetrics()}, e.g. at the start of a compilation. */
+    public void resetMetrics() {
+        metrics.reset();
+    }
+
+    /** Kept here, as {@link MemoryPressure} holds its listeners weakly. */
+    private final MemoryPressure.Listener memoryListener = this::shedCaches;
+
+    /**
+     * The most severe level of memory pressure not yet acted on. The content cache and the
+     * location indexes are only used by the compiling thread, so they are shed by that thread,
+     * the next time it looks in them.
+     */
+    private final AtomicReference<MemoryPressure.Level> pendingShed = new AtomicReference<>();
+
+    /**
+     * Set at {@link MemoryPressure.Level#CRITICAL} to close the open containers when the
+     * compilation using them is over. File objects handed to a compilation, the iterators of
+     * lazy listings and the location indexes all read through the archives of their containers,
+     * and a compilation may complete symbols from them at any time until it is finished, so
+     * the containers are closed by the thread that {@linkplain #flush() flushes} the file
+     * manager, never by the thread that signals the pressure.
+     */
+    private volatile boolean closeContainersPending;
+
+    /** Sheds caches for {@code level}; called on any thread. */
+    private void shedCaches(MemoryPressure.Level level) {
+        pendingShed.accumulateAndGet(
+                level, (a, b) -> (a == null || b.compareTo(a) > 0) ? b : a);
+        if (level == MemoryPressure.Level.CRITICAL)
+            closeContainersPending = true;
+    }
+
+    /** Closes the open containers if {@link #closeContainersPending}; called by the owning thread. */
+    private void closePendingContainers() {
+        if (!closeContainersPending)
+            return;
+        closeContainersPending = false;
+        Set<Container> open = Collections.newSetFromMap(new IdentityHashMap<>());
+        containersLock.lock();
+        try {
+            open.addAll(containers.values());
+            metrics.evicted(FileManagerMetrics.Cache.CONTAINERS, containers.size());
+            containers.clear();
+        } finally {
+            containersLock.unlock();
+        }
+        // a prefetch that indexed the closed containers is dropped, as the indexes were cleared
+        clearLocationIndexes();
+        for (Container c : open) {
+            try {
+                c.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /** Sheds what {@link #pendingShed} asks for; called by the compiling thread. */
+    private void applyPendingShed() {
+        if (pendingShed.get() == null)
+            return;
+        MemoryPressure.Level level = pendingShed.getAndSet(null);
+        if (level == null)
+            return;
+        metrics.evicted(FileManagerMetrics.Cache.CONTENT, contentCache.size());
+        contentCache.clear();
+        if (level.compareTo(MemoryPressure.Level.MODERATE) >= 0)
+            clearLocationIndexes();
+    }
+
+    private volatile SharedContentCache sharedContentCache;
+
+    /** The attributes of files missed in the shared content cache, until their content is cached. */
+    private final Map<JavaFileObject, BasicFileAttributes> sharedContentAttributes =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Sets a cache for decoded source content that is kept across compilations and may be
+     * shared with other file managers, or {@code null} to cache content only until this file
+     * manager is {@linkplain #flush() flushed}. The command line equivalent is {@code
+     * -XDsharedContentCache}, which uses the {@linkplain SharedContentCache#getSharedInstance()
+     * process-wide cache}, or {@code -XDsharedContentCache=<megabytes>}, which also sets its
+     * budget.
+     *
+     * @param cache the cache, or {@code null}
+     */
+    public void setContentCache(SharedContentCache cache) {
+        sharedContentCache = cache;
+        sharedContentAttributes.clear();
+    }
+
+    /**
+     * Returns the attributes that key the content of {@code file} in the shared cache, or {@code
+     * null} if it is not cached there.
+     */
+    private BasicFileAttributes readSharedContentAttributes(JavaFileObject file) {
+        if (!(file instanceof PathFileObject pfo) || file instanceof MemoryFileObject) {
+            return null;
+        }
+        try {
+            return Files.readAttributes(pfo.getPath(), BasicFileAttributes.class);
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public CharBuffer getCachedContent(JavaFileObject file) {
+        CharBuffer cb = lookupContent(file);
+        if (cb == null) {
+            cb = readMappedSource(file);
+            if (cb != null) {
+                cache(file, cb);
+            }
+        }
+        return cb;
+    }
+
+    private CharBuffer lookupContent(JavaFileObject file) {
+        applyPendingShed();
+        SharedContentCache shared = sharedContentCache;
+        BasicFileAttributes attrs =
+                (shared != null) ? readSharedContentAttributes(file) : null;
+        if (attrs != null) {
+            CharBuffer cb = shared.get(file.toUri(), attrs, getEncodingName());
+            if (cb != null) {
+                metrics.hit(FileManagerMetrics.Cache.CONTENT);
+            } else {
+                metrics.miss(FileManagerMetrics.Cache.CONTENT);
+                // keyed by the attributes from before the file is read, so that a change while
+                // it is being read is noticed the next time
+                sharedContentAttributes.put(file, attrs);
+            }
+            return cb;
+        }
+        boolean cached = contentCache.containsKey(file);
+        CharBuffer cb = super.getCachedContent(file);
+        if (cb != null) {
+            metrics.hit(FileManagerMetrics.Cache.CONTENT);
+        } else {
+            metrics.miss(FileManagerMetrics.Cache.CONTENT);
+            if (cached)
+                metrics.evicted(FileManagerMetrics.Cache.CONTENT, 1);
+        }
+        return cb;
+    }
+
+    @Override
+    public void cache(JavaFileObject file, CharBuffer cb) {
+        SharedContentCache shared = sharedContentCache;
+        BasicFileAttributes attrs = sharedContentAttributes.remove(file);
+        if (shared != null && attrs != null) {
+            shared.put(file.toUri(), attrs, getEncodingName(), cb);
+            return;
+        }
+        super.cache(file, cb);
+    }
+
+    @Override
+    public void flushCache(JavaFileObject file) {
+        SharedContentCache shared = sharedContentCache;
+        if (shared != null) {
+            shared.remove(file.toUri());
+        }
+        super.flushCache(file);
+    }
+
+    /** Source files at least this large are mapped rather than read. */
+    private static final long MAPPED_SOURCE_THRESHOLD = 256 << 10;
+
+    /**
+     * Reads a large source file in the default file system by mapping it and decoding it
+     * straight into the array the scanner will use, or returns {@code null} to leave reading
+     * it to the file object, including when it cannot be decoded without error.
+     */
+    private CharBuffer readMappedSource(JavaFileObject file) {
+        if (!(file instanceof PathFileObject pfo)
+                || file instanceof MemoryFileObject
+                || file.getKind() != JavaFileObject.Kind.SOURCE) {
+            return null;
+        }
+        Path path = pfo.getPath();
+        Charset cs = getSourceCharset();
+        if (cs == null
+                || !SourceDecoding.isSupported(cs)
+                || path.getFileSystem() != FileSystems.getDefault()) {
+            return null;
+        }
+        try (FileChannel ch = FileChannel.open(path)) {
+            long size = ch.size();
+            if (size < MAPPED_SOURCE_THRESHOLD || size >= Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer bb = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            metrics.bytesRead(size);
+            return SourceDecoding.decode(bb, cs);
+        } catch (IOException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /** The charset sources are decoded with, or {@code null} if it is not supported. */
+    private Charset getSourceCharset() {
+        String name = getEncodingName();
+        try {
+            return (name == null) ? Charset.defaultCharset() : Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public CharBuffer decode(ByteBuffer inbuf, boolean ignoreEncodingErrors) {
+        Charset cs = getSourceCharset();
+        CharBuffer cb = (cs != null) ? SourceDecoding.decode(inbuf, cs) : null;
+        if (cb == null) {
+            return super.decode(inbuf, ignoreEncodingErrors);
+        }
+        inbuf.position(inbuf.limit());
+        return cb;
+    }
+
+    @Override
+    public ByteBuffer makeByteBuffer(InputStream in) throws IOException {
+        ByteBuffer bb = super.makeByteBuffer(in);
+        metrics.bytesRead(bb.remaining());
+        return bb;
     }
 }
@@ -173,6 +173,21 @@ public class Locations {
         }
     }
 
+    /**
+     * Restores every location to its initial, unset state so that this instance can serve
+     * another compilation. File systems opened on behalf of the previous settings are closed.
+     */
+    void reset() throws IOException {
+        try {
+            close();
+        } finally {
+            closeables.clear();
+            fileSystems.clear();
+            fsEnv = Collections.emptyMap();
+            initHandlers();
+        }
+    }
+
     void update(Log log, Lint lint, FSInfo fsInfo) {
         this.log = log;
         this.lint = lint;
@@ -362,6 +377,15 @@ public class Locations {
                 return;
             }
 
+            if (NestedArchive.isNestedPath(file)) {
+                /* An archive inside another, read in place by the file manager */
+                Path normalized = file.toAbsolutePath().normalize();
+                if (canonicalValues.add(normalized)) {
+                    super.add(file);
+                }
+                return;
+            }
+
             if (!fsInfo.exists(file)) {
                 /* No such file or directory exists */
                 if (warn) {
@@ -380,7 +404,8 @@ public class Locations {
             if (fsInfo.isFile(file)) {
                 /* File is an ordinary file. */
                 if (   !file.getFileName().toString().endsWith(".jmod")
-                    && !file.endsWith("modules")) {
+                    && !file.endsWith("modules")
+                    && !NestedArchive.isAar(file)) {
                     if (!isArchive(file)) {
                         /* Not a recognized extension; open it to see if
                          it looks like a valid zip file. */
@@ -610,12 +635,39 @@ public class Locations {
                 outputDir = null;
             } else {
                 explicit = true;
-                outputDir = checkSingletonDirectory(paths);
+                outputDir = (location == StandardLocation.CLASS_OUTPUT)
+                        ? checkSingletonOutput(paths)
+                        : checkSingletonDirectory(paths);
             }
             moduleTable = null;
             listed = false;
         }
 
+        /**
+         * Class output may also be a jar or zip file, which need not exist yet, nor need the
+         * directory it is in: that is created when the archive is written.
+         */
+        private Path checkSingletonOutput(Iterable<? extends Path> paths) throws IOException {
+            Iterator<? extends Path> pathIter = paths.iterator();
+            if (pathIter.hasNext()) {
+                Path path = pathIter.next();
+                if (!pathIter.hasNext() && OutputArchive.isArchiveName(path)) {
+                    if (Files.isDirectory(path)) {
+                        return path;
+                    }
+                    if (Files.exists(path) && !Files.isRegularFile(path)) {
+                        throw new IOException(path + ": not a file");
+                    }
+                    Path parent = path.toAbsolutePath().getParent();
+                    if (parent != null && Files.exists(parent) && !Files.isDirectory(parent)) {
+                        throw new IOException(parent + ": not a directory");
+                    }
+                    return path;
+                }
+            }
+            return checkSingletonDirectory(paths);
+        }
+
         @Override
         Location getLocationForModule(String name) {
             if (moduleTable == null) {
@@ -1274,11 +1326,14 @@ public class Locations {
                 while (next == null) {
                     if (pathIter.hasNext()) {
                         Path path = pathIter.next();
+                        Object event = FileManagerEvents.beginModulePathScan();
                         if (Files.isDirectory(path)) {
                             next = scanDirectory(path);
                         } else {
                             next = scanFile(path);
                         }
+                        FileManagerEvents.commitModulePathScan(event, location.getName(), path,
+                                next.size());
                         pathIndex++;
                     } else
                         return false;
@@ -2215,7 +2270,7 @@ public class Locations {
     private boolean isArchive(Path file) {
         String n = StringUtils.toLowerCase(file.getFileName().toString());
         return fsInfo.isFile(file)
-                && (n.endsWith(".jar") || n.endsWith(".zip"));
+                && (n.endsWith(".jar") || n.endsWith(".zip") || n.endsWith(".srcjar"));
     }
 
     static Path normalize(Path p) {
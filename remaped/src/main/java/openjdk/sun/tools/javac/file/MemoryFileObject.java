@@ -0,0 +1,179 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * A file object for an entry of a {@link MemoryOverlay}. It reads the entry current at the time
+ * of the call, and writing it replaces the entry with an output once the stream is closed.
+ *
+ * <p>It is a {@link PathFileObject} for the path the entry stands in for, so it compares equal
+ * to a file object for the same file on disk and is accepted wherever the file manager expects
+ * one of its own file objects.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class MemoryFileObject extends PathFileObject {
+
+  private final JavacFileManager owner;
+  private final MemoryOverlay overlay;
+  private final Path userPath;
+  /** The path relative to the package root, if the object was found through a location. */
+  private final RelativePath relativePath;
+
+  MemoryFileObject(
+      JavacFileManager fileManager, Path path, Path userPath, RelativePath relativePath) {
+    super(fileManager, path);
+    this.owner = fileManager;
+    this.overlay = fileManager.memoryOverlay;
+    this.userPath = userPath;
+    this.relativePath = relativePath;
+  }
+
+  @Override
+  public String getName() {
+    return userPath.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return userPath.getFileName().toString();
+  }
+
+  @Override
+  String inferBinaryName(Iterable<? extends Path> paths) {
+    if (relativePath != null) {
+      return toBinaryName(relativePath);
+    }
+    Path absPath = userPath.toAbsolutePath();
+    for (Path p : paths) {
+      Path ap = p.toAbsolutePath();
+      if (absPath.startsWith(ap)) {
+        Path rp = ap.relativize(absPath);
+        if (rp != null) return toBinaryName(rp);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean isNameCompatible(String simpleName, Kind kind) {
+    return isPathNameCompatible(userPath, simpleName, kind);
+  }
+
+  @Override
+  PathFileObject getSibling(String baseName) {
+    // a sibling is an output, which is kept in memory only if the file manager is asked to
+    return forSimplePath(
+        fileManager, path.resolveSibling(baseName), userPath.resolveSibling(baseName));
+  }
+
+  @Override
+  public URI toUri() {
+    return userPath.toUri();
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    MemoryOverlay.Entry entry = entry();
+    byte[] bytes = entry.isOutput() ? entry.bytes : entry.chars.toString().getBytes(charset());
+    return new ByteArrayInputStream(bytes);
+  }
+
+  @Override
+  public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+    return new StringReader(getCharContent(ignoreEncodingErrors).toString());
+  }
+
+  @Override
+  public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+    MemoryOverlay.Entry entry = entry();
+    if (!entry.isOutput()) {
+      return entry.chars;
+    }
+    return fileManager.decode(ByteBuffer.wrap(entry.bytes), ignoreEncodingErrors);
+  }
+
+  @Override
+  public OutputStream openOutputStream() throws IOException {
+    fileManager.updateLastUsedTime();
+    fileManager.flushCache(this);
+    return new ByteArrayOutputStream() {
+      private boolean closed;
+
+      @Override
+      public void close() throws IOException {
+        if (!closed) {
+          closed = true;
+          owner.putMemoryEntry(path, MemoryOverlay.Entry.output(toByteArray()));
+        }
+      }
+    };
+  }
+
+  @Override
+  public Writer openWriter() throws IOException {
+    return new OutputStreamWriter(openOutputStream(), charset());
+  }
+
+  @Override
+  public long getLastModified() {
+    MemoryOverlay.Entry entry = overlay.get(path);
+    return entry == null ? 0 : entry.lastModified;
+  }
+
+  @Override
+  public boolean delete() {
+    return overlay.remove(path);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + userPath + "]";
+  }
+
+  private MemoryOverlay.Entry entry() throws NoSuchFileException {
+    MemoryOverlay.Entry entry = overlay.get(path);
+    if (entry == null) {
+      throw new NoSuchFileException(userPath.toString());
+    }
+    return entry;
+  }
+
+  private Charset charset() {
+    String encodingName = fileManager.getEncodingName();
+    return encodingName == null ? Charset.defaultCharset() : Charset.forName(encodingName);
+  }
+}
@@ -0,0 +1,178 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Files held in memory by a {@link JavacFileManager}, keyed by the canonical path they stand in
+ * for. Directory containers consult the overlay before the disk, so an entry shadows a file of
+ * the same path and can also appear in a directory that does not exist.
+ *
+ * <p>Entries are either sources registered by the client or files written to an output location
+ * while in-memory output is enabled.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class MemoryOverlay {
+
+  /** The content of one file; immutable, replaced as a whole when the file changes. */
+  static final class Entry {
+    /** The text of a registered source, or {@code null} for an output. */
+    final CharSequence chars;
+    /** The bytes of an output, or {@code null} for a registered source. */
+    final byte[] bytes;
+
+    final long lastModified;
+
+    private Entry(CharSequence chars, byte[] bytes) {
+      this.chars = chars;
+      this.bytes = bytes;
+      this.lastModified = System.currentTimeMillis();
+    }
+
+    static Entry source(CharSequence chars) {
+      return new Entry(chars.toString(), null);
+    }
+
+    static Entry output(byte[] bytes) {
+      return new Entry(null, bytes);
+    }
+
+    boolean isOutput() {
+      return bytes != null;
+    }
+  }
+
+  private final Map<Path, SortedMap<String, Entry>> directories = new HashMap<>();
+  private volatile int size;
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Whether any registered source, as opposed to an output, is in the overlay. */
+  synchronized boolean hasSources() {
+    for (SortedMap<String, Entry> entries : directories.values()) {
+      for (Entry e : entries.values()) {
+        if (!e.isOutput()) return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds or replaces an entry.
+   *
+   * @return whether the entry's directory was not in the overlay before
+   */
+  synchronized boolean put(Path file, Entry entry) {
+    Path dir = file.getParent();
+    SortedMap<String, Entry> entries = directories.get(dir);
+    boolean newDirectory = entries == null;
+    if (newDirectory) {
+      entries = new TreeMap<>();
+      directories.put(dir, entries);
+    }
+    if (entries.put(file.getFileName().toString(), entry) == null) {
+      size++;
+    }
+    return newDirectory;
+  }
+
+  synchronized Entry get(Path file) {
+    if (size == 0) return null;
+    SortedMap<String, Entry> entries = directories.get(file.getParent());
+    return entries == null ? null : entries.get(file.getFileName().toString());
+  }
+
+  synchronized boolean remove(Path file) {
+    Path dir = file.getParent();
+    SortedMap<String, Entry> entries = directories.get(dir);
+    if (entries == null || entries.remove(file.getFileName().toString()) == null) {
+      return false;
+    }
+    size--;
+    if (entries.isEmpty()) {
+      directories.remove(dir);
+    }
+    return true;
+  }
+
+  /** Removes all outputs, or all registered sources. */
+  synchronized void clear(boolean outputs) {
+    directories.values().forEach(entries -> {
+      int before = entries.size();
+      entries.values().removeIf(e -> e.isOutput() == outputs);
+      size -= before - entries.size();
+    });
+    directories.values().removeIf(Map::isEmpty);
+  }
+
+  synchronized void clear() {
+    directories.clear();
+    size = 0;
+  }
+
+  /** The entries directly in {@code dir}, by file name. */
+  synchronized SortedMap<String, Entry> list(Path dir) {
+    if (size == 0) return Collections.emptySortedMap();
+    SortedMap<String, Entry> entries = directories.get(dir);
+    return entries == null ? Collections.emptySortedMap() : new TreeMap<>(entries);
+  }
+
+  /** The names of the subdirectories of {@code dir} that have entries somewhere beneath them. */
+  synchronized Set<String> subdirectories(Path dir) {
+    Set<String> names = new TreeSet<>();
+    if (size == 0) return names;
+    for (Path d : directories.keySet()) {
+      if (d.startsWith(dir) && !d.equals(dir)) {
+        names.add(dir.relativize(d).getName(0).toString());
+      }
+    }
+    return names;
+  }
+
+  /** Whether there are entries in {@code dir} or beneath it. */
+  synchronized boolean containsUnder(Path dir) {
+    if (size == 0) return false;
+    for (Path d : directories.keySet()) {
+      if (d.startsWith(dir)) return true;
+    }
+    return false;
+  }
+
+  /** The content of every output, by path. */
+  synchronized SortedMap<Path, byte[]> outputs() {
+    SortedMap<Path, byte[]> outputs = new TreeMap<>();
+    directories.forEach((dir, entries) -> entries.forEach((name, e) -> {
+      if (e.isOutput()) outputs.put(dir.resolve(name), e.bytes.clone());
+    }));
+    return outputs;
+  }
+}
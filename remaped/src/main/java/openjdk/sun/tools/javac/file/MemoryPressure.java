@@ -0,0 +1,195 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import static openjdk.sun.tools.reflection.android.AndroidSupport.isDalvik;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Tells the caches of the file manager that memory is short, so that they shed what they hold
+ * before the process is killed for holding it. Pressure is signalled by the host application
+ * through {@link #trimMemory(int)}, which takes the levels of Android's {@code
+ * ComponentCallbacks2.onTrimMemory}, or through {@link #shed(Level)}; off Android, it is also
+ * signalled when the heap is still above a threshold after a garbage collection.
+ *
+ * <p>Caches shed in order of how cheaply they are rebuilt: decoded source content at {@link
+ * Level#LOW}, then the indexes of locations and of the jrt: file system at {@link
+ * Level#MODERATE}, then open archives at {@link Level#CRITICAL}, and those only when their file
+ * manager is next flushed, since the file objects of a running compilation read through them.
+ *
+ * <p>Listeners are held weakly, so a cache that is no longer used need not be removed. The heap
+ * threshold is a percentage of the maximum size of each heap pool given by the {@code
+ * javac.memoryThreshold} system property, by default {@value #DEFAULT_THRESHOLD}, or {@code 0} to
+ * not watch the heap; pools that already have a threshold, set by the host application, are left
+ * alone.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class MemoryPressure {
+
+  /** How much to shed, in increasing order. */
+  public enum Level {
+    /** Drop what is cheapest to rebuild. */
+    LOW,
+    /** Drop everything that can be rebuilt without reopening files. */
+    MODERATE,
+    /** Drop everything that is not in use. */
+    CRITICAL
+  }
+
+  /** A cache that sheds at least what {@code level} asks for, and may be called on any thread. */
+  public interface Listener {
+    void shed(Level level);
+  }
+
+  // The levels of android.content.ComponentCallbacks2.
+  public static final int TRIM_MEMORY_RUNNING_MODERATE = 5;
+  public static final int TRIM_MEMORY_RUNNING_LOW = 10;
+  public static final int TRIM_MEMORY_RUNNING_CRITICAL = 15;
+  public static final int TRIM_MEMORY_UI_HIDDEN = 20;
+  public static final int TRIM_MEMORY_BACKGROUND = 40;
+  public static final int TRIM_MEMORY_MODERATE = 60;
+  public static final int TRIM_MEMORY_COMPLETE = 80;
+
+  /** The default heap threshold, in percent. */
+  public static final int DEFAULT_THRESHOLD = 70;
+
+  /** The share of a pool in use after a collection above which the heap monitor asks for all. */
+  private static final double CRITICAL_FRACTION = 0.85;
+
+  private static final CopyOnWriteArrayList<WeakReference<Listener>> listeners =
+      new CopyOnWriteArrayList<>();
+
+  private static volatile boolean monitorInstalled;
+
+  private MemoryPressure() {}
+
+  /**
+   * Sheds caches for an {@code onTrimMemory} level: while running, moderate pressure sheds
+   * {@linkplain Level#LOW little}, low memory and a hidden or backgrounded process shed {@linkplain
+   * Level#MODERATE more}, and critical memory or a process about to be killed shed {@linkplain
+   * Level#CRITICAL all}. Unknown levels are taken as the nearest level below.
+   *
+   * @param level a {@code ComponentCallbacks2.TRIM_MEMORY_*} level
+   */
+  public static void trimMemory(int level) {
+    if (level >= TRIM_MEMORY_MODERATE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+      shed(Level.CRITICAL);
+    } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+      shed(Level.MODERATE);
+    } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+      shed(Level.LOW);
+    }
+  }
+
+  /** Asks every registered cache to shed what {@code level} calls for. */
+  public static void shed(Level level) {
+    for (WeakReference<Listener> ref : listeners) {
+      Listener l = ref.get();
+      if (l != null) {
+        l.shed(level);
+      } else {
+        listeners.remove(ref);
+      }
+    }
+  }
+
+  /**
+   * Registers a cache, which must be strongly reachable for as long as it is to be told about
+   * pressure, and starts watching the heap if it is not watched yet.
+   */
+  public static void addListener(Listener listener) {
+    listeners.removeIf(ref -> ref.get() == null);
+    listeners.add(new WeakReference<>(listener));
+    if (!monitorInstalled) {
+      installMonitor();
+    }
+  }
+
+  public static void removeListener(Listener listener) {
+    listeners.removeIf(ref -> ref.get() == null || ref.get() == listener);
+  }
+
+  private static synchronized void installMonitor() {
+    if (monitorInstalled) {
+      return;
+    }
+    monitorInstalled = true;
+    if (isDalvik()) {
+      return;
+    }
+    int percent = Integer.getInteger("javac.memoryThreshold", DEFAULT_THRESHOLD);
+    if (percent <= 0 || percent >= 100) {
+      return;
+    }
+    try {
+      HeapMonitor.install(percent);
+    } catch (LinkageError | SecurityException | UnsupportedOperationException e) {
+      // java.management is not present or not usable; pressure is only signalled explicitly
+    }
+  }
+
+  /** Watches the heap; the only code that refers to {@code java.management}. */
+  private static final class HeapMonitor {
+
+    static void install(int percent) {
+      boolean watched = false;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        if (pool.getType() != MemoryType.HEAP
+            || !pool.isCollectionUsageThresholdSupported()
+            || pool.getCollectionUsageThreshold() != 0) {
+          continue;
+        }
+        long max = pool.getUsage().getMax();
+        if (max <= 0) {
+          continue;
+        }
+        pool.setCollectionUsageThreshold(max / 100 * percent);
+        watched = true;
+      }
+      if (watched) {
+        ((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+            .addNotificationListener(
+                (n, handback) -> exceeded(n),
+                n -> MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(n.getType()),
+                null);
+      }
+    }
+
+    private static void exceeded(Notification n) {
+      MemoryUsage usage =
+          MemoryNotificationInfo.from((CompositeData) n.getUserData()).getUsage();
+      long max = usage.getMax();
+      boolean critical = max > 0 && usage.getUsed() >= max * CRITICAL_FRACTION;
+      shed(critical ? Level.CRITICAL : Level.MODERATE);
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable sorted set of names packed into one array, with the directory each name is in, for
+ * the per-package tables that the file manager keeps for the life of a container. A name is a
+ * range of the array, found by binary search, and its {@code String} and {@code Path} are only
+ * created when asked for. Names that are all Latin-1, as almost all file and package names are,
+ * take one byte a character.
+ *
+ * <p>The directories are shared by the names in them, so a table of the files of a package
+ * normally holds a single one.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class NameTable {
+
+  static final NameTable EMPTY = new Builder().build();
+
+  /** The names, one byte a character, or {@code null} if some name is not Latin-1. */
+  private final byte[] latin1;
+
+  /** The names, if some name is not Latin-1. */
+  private final char[] utf16;
+
+  /** The start of each name, and the end of the last. */
+  private final int[] offsets;
+
+  /** The directories the names are in, if they were given. */
+  private final Path[] directories;
+
+  /** The index in {@link #directories} of each name, or {@code null} if there is one. */
+  private final short[] directoryOf;
+
+  private NameTable(
+      byte[] latin1, char[] utf16, int[] offsets, Path[] directories, short[] directoryOf) {
+    this.latin1 = latin1;
+    this.utf16 = utf16;
+    this.offsets = offsets;
+    this.directories = directories;
+    this.directoryOf = directoryOf;
+  }
+
+  int size() {
+    return offsets.length - 1;
+  }
+
+  String name(int i) {
+    int start = offsets[i];
+    int length = offsets[i + 1] - start;
+    return (latin1 != null)
+        ? new String(latin1, start, length, ISO_8859_1)
+        : new String(utf16, start, length);
+  }
+
+  /**
+   * The {@code i}th name resolved against its directory. A trailing slash, as in the path of a
+   * {@link RelativePath.RelativeDirectory}, is dropped.
+   */
+  Path path(int i) {
+    String name = name(i);
+    if (name.endsWith("/")) {
+      name = name.substring(0, name.length() - 1);
+    }
+    return directory(i).resolve(name);
+  }
+
+  /** The directory of the {@code i}th name, as given to the builder. */
+  Path directory(int i) {
+    return directories[directoryOf == null ? 0 : directoryOf[i]];
+  }
+
+  /** The index of {@code name}, or {@code -1} if it is not in the table. */
+  int indexOf(String name) {
+    int lo = 0;
+    int hi = size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = compare(mid, name);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  boolean contains(String name) {
+    return indexOf(name) >= 0;
+  }
+
+  /** The path of {@code name}, or {@code null} if it is not in the table. */
+  Path get(String name) {
+    int i = indexOf(name);
+    return (i < 0) ? null : path(i);
+  }
+
+  /** Compares the {@code i}th name with {@code name}, in the order of {@link String#compareTo}. */
+  private int compare(int i, String name) {
+    int start = offsets[i];
+    int length = offsets[i + 1] - start;
+    int n = Math.min(length, name.length());
+    for (int k = 0; k < n; k++) {
+      char c = (latin1 != null) ? (char) (latin1[start + k] & 0xff) : utf16[start + k];
+      char d = name.charAt(k);
+      if (c != d) {
+        return c - d;
+      }
+    }
+    return length - name.length();
+  }
+
+  /** The names, each created as it is reached. */
+  List<String> names() {
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        return name(index);
+      }
+
+      @Override
+      public int size() {
+        return NameTable.this.size();
+      }
+    };
+  }
+
+  /** Collects names; a name added more than once keeps the directory it was added with last. */
+  static final class Builder {
+    private final TreeMap<String, Path> entries = new TreeMap<>();
+
+    Builder add(String name) {
+      entries.put(name, null);
+      return this;
+    }
+
+    Builder add(String name, Path directory) {
+      entries.put(name, directory);
+      return this;
+    }
+
+    int size() {
+      return entries.size();
+    }
+
+    NameTable build() {
+      int length = 0;
+      boolean isLatin1 = true;
+      for (String name : entries.keySet()) {
+        length += name.length();
+        for (int k = 0; isLatin1 && k < name.length(); k++) {
+          isLatin1 = name.charAt(k) <= 0xff;
+        }
+      }
+      byte[] latin1 = isLatin1 ? new byte[length] : null;
+      char[] utf16 = isLatin1 ? null : new char[length];
+      int[] offsets = new int[entries.size() + 1];
+      List<Path> directories = new ArrayList<>(1);
+      Map<Path, Integer> directoryIndex = new HashMap<>();
+      short[] directoryOf = new short[entries.size()];
+      int i = 0;
+      int pos = 0;
+      for (Map.Entry<String, Path> e : entries.entrySet()) {
+        String name = e.getKey();
+        if (isLatin1) {
+          for (int k = 0; k < name.length(); k++) {
+            latin1[pos + k] = (byte) name.charAt(k);
+          }
+        } else {
+          name.getChars(0, name.length(), utf16, pos);
+        }
+        pos += name.length();
+        if (e.getValue() != null) {
+          Integer d = directoryIndex.get(e.getValue());
+          if (d == null) {
+            d = directories.size();
+            if (d > Short.MAX_VALUE) {
+              throw new IllegalStateException("too many directories");
+            }
+            directories.add(e.getValue());
+            directoryIndex.put(e.getValue(), d);
+          }
+          directoryOf[i] = d.shortValue();
+        }
+        offsets[++i] = pos;
+      }
+      return new NameTable(
+          latin1,
+          utf16,
+          offsets,
+          directories.toArray(new Path[0]),
+          directories.size() > 1 ? directoryOf : null);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "NameTable" + names();
+  }
+}
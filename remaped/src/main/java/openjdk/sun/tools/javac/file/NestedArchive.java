@@ -0,0 +1,396 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import javx.lang.model.SourceVersion;
+import openjdk.sun.tools.javac.file.RelativePath.RelativeDirectory;
+import openjdk.sun.tools.javac.util.StringUtils;
+
+/**
+ * A jar stored inside another archive, read without extracting it: the {@code classes.jar} of an
+ * Android library {@code .aar}, or any archive named on a search path as {@code
+ * outer.zip!/path/inner.jar}.
+ *
+ * <p>The outer archive is mapped into memory. An inner archive stored without compression is read
+ * in place, from the mapped bytes; a compressed one is inflated into memory once. The entries of
+ * the inner archive are indexed by package, as an {@code ArchiveContainer} indexes a jar, and are
+ * read on demand. Multi-release versions of the inner archive are not used.
+ *
+ * <p>Opened archives are shared by every file manager in the process, keyed by the path of the
+ * outer archive and the name of the inner one, and reused while the outer archive keeps the size
+ * and modification time it had when it was opened.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class NestedArchive {
+
+  /** The entry of an Android library holding its classes. */
+  static final String AAR_CLASSES = "classes.jar";
+
+  /** Separates the path of an outer archive from the name of an archive inside it. */
+  static final String SEPARATOR = "!/";
+
+  private static final int LOC_SIG = 0x04034b50;
+  private static final int CEN_SIG = 0x02014b50;
+  private static final int END_SIG = 0x06054b50;
+  private static final int END_SIZE = 22;
+  private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+  private static final int ZIP64_LOCATOR_SIZE = 20;
+  private static final int ZIP64_END_SIG = 0x06064b50;
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+
+  /** An entry of an archive. */
+  record Entry(String name, int method, long compressedSize, long size, long offset) {}
+
+  private record Key(Path outer, String inner) {}
+
+  private static final Map<Key, SoftReference<NestedArchive>> opened = new ConcurrentHashMap<>();
+
+  final Path outer;
+  final String inner;
+  private final BasicFileAttributes outerAttributes;
+  /** The inner archive, or {@code null} if the outer archive has no such entry. */
+  private final ByteBuffer data;
+  private final Map<RelativeDirectory, SortedMap<String, Entry>> packages;
+  private final byte[] fingerprint;
+
+  /** Whether {@code file} is named like an Android library. */
+  static boolean isAar(Path file) {
+    Path name = file.getFileName();
+    return name != null && StringUtils.toLowerCase(name.toString()).endsWith(".aar");
+  }
+
+  /**
+   * Splits a path of the form {@code outer!/inner} whose outer archive exists.
+   *
+   * @return the outer archive and the name of the inner one, or {@code null}
+   */
+  static Map.Entry<Path, String> split(Path path) {
+    String s = path.toString();
+    if (File.separatorChar != '/') {
+      s = s.replace(File.separatorChar, '/');
+    }
+    int sep = s.indexOf(SEPARATOR);
+    if (sep <= 0 || sep + SEPARATOR.length() == s.length()) {
+      return null;
+    }
+    Path outer = path.getFileSystem().getPath(s.substring(0, sep));
+    if (!Files.isRegularFile(outer)) {
+      return null;
+    }
+    return Map.entry(outer, s.substring(sep + SEPARATOR.length()));
+  }
+
+  /** Whether {@code path} names an archive inside an existing archive. */
+  static boolean isNestedPath(Path path) {
+    return split(path) != null;
+  }
+
+  /**
+   * Opens an archive inside another, or returns the one already open if the outer archive has
+   * not changed since.
+   *
+   * @param outer the outer archive
+   * @param inner the name of the entry of the outer archive holding the inner one
+   */
+  static NestedArchive open(Path outer, String inner) throws IOException {
+    Key key = new Key(outer.toAbsolutePath().normalize(), inner);
+    SoftReference<NestedArchive> ref = opened.get(key);
+    NestedArchive archive = (ref == null) ? null : ref.get();
+    if (archive != null && !archive.isStale()) {
+      return archive;
+    }
+    archive = new NestedArchive(key.outer(), inner);
+    opened.put(key, new SoftReference<>(archive));
+    return archive;
+  }
+
+  private NestedArchive(Path outer, String inner) throws IOException {
+    this.outer = outer;
+    this.inner = inner;
+    this.outerAttributes = Files.readAttributes(outer, BasicFileAttributes.class);
+    ByteBuffer outerData;
+    try (FileChannel ch = FileChannel.open(outer)) {
+      long size = ch.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("archive too large: " + outer);
+      }
+      outerData = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    outerData.order(ByteOrder.LITTLE_ENDIAN);
+    Entry entry = centralDirectory(outerData, inner).get(inner);
+    if (entry == null) {
+      data = null;
+      packages = Collections.emptyMap();
+      fingerprint = Fingerprints.MISSING;
+      return;
+    }
+    data = readEntry(outerData, entry);
+    packages = new HashMap<>();
+    MessageDigest md = Fingerprints.digest();
+    centralDirectory(data, null).values().forEach(this::index);
+    md.update(centralDirectoryBytes(data));
+    fingerprint = md.digest();
+  }
+
+  private void index(Entry e) {
+    String name = e.name();
+    if (name.endsWith("/")) {
+      return;
+    }
+    int slash = name.lastIndexOf('/');
+    String dir = (slash < 0) ? "" : name.substring(0, slash);
+    if (!dir.isEmpty()) {
+      for (String part : dir.split("/")) {
+        if (!SourceVersion.isIdentifier(part)) {
+          return;
+        }
+      }
+    }
+    packages.computeIfAbsent(new RelativeDirectory(dir), d -> new TreeMap<>())
+        .put(name.substring(slash + 1), e);
+    // the enclosing directories are packages too, if only of subpackages
+    while (slash > 0) {
+      slash = dir.lastIndexOf('/', slash - 1);
+      packages.computeIfAbsent(
+          new RelativeDirectory(slash < 0 ? "" : dir.substring(0, slash)), d -> new TreeMap<>());
+    }
+  }
+
+  /** The directories of the inner archive that hold classes, or packages that do. */
+  Set<RelativeDirectory> directories() {
+    return packages.keySet();
+  }
+
+  /** The files directly in a directory of the inner archive, by name. */
+  SortedMap<String, Entry> list(RelativeDirectory dir) {
+    SortedMap<String, Entry> entries = packages.get(dir);
+    return (entries == null) ? Collections.emptySortedMap() : entries;
+  }
+
+  Entry entry(RelativeDirectory dir, String name) {
+    SortedMap<String, Entry> entries = packages.get(dir);
+    return (entries == null) ? null : entries.get(name);
+  }
+
+  /** The content of an entry of the inner archive. */
+  byte[] read(Entry entry) throws IOException {
+    ByteBuffer content = readEntry(data, entry);
+    byte[] bytes = new byte[content.remaining()];
+    content.get(bytes);
+    return bytes;
+  }
+
+  /** Digests the central directory of the inner archive. */
+  byte[] fingerprint() {
+    return fingerprint;
+  }
+
+  long lastModified() {
+    return outerAttributes.lastModifiedTime().toMillis();
+  }
+
+  /** Whether the outer archive has been rewritten or removed since this was opened. */
+  boolean isStale() {
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(outer, BasicFileAttributes.class);
+      return attrs.size() != outerAttributes.size()
+          || !attrs.lastModifiedTime().equals(outerAttributes.lastModifiedTime())
+          || !Objects.equals(attrs.fileKey(), outerAttributes.fileKey());
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  /** The content of an entry, in place if it is stored and inflated if it is compressed. */
+  private static ByteBuffer readEntry(ByteBuffer archive, Entry entry) throws IOException {
+    long loc = entry.offset();
+    if (loc + 30 > archive.limit() || archive.getInt((int) loc) != LOC_SIG) {
+      throw new IOException("bad local header for " + entry.name());
+    }
+    int start =
+        (int) loc
+            + 30
+            + (archive.getShort((int) loc + 26) & 0xffff)
+            + (archive.getShort((int) loc + 28) & 0xffff);
+    if (start + entry.compressedSize() > archive.limit() || entry.size() > Integer.MAX_VALUE) {
+      throw new IOException("bad entry " + entry.name());
+    }
+    ByteBuffer raw = slice(archive, start, (int) entry.compressedSize());
+    switch (entry.method()) {
+      case STORED:
+        return raw;
+      case DEFLATED:
+        byte[] input = new byte[raw.remaining()];
+        raw.get(input);
+        byte[] output = new byte[(int) entry.size()];
+        Inflater inflater = new Inflater(true);
+        try {
+          inflater.setInput(input);
+          int n = 0;
+          while (n < output.length && !inflater.finished()) {
+            int k = inflater.inflate(output, n, output.length - n);
+            if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+              break;
+            }
+            n += k;
+          }
+          if (n != output.length) {
+            throw new IOException("truncated entry " + entry.name());
+          }
+        } catch (DataFormatException e) {
+          throw new IOException("bad entry " + entry.name(), e);
+        } finally {
+          inflater.end();
+        }
+        return ByteBuffer.wrap(output).order(ByteOrder.LITTLE_ENDIAN);
+      default:
+        throw new IOException("unsupported compression method " + entry.method());
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer dup = buffer.duplicate();
+    dup.position(offset);
+    dup.limit(offset + length);
+    return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  /**
+   * Reads the central directory of an archive.
+   *
+   * @param only the only entry wanted, or {@code null} for all of them
+   * @return the entries, by name
+   */
+  private static Map<String, Entry> centralDirectory(ByteBuffer archive, String only)
+      throws IOException {
+    long[] cd = findCentralDirectory(archive);
+    Map<String, Entry> entries = new TreeMap<>();
+    int pos = (int) cd[0];
+    int end = (int) (cd[0] + cd[1]);
+    while (pos + 46 <= end) {
+      if (archive.getInt(pos) != CEN_SIG) {
+        throw new IOException("bad central directory");
+      }
+      int method = archive.getShort(pos + 10) & 0xffff;
+      long compressedSize = archive.getInt(pos + 20) & 0xffffffffL;
+      long size = archive.getInt(pos + 24) & 0xffffffffL;
+      int nameLength = archive.getShort(pos + 28) & 0xffff;
+      int extraLength = archive.getShort(pos + 30) & 0xffff;
+      int commentLength = archive.getShort(pos + 32) & 0xffff;
+      long offset = archive.getInt(pos + 42) & 0xffffffffL;
+      byte[] nameBytes = new byte[nameLength];
+      ByteBuffer nameBuffer = slice(archive, pos + 46, nameLength);
+      nameBuffer.get(nameBytes);
+      String name = new String(nameBytes, UTF_8);
+      if (size == 0xffffffffL || compressedSize == 0xffffffffL || offset == 0xffffffffL) {
+        // the real values are in the zip64 extra field, in this order, when they overflow
+        int extra = pos + 46 + nameLength;
+        int extraEnd = extra + extraLength;
+        while (extra + 4 <= extraEnd) {
+          int id = archive.getShort(extra) & 0xffff;
+          int length = archive.getShort(extra + 2) & 0xffff;
+          if (id == 0x0001) {
+            int field = extra + 4;
+            if (size == 0xffffffffL) {
+              size = archive.getLong(field);
+              field += 8;
+            }
+            if (compressedSize == 0xffffffffL) {
+              compressedSize = archive.getLong(field);
+              field += 8;
+            }
+            if (offset == 0xffffffffL) {
+              offset = archive.getLong(field);
+            }
+            break;
+          }
+          extra += 4 + length;
+        }
+      }
+      if (only == null || only.equals(name)) {
+        entries.put(name, new Entry(name, method, compressedSize, size, offset));
+        if (only != null) {
+          break;
+        }
+      }
+      pos += 46 + nameLength + extraLength + commentLength;
+    }
+    return entries;
+  }
+
+  private static ByteBuffer centralDirectoryBytes(ByteBuffer archive) throws IOException {
+    long[] cd = findCentralDirectory(archive);
+    return slice(archive, (int) cd[0], (int) cd[1]);
+  }
+
+  /** Returns the offset and size of the central directory of an archive. */
+  private static long[] findCentralDirectory(ByteBuffer archive) throws IOException {
+    int size = archive.limit();
+    for (int i = size - END_SIZE; i >= Math.max(0, size - END_SIZE - 0xffff); i--) {
+      if (archive.getInt(i) != END_SIG) {
+        continue;
+      }
+      long cdSize = archive.getInt(i + 12) & 0xffffffffL;
+      long cdOffset = archive.getInt(i + 16) & 0xffffffffL;
+      if (cdSize == 0xffffffffL || cdOffset == 0xffffffffL) {
+        int locator = i - ZIP64_LOCATOR_SIZE;
+        if (locator < 0 || archive.getInt(locator) != ZIP64_LOCATOR_SIG) {
+          throw new IOException("bad zip64 end of central directory");
+        }
+        long end64 = archive.getLong(locator + 8);
+        if (end64 < 0 || end64 + 56 > size || archive.getInt((int) end64) != ZIP64_END_SIG) {
+          throw new IOException("bad zip64 end of central directory");
+        }
+        cdSize = archive.getLong((int) end64 + 40);
+        cdOffset = archive.getLong((int) end64 + 48);
+      }
+      if (cdOffset < 0 || cdSize < 0 || cdOffset + cdSize > size) {
+        throw new IOException("bad central directory");
+      }
+      return new long[] {cdOffset, cdSize};
+    }
+    throw new IOException("not a zip archive");
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import openjdk.sun.tools.javac.file.RelativePath.RelativeFile;
+
+/**
+ * A file object for an entry of a {@link NestedArchive}. Its path is the path of the outer
+ * archive, followed by the name of the inner archive and of the entry; no such file exists, but
+ * the path identifies the entry, so that file objects for the same entry compare equal.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class NestedJarFileObject extends PathFileObject {
+
+  private final NestedArchive archive;
+  private final NestedArchive.Entry entry;
+
+  NestedJarFileObject(
+      JavacFileManager fileManager, NestedArchive archive, NestedArchive.Entry entry) {
+    super(fileManager, archive.outer.resolve(archive.inner).resolve(entry.name()));
+    this.archive = archive;
+    this.entry = entry;
+  }
+
+  @Override
+  boolean isJarFile() {
+    return true;
+  }
+
+  @Override
+  public String getName() {
+    return archive.outer + "(" + archive.inner + NestedArchive.SEPARATOR + entry.name() + ")";
+  }
+
+  @Override
+  public String getShortName() {
+    return archive.outer.getFileName()
+        + "(" + archive.inner + NestedArchive.SEPARATOR + entry.name() + ")";
+  }
+
+  @Override
+  String inferBinaryName(Iterable<? extends Path> paths) {
+    return toBinaryName(new RelativeFile(entry.name()));
+  }
+
+  @Override
+  PathFileObject getSibling(String baseName) {
+    // not used for output, as for any file object in an archive
+    Path sibling = path.resolveSibling(baseName);
+    return forSimplePath(fileManager, sibling, sibling);
+  }
+
+  @Override
+  public URI toUri() {
+    return URI.create(
+        "jar:" + archive.outer.toUri() + NestedArchive.SEPARATOR + encode(archive.inner)
+            + NestedArchive.SEPARATOR + encode(entry.name()));
+  }
+
+  private static String encode(String path) {
+    try {
+      return new URI(null, null, path, null).getRawPath();
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(path, e);
+    }
+  }
+
+  @Override
+  public InputStream openInputStream() throws IOException {
+    return new ByteArrayInputStream(archive.read(entry));
+  }
+
+  @Override
+  public OutputStream openOutputStream() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Writer openWriter() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public long getLastModified() {
+    return archive.lastModified();
+  }
+
+  @Override
+  public boolean delete() {
+    return false;
+  }
+
+  @Override
+  boolean isSameFile(PathFileObject other) {
+    return other instanceof NestedJarFileObject && path.equals(other.path);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[" + getName() + "]";
+  }
+}
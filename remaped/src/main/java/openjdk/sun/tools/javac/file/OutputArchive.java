@@ -0,0 +1,544 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javx.lang.model.element.Modifier;
+import javx.lang.model.element.NestingKind;
+import javx.tools.JavaFileObject;
+
+/**
+ * Class output written into a jar or zip file rather than a directory.
+ *
+ * <p>Each file is compressed (or, if requested, stored) as soon as its output stream is closed,
+ * while the compiler goes on generating the next one, and held until {@link #write()} is called
+ * at the end of the compilation. The archive is then written in one pass, with the entries in
+ * name order and a fixed timestamp, so the same classes always give the same bytes. Entries of
+ * an existing archive that were not written again are kept, as they would be in an output
+ * directory. The archive is replaced atomically where the file system allows it.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class OutputArchive {
+
+  /** Whether {@code file} names a jar or zip file, whether or not it exists. */
+  static boolean isArchiveName(Path file) {
+    Path name = file.getFileName();
+    if (name == null) return false;
+    String n = name.toString().toLowerCase(Locale.ROOT);
+    return n.endsWith(".jar") || n.endsWith(".zip");
+  }
+
+  private static final int LOCAL_HEADER = 0x04034b50;
+  private static final int CENTRAL_HEADER = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+  private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+  private static final int ZIP64_LOCATOR = 0x07064b50;
+  private static final int UTF8_NAMES = 0x0800;
+  /** 1980-01-01 00:00, the earliest DOS date. */
+  private static final int DOS_TIME = 0;
+  private static final int DOS_DATE = (1 << 5) | 1;
+
+  private static final class Entry {
+    final int method;
+    final long crc;
+    final int size;
+    final byte[] data;
+
+    Entry(int method, long crc, int size, byte[] data) {
+      this.method = method;
+      this.crc = crc;
+      this.size = size;
+      this.data = data;
+    }
+  }
+
+  private final BaseFileManager fileManager;
+  private final Path file;
+  private final boolean stored;
+  private final Map<String, Entry> entries = new TreeMap<>();
+
+  OutputArchive(BaseFileManager fileManager, Path file, boolean stored) {
+    this.fileManager = fileManager;
+    this.file = file;
+    this.stored = stored;
+  }
+
+  Path getFile() {
+    return file;
+  }
+
+  JavaFileObject getFileObject(RelativePath.RelativeFile name) {
+    return new EntryFileObject(name.getPath());
+  }
+
+  synchronized boolean isEmpty() {
+    return entries.isEmpty();
+  }
+
+  private void put(String name, byte[] bytes) {
+    Entry entry = stored ? store(bytes) : deflate(bytes);
+    synchronized (this) {
+      entries.put(name, entry);
+    }
+  }
+
+  private synchronized Entry get(String name) {
+    return entries.get(name);
+  }
+
+  private synchronized boolean remove(String name) {
+    return entries.remove(name) != null;
+  }
+
+  private static Entry store(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    return new Entry(ZipEntry.STORED, crc.getValue(), bytes.length, bytes);
+  }
+
+  private static Entry deflate(byte[] bytes) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+      byte[] buf = new byte[8192];
+      while (!deflater.finished()) {
+        out.write(buf, 0, deflater.deflate(buf));
+      }
+      byte[] data = out.toByteArray();
+      // incompressible content is stored, as jar does
+      if (data.length >= bytes.length) {
+        return new Entry(ZipEntry.STORED, crc.getValue(), bytes.length, bytes);
+      }
+      return new Entry(ZipEntry.DEFLATED, crc.getValue(), bytes.length, data);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(Entry entry) throws IOException {
+    if (entry.method == ZipEntry.STORED) {
+      return entry.data;
+    }
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(entry.data);
+      byte[] bytes = new byte[entry.size];
+      int n = 0;
+      while (n < bytes.length && !inflater.finished()) {
+        n += inflater.inflate(bytes, n, bytes.length - n);
+        if (inflater.needsInput()) break;
+      }
+      return bytes;
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Writes the archive with every file put since the last call, plus the entries of the existing
+   * archive that were not replaced, and forgets the files put. Does nothing if no file was put.
+   *
+   * @param skipUnchanged whether to leave the existing archive untouched if the new one would
+   *     have the same bytes
+   * @return whether the archive on disk was written
+   */
+  synchronized boolean write(boolean skipUnchanged) throws IOException {
+    if (entries.isEmpty()) {
+      return false;
+    }
+    if (Files.isRegularFile(file)) {
+      keepExisting();
+    }
+    Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path tmp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+        writeZip(out);
+      }
+      if (skipUnchanged && sameContent(tmp, file)) {
+        return false;
+      }
+      try {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+      }
+      return true;
+    } finally {
+      Files.deleteIfExists(tmp);
+      entries.clear();
+    }
+  }
+
+  /**
+   * Adds the entries of the existing archive that were not put again. Their compressed data is
+   * copied as it is, unless the archive is to be stored and the entry is deflated. An archive
+   * whose entries cannot be copied that way, such as one with ZIP64 sizes or encrypted entries,
+   * is read through {@link ZipFile} instead.
+   */
+  private void keepExisting() throws IOException {
+    Map<String, Entry> kept;
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      kept = readEntries(ch);
+    }
+    if (kept != null) {
+      for (Map.Entry<String, Entry> me : kept.entrySet()) {
+        Entry e = me.getValue();
+        entries.put(me.getKey(), (stored && e.method != ZipEntry.STORED) ? store(inflate(e)) : e);
+      }
+      return;
+    }
+    try (ZipFile existing = new ZipFile(file.toFile())) {
+      Enumeration<? extends ZipEntry> e = existing.entries();
+      while (e.hasMoreElements()) {
+        ZipEntry ze = e.nextElement();
+        if (!ze.isDirectory() && !entries.containsKey(ze.getName())) {
+          try (InputStream in = existing.getInputStream(ze)) {
+            byte[] bytes = in.readAllBytes();
+            entries.put(ze.getName(), stored ? store(bytes) : deflate(bytes));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the entries of an archive that were not put again, with their data as compressed in
+   * the archive, or returns {@code null} if an entry cannot be read that way.
+   */
+  private Map<String, Entry> readEntries(FileChannel ch) throws IOException {
+    long size = ch.size();
+    int tail = (int) Math.min(size, 22 + 0xFFFF);
+    ByteBuffer end = read(ch, size - tail, tail);
+    int eocd = tail - 22;
+    while (eocd >= 0 && end.getInt(eocd) != END_OF_CENTRAL_DIRECTORY) {
+      eocd--;
+    }
+    if (eocd < 0) {
+      return null;
+    }
+    int count = end.getShort(eocd + 10) & 0xFFFF;
+    long centralSize = end.getInt(eocd + 12) & 0xFFFFFFFFL;
+    long centralOffset = end.getInt(eocd + 16) & 0xFFFFFFFFL;
+    if (count == 0xFFFF || centralSize == 0xFFFFFFFFL || centralOffset == 0xFFFFFFFFL
+        || centralOffset + centralSize > size) {
+      return null;
+    }
+    ByteBuffer central = read(ch, centralOffset, (int) centralSize);
+    Map<String, Entry> kept = new TreeMap<>();
+    int p = 0;
+    for (int i = 0; i < count; i++) {
+      if (p + 46 > central.limit() || central.getInt(p) != CENTRAL_HEADER) {
+        return null;
+      }
+      int flags = central.getShort(p + 8) & 0xFFFF;
+      int method = central.getShort(p + 10) & 0xFFFF;
+      long crc = central.getInt(p + 16) & 0xFFFFFFFFL;
+      long compressedSize = central.getInt(p + 20) & 0xFFFFFFFFL;
+      long entrySize = central.getInt(p + 24) & 0xFFFFFFFFL;
+      int nameLength = central.getShort(p + 28) & 0xFFFF;
+      int extraLength = central.getShort(p + 30) & 0xFFFF;
+      int commentLength = central.getShort(p + 32) & 0xFFFF;
+      long offset = central.getInt(p + 42) & 0xFFFFFFFFL;
+      if (p + 46 + nameLength > central.limit()) {
+        return null;
+      }
+      byte[] nameBytes = new byte[nameLength];
+      central.get(p + 46, nameBytes);
+      String name = new String(nameBytes, StandardCharsets.UTF_8);
+      p += 46 + nameLength + extraLength + commentLength;
+      if (name.endsWith("/") || entries.containsKey(name)) {
+        continue;
+      }
+      // encrypted entries, other methods and ZIP64 sizes are left to ZipFile
+      if ((flags & 1) != 0
+          || (method != ZipEntry.STORED && method != ZipEntry.DEFLATED)
+          || compressedSize >= 0xFFFFFFFFL
+          || entrySize >= Integer.MAX_VALUE
+          || offset >= 0xFFFFFFFFL) {
+        return null;
+      }
+      ByteBuffer local = read(ch, offset, 30);
+      if (local.getInt(0) != LOCAL_HEADER) {
+        return null;
+      }
+      long data = offset + 30 + (local.getShort(26) & 0xFFFF) + (local.getShort(28) & 0xFFFF);
+      if (data + compressedSize > size) {
+        return null;
+      }
+      byte[] bytes = read(ch, data, (int) compressedSize).array();
+      kept.put(name, new Entry(method, crc, (int) entrySize, bytes));
+    }
+    return kept;
+  }
+
+  private ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (ch.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException(file + ": truncated");
+      }
+    }
+    return buffer.clear();
+  }
+
+  private static boolean sameContent(Path a, Path b) throws IOException {
+    if (!Files.isRegularFile(b) || Files.size(a) != Files.size(b)) {
+      return false;
+    }
+    try (InputStream ina = Files.newInputStream(a);
+        InputStream inb = Files.newInputStream(b)) {
+      byte[] bufa = new byte[8192];
+      byte[] bufb = new byte[8192];
+      int n;
+      while ((n = ina.readNBytes(bufa, 0, bufa.length)) > 0) {
+        if (inb.readNBytes(bufb, 0, n) != n || !Arrays.equals(bufa, 0, n, bufb, 0, n)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private void writeZip(OutputStream out) throws IOException {
+    ByteBuffer central = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    ByteBuffer header = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    long offset = 0;
+    for (Map.Entry<String, Entry> me : entries.entrySet()) {
+      byte[] name = me.getKey().getBytes(StandardCharsets.UTF_8);
+      Entry e = me.getValue();
+      if (offset > 0xFFFFFFFFL) {
+        throw new IOException(file + ": archive too large");
+      }
+      int version = e.method == ZipEntry.STORED ? 10 : 20;
+
+      header = ensure(header, 30 + name.length);
+      header.putInt(LOCAL_HEADER).putShort((short) version).putShort((short) UTF8_NAMES)
+          .putShort((short) e.method).putShort((short) DOS_TIME).putShort((short) DOS_DATE)
+          .putInt((int) e.crc).putInt(e.data.length).putInt(e.size)
+          .putShort((short) name.length).putShort((short) 0).put(name);
+      out.write(header.array(), 0, header.position());
+
+      central = ensure(central, 46 + name.length);
+      central.putInt(CENTRAL_HEADER).putShort((short) 20).putShort((short) version)
+          .putShort((short) UTF8_NAMES).putShort((short) e.method)
+          .putShort((short) DOS_TIME).putShort((short) DOS_DATE)
+          .putInt((int) e.crc).putInt(e.data.length).putInt(e.size)
+          .putShort((short) name.length).putShort((short) 0).putShort((short) 0)
+          .putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) offset).put(name);
+
+      out.write(e.data);
+      offset += header.position() + e.data.length;
+      header.clear();
+    }
+    if (offset > 0xFFFFFFFFL) {
+      throw new IOException(file + ": archive too large");
+    }
+    out.write(central.array(), 0, central.position());
+    long centralSize = central.position();
+    long count = entries.size();
+
+    ByteBuffer end = ByteBuffer.allocate(56 + 20 + 22).order(ByteOrder.LITTLE_ENDIAN);
+    if (count >= 0xFFFF) {
+      // more entries than the classic end record can count
+      long zip64End = offset + centralSize;
+      end.putInt(ZIP64_END_OF_CENTRAL_DIRECTORY).putLong(44).putShort((short) 45)
+          .putShort((short) 45).putInt(0).putInt(0).putLong(count).putLong(count)
+          .putLong(centralSize).putLong(offset);
+      end.putInt(ZIP64_LOCATOR).putInt(0).putLong(zip64End).putInt(1);
+    }
+    short shortCount = (short) Math.min(count, 0xFFFF);
+    end.putInt(END_OF_CENTRAL_DIRECTORY).putShort((short) 0).putShort((short) 0)
+        .putShort(shortCount).putShort(shortCount).putInt((int) centralSize)
+        .putInt((int) offset).putShort((short) 0);
+    out.write(end.array(), 0, end.position());
+  }
+
+  private static ByteBuffer ensure(ByteBuffer buffer, int more) {
+    if (buffer.remaining() >= more) {
+      return buffer;
+    }
+    int capacity = Math.max(buffer.capacity() * 2, buffer.position() + more);
+    ByteBuffer bigger = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.flip();
+    return bigger.put(buffer);
+  }
+
+  /** A file to be written into the archive. */
+  private final class EntryFileObject implements JavaFileObject {
+    private final String name;
+    private final Kind kind;
+
+    EntryFileObject(String name) {
+      this.name = name;
+      this.kind = BaseFileManager.getKind(name);
+    }
+
+    @Override
+    public String getName() {
+      return file + "(" + name + ")";
+    }
+
+    @Override
+    public URI toUri() {
+      try {
+        return new URI("jar:" + file.toUri() + "!/" + name);
+      } catch (URISyntaxException e) {
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    @Override
+    public Kind getKind() {
+      return kind;
+    }
+
+    @Override
+    public boolean isNameCompatible(String simpleName, Kind kind) {
+      String baseName = simpleName + kind.extension;
+      return kind == this.kind && (name.equals(baseName) || name.endsWith("/" + baseName));
+    }
+
+    @Override
+    public NestingKind getNestingKind() {
+      return null;
+    }
+
+    @Override
+    public Modifier getAccessLevel() {
+      return null;
+    }
+
+    @Override
+    public long getLastModified() {
+      return 0;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      Entry entry = get(name);
+      if (entry == null) {
+        throw new NoSuchFileException(getName());
+      }
+      return new ByteArrayInputStream(inflate(entry));
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+      return new ByteArrayOutputStream() {
+        private boolean closed;
+
+        @Override
+        public void close() {
+          if (!closed) {
+            closed = true;
+            put(name, toByteArray());
+          }
+        }
+      };
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      try (InputStream in = openInputStream()) {
+        return fileManager.decode(ByteBuffer.wrap(in.readAllBytes()), ignoreEncodingErrors);
+      }
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new StringReader(getCharContent(ignoreEncodingErrors).toString());
+    }
+
+    @Override
+    public Writer openWriter() {
+      String encodingName = fileManager.getEncodingName();
+      return new OutputStreamWriter(openOutputStream(),
+          encodingName == null
+              ? Charset.defaultCharset()
+              : Charset.forName(encodingName));
+    }
+
+    @Override
+    public boolean delete() {
+      return remove(name);
+    }
+
+    /** Equal to the file objects of the same entry of the same archive. */
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof EntryFileObject o
+          && name.equals(o.name)
+          && file.equals(o.archiveFile());
+    }
+
+    @Override
+    public int hashCode() {
+      return file.hashCode() * 31 + name.hashCode();
+    }
+
+    private Path archiveFile() {
+      return file;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.net.URI;
+import java.nio.CharBuffer;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Decoded source file content that outlives a compilation, bounded by an approximate number of
+ * bytes and evicted least recently used first. One cache can be given to any number of {@link
+ * JavacFileManager}s with {@link JavacFileManager#setContentCache}, so that repeated compilations
+ * of the same sources in one process, as in an IDE or a compile server, decode each unchanged file
+ * once.
+ *
+ * <p>Content is keyed by the URI of the file and is only returned while the file has the same
+ * last modified time and size it had before it was read, and is decoded with the same encoding. A
+ * file rewritten within the resolution of its file system's timestamps without a change in size
+ * is not noticed, as with the per-compilation cache of the file manager.
+ *
+ * <p>When {@linkplain MemoryPressure memory is short}, the cache drops its least recently used
+ * content down to half its budget at a low level, and all of its content at any higher level. The
+ * budget itself is kept.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class SharedContentCache {
+
+  /** The budget of {@link #getSharedInstance()}. */
+  public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+  /** The approximate bytes an entry takes in addition to its characters and URI. */
+  private static final int ENTRY_OVERHEAD = 160;
+
+  private static SharedContentCache sharedInstance;
+
+  /** Returns the cache shared by everything in this process that asks for it. */
+  public static synchronized SharedContentCache getSharedInstance() {
+    if (sharedInstance == null) {
+      sharedInstance = new SharedContentCache(DEFAULT_MAX_BYTES);
+    }
+    return sharedInstance;
+  }
+
+  private record Entry(
+      long lastModified, long size, String encoding, CharBuffer content, long weight) {}
+
+  // Guarded by this.
+  private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+  private long maxBytes;
+  private long weight;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /** Kept here, as {@link MemoryPressure} holds its listeners weakly. */
+  private final MemoryPressure.Listener memoryListener = this::shed;
+
+  /**
+   * Creates a cache.
+   *
+   * @param maxBytes the approximate number of bytes the cached content may take
+   */
+  public SharedContentCache(long maxBytes) {
+    setMaxBytes(maxBytes);
+    MemoryPressure.addListener(memoryListener);
+  }
+
+  /**
+   * Changes the budget of this cache, evicting content beyond it.
+   *
+   * @param maxBytes the approximate number of bytes the cached content may take
+   */
+  public synchronized void setMaxBytes(long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes: " + maxBytes);
+    }
+    this.maxBytes = maxBytes;
+    trim();
+  }
+
+  public synchronized long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** The approximate number of bytes taken by the cached content. */
+  public synchronized long getWeight() {
+    return weight;
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /** The lookups that found current content, since this cache was created or cleared. */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /** The lookups that found no content or stale content. */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** The entries dropped to stay within the budget or to relieve memory pressure. */
+  public synchronized long getEvictions() {
+    return evictions;
+  }
+
+  /** Drops all content and clears the counts. */
+  public synchronized void clear() {
+    entries.clear();
+    weight = 0;
+    hits = misses = evictions = 0;
+  }
+
+  /**
+   * Returns the content of {@code uri} if it was cached for the same attributes and encoding, as
+   * a buffer of its own positioned at the start, or {@code null}.
+   */
+  synchronized CharBuffer get(URI uri, BasicFileAttributes attrs, String encoding) {
+    Entry e = entries.get(uri);
+    if (e == null) {
+      misses++;
+      return null;
+    }
+    if (e.lastModified() != attrs.lastModifiedTime().toMillis()
+        || e.size() != attrs.size()
+        || !Objects.equals(e.encoding(), encoding)) {
+      remove(uri);
+      misses++;
+      return null;
+    }
+    hits++;
+    return e.content().duplicate();
+  }
+
+  /**
+   * Caches the content of {@code uri} as read from a file with the given attributes, which must
+   * have been read before the content.
+   */
+  synchronized void put(URI uri, BasicFileAttributes attrs, String encoding, CharBuffer content) {
+    long w = ENTRY_OVERHEAD + 2L * (content.capacity() + uri.toString().length());
+    if (w > maxBytes) {
+      remove(uri);
+      return;
+    }
+    Entry e =
+        new Entry(
+            attrs.lastModifiedTime().toMillis(),
+            attrs.size(),
+            encoding,
+            content.duplicate().rewind(),
+            w);
+    Entry old = entries.put(uri, e);
+    if (old != null) {
+      weight -= old.weight();
+    }
+    weight += w;
+    trim();
+  }
+
+  synchronized void remove(URI uri) {
+    Entry old = entries.remove(uri);
+    if (old != null) {
+      weight -= old.weight();
+    }
+  }
+
+  private synchronized void shed(MemoryPressure.Level level) {
+    trim(level == MemoryPressure.Level.LOW ? maxBytes / 2 : 0);
+  }
+
+  private void trim() {
+    trim(maxBytes);
+  }
+
+  private void trim(long max) {
+    Iterator<Map.Entry<URI, Entry>> it = entries.entrySet().iterator();
+    while (weight > max && it.hasNext()) {
+      weight -= it.next().getValue().weight();
+      it.remove();
+      evictions++;
+    }
+  }
+}
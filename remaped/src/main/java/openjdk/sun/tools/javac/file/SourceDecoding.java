@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Decodes source files in the common encodings without the general {@link CharsetDecoder} loop.
+ * Bytes are tested eight at a time and widened directly while they are ASCII; the rest is decoded
+ * into the same array, which is sized so that the scanner can use it without another copy.
+ *
+ * <p>Only UTF-8, US-ASCII and ISO-8859-1 are handled, and only input that decodes without error.
+ * For anything else {@link #decode} returns {@code null}, leaving decoding and the reporting of
+ * malformed input to the file manager.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class SourceDecoding {
+
+  private static final long NON_ASCII = 0x8080808080808080L;
+
+  private SourceDecoding() {}
+
+  static boolean isSupported(Charset cs) {
+    return cs.equals(UTF_8) || cs.equals(US_ASCII) || cs.equals(ISO_8859_1);
+  }
+
+  /**
+   * Decodes the remaining bytes of {@code in}, which is left unchanged, or returns {@code null}
+   * if the encoding is not supported or the input is not valid in it. Like {@link
+   * BaseFileManager#decode}, the result has room for one more character than its limit.
+   */
+  static CharBuffer decode(ByteBuffer in, Charset cs) {
+    if (!isSupported(cs)) {
+      return null;
+    }
+    ByteBuffer bb = in.duplicate();
+    int length = bb.remaining();
+    if (length == Integer.MAX_VALUE) {
+      return null;
+    }
+    char[] chars = new char[length + 1];
+    int n = widenAscii(bb, chars);
+    if (n == length) {
+      return CharBuffer.wrap(chars, 0, n);
+    }
+    if (cs.equals(ISO_8859_1)) {
+      while (bb.hasRemaining()) {
+        chars[n++] = (char) (bb.get() & 0xff);
+      }
+      return CharBuffer.wrap(chars, 0, n);
+    }
+    if (cs.equals(US_ASCII)) {
+      return null;
+    }
+    // UTF-8 never decodes to more chars than bytes
+    CharsetDecoder decoder = cs.newDecoder();
+    CharBuffer out = CharBuffer.wrap(chars, n, length - n);
+    CoderResult result = decoder.decode(bb, out, true);
+    if (result.isUnderflow()) {
+      result = decoder.flush(out);
+    }
+    if (!result.isUnderflow()) {
+      return null;
+    }
+    return CharBuffer.wrap(chars, 0, out.position());
+  }
+
+  /**
+   * Copies the ASCII bytes at the start of {@code bb} to the start of {@code chars}, advancing
+   * {@code bb} past them, and returns their number.
+   */
+  private static int widenAscii(ByteBuffer bb, char[] chars) {
+    int i = bb.position();
+    int limit = bb.limit();
+    int n = 0;
+    while (i + 8 <= limit && (bb.getLong(i) & NON_ASCII) == 0) {
+      for (int k = 0; k < 8; k++) {
+        chars[n++] = (char) bb.get(i + k);
+      }
+      i += 8;
+    }
+    byte b;
+    while (i < limit && (b = bb.get(i)) >= 0) {
+      chars[n++] = (char) b;
+      i++;
+    }
+    bb.position(i);
+    return n;
+  }
+}
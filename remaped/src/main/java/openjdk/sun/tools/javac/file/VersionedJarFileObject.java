@@ -0,0 +1,69 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.file;
+
+import java.nio.file.Path;
+
+/**
+ * A file object for an entry under {@code META-INF/versions/N} of a multi-release jar that the
+ * file manager opened without a versioned view. Its path is the real entry; its binary name is
+ * inferred relative to the version directory, as if the entry were at the root of the jar.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class VersionedJarFileObject extends PathFileObject {
+
+  private final Path userJarPath;
+  private final Path versionRoot;
+
+  VersionedJarFileObject(
+      BaseFileManager fileManager, Path path, Path userJarPath, Path versionRoot) {
+    super(fileManager, path);
+    this.userJarPath = userJarPath;
+    this.versionRoot = versionRoot;
+  }
+
+  @Override
+  public String getName() {
+    return userJarPath + "(" + path + ")";
+  }
+
+  @Override
+  String inferBinaryName(Iterable<? extends Path> paths) {
+    return toBinaryName(versionRoot.relativize(path));
+  }
+
+  @Override
+  PathFileObject getSibling(String baseName) {
+    return new VersionedJarFileObject(
+        fileManager, path.resolveSibling(baseName), userJarPath, versionRoot);
+  }
+
+  @Override
+  boolean isJarFile() {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "JarFileObject[" + userJarPath + ":" + path + "]";
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.platform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import javx.annotation.processing.Processor;
+import javx.tools.JavaFileManager;
+import openjdk.sun.source.util.Plugin;
+import openjdk.sun.tools.javac.code.Source;
+import openjdk.sun.tools.javac.platform.PlatformData.Release;
+
+/**
+ * Provides the platforms of {@code --release} from {@link PlatformData}, where there is no {@code
+ * ct.sym} to read them from, as on Android. The data is the first of:
+ *
+ * <ul>
+ *   <li>the data given to {@link #setPlatformData}, such as a mapped asset;
+ *   <li>the file named by the system property {@value #DATA_PROPERTY}, which is mapped;
+ *   <li>the resource {@value #DATA_RESOURCE}, which is read into memory.
+ * </ul>
+ *
+ * Without data, no platform is supported.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public class CompactPlatformProvider implements PlatformProvider {
+
+  public static final String DATA_PROPERTY = "javac.platform.data";
+  public static final String DATA_RESOURCE = "META-INF/javac/platform.data";
+
+  private static PlatformData platformData;
+  private static boolean loaded;
+
+  /** Sets the data to provide platforms from, replacing any found before. */
+  public static synchronized void setPlatformData(PlatformData data) {
+    platformData = data;
+    loaded = true;
+  }
+
+  static synchronized PlatformData getPlatformData() {
+    if (!loaded) {
+      loaded = true;
+      platformData = load();
+    }
+    return platformData;
+  }
+
+  private static PlatformData load() {
+    try {
+      String file = System.getProperty(DATA_PROPERTY);
+      if (file != null) {
+        return PlatformData.open(Paths.get(file));
+      }
+      ClassLoader loader = CompactPlatformProvider.class.getClassLoader();
+      InputStream in =
+          loader == null
+              ? ClassLoader.getSystemResourceAsStream(DATA_RESOURCE)
+              : loader.getResourceAsStream(DATA_RESOURCE);
+      if (in != null) {
+        return PlatformData.read(in);
+      }
+    } catch (IOException | RuntimeException e) {
+      // unreadable data supports no platform, as a missing ct.sym does
+    }
+    return null;
+  }
+
+  @Override
+  public Iterable<String> getSupportedPlatformNames() {
+    PlatformData data = getPlatformData();
+    List<String> names = new ArrayList<>();
+    if (data != null) {
+      for (String release : data.getReleases()) {
+        if (Source.lookup(release) != null) {
+          names.add(release);
+        }
+      }
+    }
+    return names;
+  }
+
+  @Override
+  public PlatformDescription getPlatform(String platformName, String options)
+      throws PlatformNotSupported {
+    PlatformData data = getPlatformData();
+    Release release = data == null ? null : data.getRelease(platformName);
+    if (release == null || Source.lookup(platformName) == null) {
+      throw new PlatformNotSupported();
+    }
+    return new PlatformDescriptionImpl(data, release);
+  }
+
+  private static final class PlatformDescriptionImpl implements PlatformDescription {
+    private final PlatformData data;
+    private final Release release;
+
+    PlatformDescriptionImpl(PlatformData data, Release release) {
+      this.data = data;
+      this.release = release;
+    }
+
+    @Override
+    public JavaFileManager getFileManager() {
+      return new PlatformDataFileManager(data, release);
+    }
+
+    @Override
+    public String getSourceVersion() {
+      return release.getName();
+    }
+
+    @Override
+    public String getTargetVersion() {
+      return release.getName();
+    }
+
+    @Override
+    public List<PluginInfo<Processor>> getAnnotationProcessors() {
+      return List.of();
+    }
+
+    @Override
+    public List<PluginInfo<Plugin>> getPlugins() {
+      return List.of();
+    }
+
+    @Override
+    public List<String> getAdditionalOptions() {
+      return List.of();
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.platform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * The public API of a number of Java SE releases, as the class files of {@code ct.sym} indexed by
+ * release, module and package. The data is one buffer, normally a memory mapped file or an asset
+ * read once, and is not copied: a release is looked up with binary searches in its tables, and the
+ * content of a class is only touched when the class is read. {@link PlatformDataGenerator} builds
+ * the data from a JDK's {@code ct.sym}.
+ *
+ * <p>The layout, in big-endian order, with offsets from the start of the data:
+ *
+ * <pre>
+ * header:   u4 magic, u2 major, u2 minor,
+ *           u4 string count, u4 string table, u4 blob count, u4 blob table,
+ *           u4 release count, u4 release table
+ * string:   u4 offset of (u2 length, UTF-8 bytes), in {@link String#compareTo} order
+ * blob:     u4 offset, u4 stored length, u4 length; deflated unless the two lengths are equal
+ * release:  u4 name, u4 flags, u4 module count, u4 module table
+ * module:   u4 name, u4 module-info blob or -1, u4 package count, u4 package table
+ * package:  u4 name, u4 class count, u4 class table
+ * class:    u4 simple name, u4 blob
+ * </pre>
+ *
+ * Names are string indexes, and each table is sorted by name, so that it is in string order too.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class PlatformData {
+
+  static final int MAGIC = 0x4A435044; // "JCPD"
+  static final int MAJOR_VERSION = 1;
+  static final int MINOR_VERSION = 0;
+  static final int HEADER_SIZE = 32;
+
+  /** Set in the flags of a release whose API is organized in modules. */
+  static final int FLAG_MODULAR = 1;
+
+  static final int STRING_ENTRY = 4;
+  static final int BLOB_ENTRY = 12;
+  static final int RELEASE_ENTRY = 16;
+  static final int MODULE_ENTRY = 16;
+  static final int PACKAGE_ENTRY = 12;
+  static final int CLASS_ENTRY = 8;
+
+  /**
+   * Maps {@code file} into memory.
+   *
+   * @throws IOException if the file cannot be read or is not platform data
+   */
+  public static PlatformData open(Path file) throws IOException {
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      return wrap(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+    }
+  }
+
+  /**
+   * Reads platform data from {@code in}, as from an asset that cannot be mapped, and closes it.
+   *
+   * @throws IOException if the stream cannot be read or does not hold platform data
+   */
+  public static PlatformData read(InputStream in) throws IOException {
+    try (in) {
+      byte[] bytes = in.readAllBytes();
+      ByteBuffer buf = ByteBuffer.allocateDirect(bytes.length);
+      buf.put(bytes).flip();
+      return wrap(buf);
+    }
+  }
+
+  /**
+   * Uses the remaining content of {@code buffer} as platform data. The buffer is not copied and
+   * must not be changed afterwards.
+   *
+   * @throws IOException if the buffer does not hold platform data
+   */
+  public static PlatformData wrap(ByteBuffer buffer) throws IOException {
+    return new PlatformData(buffer.slice().order(ByteOrder.BIG_ENDIAN));
+  }
+
+  private final ByteBuffer data;
+  private final int stringCount;
+  private final int stringTable;
+  private final int blobCount;
+  private final int blobTable;
+  private final int releaseCount;
+  private final int releaseTable;
+  private final String[] strings;
+  private final List<String> releaseNames;
+
+  private PlatformData(ByteBuffer data) throws IOException {
+    this.data = data;
+    try {
+      if (data.getInt(0) != MAGIC) {
+        throw new IOException("not platform data");
+      }
+      int major = data.getShort(4) & 0xffff;
+      if (major != MAJOR_VERSION) {
+        throw new IOException("unsupported platform data version: " + major);
+      }
+      stringCount = data.getInt(8);
+      stringTable = data.getInt(12);
+      blobCount = data.getInt(16);
+      blobTable = data.getInt(20);
+      releaseCount = data.getInt(24);
+      releaseTable = data.getInt(28);
+      checkTable(stringTable, stringCount, STRING_ENTRY);
+      checkTable(blobTable, blobCount, BLOB_ENTRY);
+      checkTable(releaseTable, releaseCount, RELEASE_ENTRY);
+      strings = new String[stringCount];
+      String[] names = new String[releaseCount];
+      for (int i = 0; i < releaseCount; i++) {
+        names[i] = string(data.getInt(releaseTable + i * RELEASE_ENTRY));
+      }
+      releaseNames = Collections.unmodifiableList(Arrays.asList(names));
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("truncated platform data", e);
+    }
+  }
+
+  private void checkTable(int offset, int count, int entrySize) throws IOException {
+    if (offset < 0 || count < 0 || (long) offset + (long) count * entrySize > data.limit()) {
+      throw new IOException("corrupt platform data");
+    }
+  }
+
+  /** The names of the releases described, such as {@code "8"} or {@code "11"}. */
+  public List<String> getReleases() {
+    return releaseNames;
+  }
+
+  /** Returns the release called {@code name}, or {@code null}. */
+  Release getRelease(String name) {
+    int i = releaseNames.indexOf(name);
+    return i < 0 ? null : new Release(releaseTable + i * RELEASE_ENTRY);
+  }
+
+  String string(int index) {
+    String s = strings[index];
+    if (s == null) {
+      int offset = data.getInt(stringTable + index * STRING_ENTRY);
+      byte[] bytes = new byte[data.getShort(offset) & 0xffff];
+      ByteBuffer b = data.duplicate();
+      b.position(offset + 2);
+      b.get(bytes);
+      strings[index] = s = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return s;
+  }
+
+  /** Returns the index of {@code s} in the string table, or -1. */
+  int findString(String s) {
+    int lo = 0;
+    int hi = stringCount - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = string(mid).compareTo(s);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the entry of a table sorted by name whose name is string {@code name}, or -1. The name
+   * is the first field of each entry.
+   */
+  private int findEntry(int table, int count, int entrySize, int name) {
+    int lo = 0;
+    int hi = count - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int entry = table + mid * entrySize;
+      int c = Integer.compare(data.getInt(entry), name);
+      if (c < 0) {
+        lo = mid + 1;
+      } else if (c > 0) {
+        hi = mid - 1;
+      } else {
+        return entry;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the content of blob {@code index}, inflating it if it is stored deflated. */
+  ByteBuffer blob(int index) throws IOException {
+    if (index < 0 || index >= blobCount) {
+      throw new IOException("corrupt platform data");
+    }
+    int entry = blobTable + index * BLOB_ENTRY;
+    int offset = data.getInt(entry);
+    int storedLength = data.getInt(entry + 4);
+    int length = data.getInt(entry + 8);
+    ByteBuffer stored = data.duplicate();
+    stored.limit(offset + storedLength).position(offset);
+    if (storedLength == length) {
+      return stored.slice().asReadOnlyBuffer();
+    }
+    byte[] bytes = new byte[length];
+    Inflater inflater = new Inflater(true);
+    try {
+      byte[] in = new byte[storedLength];
+      stored.get(in);
+      inflater.setInput(in);
+      int n = 0;
+      while (n < length && !inflater.finished()) {
+        int k = inflater.inflate(bytes, n, length - n);
+        if (k == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        n += k;
+      }
+      if (n != length) {
+        throw new IOException("corrupt platform data");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("corrupt platform data", e);
+    } finally {
+      inflater.end();
+    }
+    return ByteBuffer.wrap(bytes);
+  }
+
+  /** A view of one release. */
+  final class Release {
+    private final String name;
+    private final boolean modular;
+    private final int moduleCount;
+    private final int moduleTable;
+
+    private Release(int entry) {
+      name = string(data.getInt(entry));
+      modular = (data.getInt(entry + 4) & FLAG_MODULAR) != 0;
+      moduleCount = data.getInt(entry + 8);
+      moduleTable = data.getInt(entry + 12);
+    }
+
+    String getName() {
+      return name;
+    }
+
+    /** Whether the API is seen as modules rather than as a platform class path. */
+    boolean isModular() {
+      return modular;
+    }
+
+    List<ModuleEntry> getModules() {
+      return new AbstractList<>() {
+        @Override
+        public ModuleEntry get(int i) {
+          return new ModuleEntry(moduleTable + i * MODULE_ENTRY);
+        }
+
+        @Override
+        public int size() {
+          return moduleCount;
+        }
+      };
+    }
+
+    /** Returns the module called {@code name}, or {@code null}. */
+    ModuleEntry getModule(String name) {
+      int s = findString(name);
+      int entry = s < 0 ? -1 : findEntry(moduleTable, moduleCount, MODULE_ENTRY, s);
+      return entry < 0 ? null : new ModuleEntry(entry);
+    }
+  }
+
+  /** A view of one module of a release. */
+  final class ModuleEntry {
+    private final String name;
+    private final int moduleInfo;
+    private final int packageCount;
+    private final int packageTable;
+
+    private ModuleEntry(int entry) {
+      name = string(data.getInt(entry));
+      moduleInfo = data.getInt(entry + 4);
+      packageCount = data.getInt(entry + 8);
+      packageTable = data.getInt(entry + 12);
+    }
+
+    String getName() {
+      return name;
+    }
+
+    /** The blob of the module's {@code module-info} class, or -1. */
+    int getModuleInfo() {
+      return moduleInfo;
+    }
+
+    /** The names of the packages of this module, in string order. */
+    List<String> getPackageNames() {
+      List<String> names = new ArrayList<>(packageCount);
+      for (int i = 0; i < packageCount; i++) {
+        names.add(string(data.getInt(packageTable + i * PACKAGE_ENTRY)));
+      }
+      return names;
+    }
+
+    /** Returns the package called {@code name}, in dotted form, or {@code null}. */
+    PackageEntry getPackage(String name) {
+      int s = findString(name);
+      int entry = s < 0 ? -1 : findEntry(packageTable, packageCount, PACKAGE_ENTRY, s);
+      return entry < 0 ? null : new PackageEntry(this, entry);
+    }
+  }
+
+  /** A view of one package of a module. */
+  final class PackageEntry {
+    private final ModuleEntry module;
+    private final String name;
+    private final int classCount;
+    private final int classTable;
+
+    private PackageEntry(ModuleEntry module, int entry) {
+      this.module = module;
+      name = string(data.getInt(entry));
+      classCount = data.getInt(entry + 4);
+      classTable = data.getInt(entry + 8);
+    }
+
+    ModuleEntry getModule() {
+      return module;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    int getClassCount() {
+      return classCount;
+    }
+
+    String getClassName(int i) {
+      return string(data.getInt(classTable + i * CLASS_ENTRY));
+    }
+
+    int getClassBlob(int i) {
+      return data.getInt(classTable + i * CLASS_ENTRY + 4);
+    }
+
+    /** Returns the blob of the class with simple name {@code name}, or -1. */
+    int findClass(String name) {
+      int s = findString(name);
+      int entry = s < 0 ? -1 : findEntry(classTable, classCount, CLASS_ENTRY, s);
+      return entry < 0 ? -1 : data.getInt(entry + 4);
+    }
+  }
+}
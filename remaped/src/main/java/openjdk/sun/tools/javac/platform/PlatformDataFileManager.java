@@ -0,0 +1,357 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.platform;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import javx.tools.FileObject;
+import javx.tools.JavaFileManager;
+import javx.tools.JavaFileObject;
+import javx.tools.JavaFileObject.Kind;
+import javx.tools.SimpleJavaFileObject;
+import javx.tools.StandardLocation;
+import openjdk.sun.tools.javac.platform.PlatformData.ModuleEntry;
+import openjdk.sun.tools.javac.platform.PlatformData.PackageEntry;
+import openjdk.sun.tools.javac.platform.PlatformData.Release;
+
+/**
+ * The file manager of a release described by {@link PlatformData}. The classes of a release with
+ * modules are in {@link StandardLocation#SYSTEM_MODULES}; those of an earlier release are on the
+ * {@link StandardLocation#PLATFORM_CLASS_PATH}. Only these locations and the module locations in
+ * them are present, as the compiler asks the file manager of the release for nothing else.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+final class PlatformDataFileManager implements JavaFileManager {
+
+  private final PlatformData data;
+  private final Release release;
+
+  /** The module locations, by module name; empty if the release has no modules. */
+  private final Map<String, ModuleLocation> moduleLocations = new LinkedHashMap<>();
+
+  PlatformDataFileManager(PlatformData data, Release release) {
+    this.data = data;
+    this.release = release;
+    if (release.isModular()) {
+      for (ModuleEntry m : release.getModules()) {
+        moduleLocations.put(m.getName(), new ModuleLocation(m));
+      }
+    }
+  }
+
+  /** Returns the modules whose classes are in {@code location}, or an empty list. */
+  private List<ModuleEntry> modules(Location location) {
+    if (location instanceof ModuleLocation l && moduleLocations.get(l.module.getName()) == l) {
+      return List.of(l.module);
+    }
+    if (location == StandardLocation.PLATFORM_CLASS_PATH && !release.isModular()) {
+      return release.getModules();
+    }
+    return List.of();
+  }
+
+  @Override
+  public boolean hasLocation(Location location) {
+    if (release.isModular()) {
+      return location == StandardLocation.SYSTEM_MODULES
+          || (location instanceof ModuleLocation l
+              && moduleLocations.get(l.module.getName()) == l);
+    }
+    return location == StandardLocation.PLATFORM_CLASS_PATH;
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location, String packageName, Set<Kind> kinds, boolean recurse) throws IOException {
+    if (!kinds.contains(Kind.CLASS)) {
+      return List.of();
+    }
+    List<JavaFileObject> result = new ArrayList<>();
+    for (ModuleEntry m : modules(location)) {
+      if (recurse) {
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        for (String name : m.getPackageNames()) {
+          if (name.equals(packageName) || name.startsWith(prefix)) {
+            addClasses(m.getPackage(name), result);
+          }
+        }
+      } else {
+        PackageEntry p = m.getPackage(packageName);
+        if (p != null) {
+          addClasses(p, result);
+        }
+      }
+    }
+    return result;
+  }
+
+  private void addClasses(PackageEntry p, List<JavaFileObject> result) {
+    for (int i = 0; i < p.getClassCount(); i++) {
+      result.add(
+          new PlatformFileObject(
+              p.getModule(), p.getName(), p.getClassName(i), p.getClassBlob(i)));
+    }
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    return file instanceof PlatformFileObject f ? f.binaryName : null;
+  }
+
+  @Override
+  public JavaFileObject getJavaFileForInput(Location location, String className, Kind kind)
+      throws IOException {
+    if (kind != Kind.CLASS) {
+      return null;
+    }
+    int dot = className.lastIndexOf('.');
+    String packageName = dot < 0 ? "" : className.substring(0, dot);
+    String simpleName = className.substring(dot + 1);
+    for (ModuleEntry m : modules(location)) {
+      if (packageName.isEmpty() && simpleName.equals("module-info")) {
+        if (m.getModuleInfo() >= 0 && release.isModular()) {
+          return new PlatformFileObject(m, "", simpleName, m.getModuleInfo());
+        }
+        continue;
+      }
+      PackageEntry p = m.getPackage(packageName);
+      int blob = p == null ? -1 : p.findClass(simpleName);
+      if (blob >= 0) {
+        return new PlatformFileObject(m, packageName, simpleName, blob);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public FileObject getFileForInput(Location location, String packageName, String relativeName) {
+    return null;
+  }
+
+  @Override
+  public Location getLocationForModule(Location location, String moduleName) {
+    return location == StandardLocation.SYSTEM_MODULES ? moduleLocations.get(moduleName) : null;
+  }
+
+  @Override
+  public Location getLocationForModule(Location location, JavaFileObject fo) {
+    if (location == StandardLocation.SYSTEM_MODULES && fo instanceof PlatformFileObject f) {
+      return moduleLocations.get(f.module.getName());
+    }
+    return null;
+  }
+
+  @Override
+  public Iterable<Set<Location>> listLocationsForModules(Location location) {
+    if (location != StandardLocation.SYSTEM_MODULES || moduleLocations.isEmpty()) {
+      return List.of();
+    }
+    return List.of(Collections.unmodifiableSet(new LinkedHashSet<>(moduleLocations.values())));
+  }
+
+  @Override
+  public String inferModuleName(Location location) {
+    return location instanceof ModuleLocation l ? l.module.getName() : null;
+  }
+
+  @Override
+  public boolean contains(Location location, FileObject fo) {
+    if (!(fo instanceof PlatformFileObject f) || f.owner() != this) {
+      return false;
+    }
+    for (ModuleEntry m : modules(location)) {
+      if (m.getName().equals(f.module.getName())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    return a.equals(b);
+  }
+
+  @Override
+  public ClassLoader getClassLoader(Location location) {
+    return null;
+  }
+
+  /** The classes of a release are compiled against, not run, so no location has services. */
+  @Override
+  public <S> ServiceLoader<S> getServiceLoader(Location location, Class<S> service) {
+    throw new IllegalArgumentException("no services in location: " + location.getName());
+  }
+
+  @Override
+  public JavaFileObject getJavaFileForOutput(
+      Location location, String className, Kind kind, FileObject sibling) {
+    throw notAnOutputLocation(location);
+  }
+
+  @Override
+  public FileObject getFileForOutput(
+      Location location, String packageName, String relativeName, FileObject sibling) {
+    throw notAnOutputLocation(location);
+  }
+
+  /** Every location of a release is read-only. */
+  private static IllegalArgumentException notAnOutputLocation(Location location) {
+    return new IllegalArgumentException(
+        "location is not an output location: " + location.getName());
+  }
+
+  @Override
+  public boolean handleOption(String current, Iterator<String> remaining) {
+    return false;
+  }
+
+  @Override
+  public int isSupportedOption(String option) {
+    return -1;
+  }
+
+  @Override
+  public void flush() {}
+
+  @Override
+  public void close() {}
+
+  /** The location of one module of the release. */
+  private static final class ModuleLocation implements Location {
+    final ModuleEntry module;
+
+    ModuleLocation(ModuleEntry module) {
+      this.module = module;
+    }
+
+    @Override
+    public String getName() {
+      return "SYSTEM_MODULES[" + module.getName() + "]";
+    }
+
+    @Override
+    public boolean isOutputLocation() {
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return getName();
+    }
+  }
+
+  /** A class of the release, read from the platform data when opened. */
+  private final class PlatformFileObject extends SimpleJavaFileObject {
+    final ModuleEntry module;
+    final String binaryName;
+    final int blob;
+
+    PlatformFileObject(ModuleEntry module, String packageName, String simpleName, int blob) {
+      super(uri(module, packageName, simpleName), Kind.CLASS);
+      this.module = module;
+      this.binaryName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+      this.blob = blob;
+    }
+
+    PlatformDataFileManager owner() {
+      return PlatformDataFileManager.this;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return new ByteBufferInputStream(data.blob(blob));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof PlatformFileObject o
+          && o.owner() == owner()
+          && o.blob == blob
+          && o.binaryName.equals(binaryName);
+    }
+
+    @Override
+    public int hashCode() {
+      return binaryName.hashCode();
+    }
+  }
+
+  private URI uri(ModuleEntry module, String packageName, String simpleName) {
+    String dir = packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/";
+    String path =
+        "/" + release.getName() + "/" + module.getName() + "/" + dir + simpleName
+            + Kind.CLASS.extension;
+    try {
+      return new URI("platform", null, path, null);
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException(path, e);
+    }
+  }
+
+  /** Reads the remaining content of a buffer. */
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buf;
+
+    ByteBufferInputStream(ByteBuffer buf) {
+      this.buf = buf;
+    }
+
+    @Override
+    public int read() {
+      return buf.hasRemaining() ? buf.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) return 0;
+      if (!buf.hasRemaining()) return -1;
+      int n = Math.min(len, buf.remaining());
+      buf.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return buf.remaining();
+    }
+
+    @Override
+    public long skip(long n) {
+      int k = (int) Math.max(0, Math.min(n, buf.remaining()));
+      buf.position(buf.position() + k);
+      return k;
+    }
+  }
+}
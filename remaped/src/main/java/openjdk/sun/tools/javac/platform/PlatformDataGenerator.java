@@ -0,0 +1,353 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package openjdk.sun.tools.javac.platform;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Builds {@link PlatformData} from the {@code ct.sym} of a JDK, for devices that have no {@code
+ * ct.sym} and no runtime image to compile against with {@code --release}.
+ *
+ * <pre>
+ * java openjdk.sun.tools.javac.platform.PlatformDataGenerator
+ *     [--ct-sym &lt;file&gt;] [--release &lt;N&gt;]... [--store] &lt;output&gt;
+ * </pre>
+ *
+ * <p>{@code --ct-sym} defaults to {@code lib/ct.sym} of the running JDK, and {@code --release}
+ * to every release in it. A JDK's {@code ct.sym} describes the releases before its own, so the data
+ * for release N is generated with a JDK newer than N. Each class is stored deflated unless {@code
+ * --store} is given, which makes the data larger but lets it be read in place.
+ *
+ * <p><b>This is NOT part of any supported API. If you write code that depends on this, you do so
+ * at your own risk. This code and its internal interfaces are subject to change or deletion
+ * without notice.</b>
+ */
+public final class PlatformDataGenerator {
+
+  private static final String SIG = ".sig";
+  private static final String MODULE_INFO = "module-info";
+
+  /** The first release whose API is organized in modules. */
+  private static final int FIRST_MODULAR_RELEASE = 9;
+
+  public static void main(String... args) {
+    System.exit(run(System.out, args));
+  }
+
+  /** Runs the generator with command line {@code args}, returning the exit code. */
+  public static int run(PrintStream out, String... args) {
+    Path ctSym = null;
+    Set<String> releases = new LinkedHashSet<>();
+    boolean store = false;
+    Path output = null;
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      switch (arg) {
+        case "--ct-sym" -> {
+          if (++i == args.length) return usage(out);
+          ctSym = Paths.get(args[i]);
+        }
+        case "--release" -> {
+          if (++i == args.length) return usage(out);
+          releases.add(args[i]);
+        }
+        case "--store" -> store = true;
+        default -> {
+          if (arg.startsWith("-") || output != null) return usage(out);
+          output = Paths.get(arg);
+        }
+      }
+    }
+    if (output == null) return usage(out);
+    if (ctSym == null) {
+      ctSym = Paths.get(System.getProperty("java.home"), "lib", "ct.sym");
+    }
+    try {
+      PlatformDataGenerator g = new PlatformDataGenerator(store);
+      g.readCtSym(ctSym, releases);
+      g.write(output);
+      out.println("wrote " + output + ": releases " + g.releases.keySet());
+      return 0;
+    } catch (IOException | IllegalArgumentException e) {
+      out.println("error: " + e.getMessage());
+      return 1;
+    }
+  }
+
+  private static int usage(PrintStream out) {
+    out.println(
+        "usage: PlatformDataGenerator [--ct-sym <file>] [--release <N>]... [--store] <output>");
+    return 2;
+  }
+
+  private final boolean store;
+
+  /** The content of each class, as found in ct.sym. */
+  private final List<byte[]> blobs = new ArrayList<>();
+
+  /** release -> module -> package -> simple name -> blob; module-info is in package "". */
+  private final Map<String, Map<String, Map<String, Map<String, Integer>>>> releases =
+      new TreeMap<>(PlatformDataGenerator::compareReleases);
+
+  PlatformDataGenerator(boolean store) {
+    this.store = store;
+  }
+
+  private static int compareReleases(String a, String b) {
+    return Integer.compare(Integer.parseInt(a), Integer.parseInt(b));
+  }
+
+  /**
+   * Reads the classes of {@code wanted} releases, or of all releases if empty, from {@code ctSym}.
+   *
+   * <p>{@code ct.sym} holds {@code <releases>/<module>/<package path>/<class>.sig}, where each
+   * character of {@code <releases>} is a release in base 36, so that a class unchanged across a
+   * number of releases is stored once.
+   */
+  void readCtSym(Path ctSym, Set<String> wanted) throws IOException {
+    try (ZipFile zip = new ZipFile(ctSym.toFile())) {
+      Map<String, Integer> blobOfEntry = new HashMap<>();
+      for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+        ZipEntry entry = e.nextElement();
+        String name = entry.getName();
+        if (entry.isDirectory() || !name.endsWith(SIG)) continue;
+        String[] parts = name.split("/");
+        if (parts.length < 3 || parts[0].contains("-")) continue;
+        String module = parts[1];
+        String pkg = String.join(".", List.of(parts).subList(2, parts.length - 1));
+        String simpleName = parts[parts.length - 1];
+        simpleName = simpleName.substring(0, simpleName.length() - SIG.length());
+        for (char c : parts[0].toCharArray()) {
+          int version = Character.digit(c, Character.MAX_RADIX);
+          if (version < 0) continue;
+          String release = Integer.toString(version);
+          if (!wanted.isEmpty() && !wanted.contains(release)) continue;
+          boolean moduleInfo = simpleName.equals(MODULE_INFO) && pkg.isEmpty();
+          if (moduleInfo && version < FIRST_MODULAR_RELEASE) continue;
+          Integer blob = blobOfEntry.get(name);
+          if (blob == null) {
+            try (InputStream in = zip.getInputStream(entry)) {
+              blobs.add(in.readAllBytes());
+            }
+            blob = blobs.size() - 1;
+            blobOfEntry.put(name, blob);
+          }
+          releases
+              .computeIfAbsent(release, r -> new TreeMap<>())
+              .computeIfAbsent(module, m -> new TreeMap<>())
+              .computeIfAbsent(pkg, p -> new TreeMap<>())
+              .put(simpleName, blob);
+        }
+      }
+    }
+    for (String release : wanted) {
+      if (!releases.containsKey(release)) {
+        throw new IllegalArgumentException("release " + release + " is not in " + ctSym);
+      }
+    }
+    if (releases.isEmpty()) {
+      throw new IllegalArgumentException("no releases in " + ctSym);
+    }
+  }
+
+  /** Writes the releases read to {@code file}, replacing it once complete. */
+  void write(Path file) throws IOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      try (OutputStream out = Files.newOutputStream(tmp)) {
+        write(out);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+
+  void write(OutputStream os) throws IOException {
+    Set<String> names = new TreeSet<>();
+    releases.forEach(
+        (release, modules) -> {
+          names.add(release);
+          modules.forEach(
+              (module, packages) -> {
+                names.add(module);
+                packages.forEach(
+                    (pkg, classes) -> {
+                      names.add(pkg);
+                      names.addAll(classes.keySet());
+                    });
+              });
+        });
+    Map<String, Integer> stringIndex = new HashMap<>();
+    for (String s : names) {
+      stringIndex.put(s, stringIndex.size());
+    }
+
+    Out out = new Out();
+    out.skip(PlatformData.HEADER_SIZE);
+
+    int stringTable = out.size();
+    out.skip(names.size() * PlatformData.STRING_ENTRY);
+    int i = 0;
+    for (String s : names) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      if (bytes.length > 0xffff) throw new IOException("name too long: " + s);
+      out.patchInt(stringTable + i++ * PlatformData.STRING_ENTRY, out.size());
+      out.writeShort(bytes.length);
+      out.write(bytes, 0, bytes.length);
+    }
+
+    int blobTable = out.size();
+    out.skip(blobs.size() * PlatformData.BLOB_ENTRY);
+    Deflater deflater = store ? null : new Deflater(Deflater.BEST_COMPRESSION, true);
+    try {
+      for (i = 0; i < blobs.size(); i++) {
+        byte[] content = blobs.get(i);
+        byte[] stored = deflater == null ? content : deflate(deflater, content);
+        int entry = blobTable + i * PlatformData.BLOB_ENTRY;
+        out.patchInt(entry, out.size());
+        out.patchInt(entry + 4, stored.length);
+        out.patchInt(entry + 8, content.length);
+        out.write(stored, 0, stored.length);
+      }
+    } finally {
+      if (deflater != null) deflater.end();
+    }
+
+    // Tables are written after the tables they point to.
+    List<int[]> releaseEntries = new ArrayList<>();
+    for (Map.Entry<String, Map<String, Map<String, Map<String, Integer>>>> r :
+        releases.entrySet()) {
+      List<int[]> moduleEntries = new ArrayList<>();
+      for (Map.Entry<String, Map<String, Map<String, Integer>>> m : r.getValue().entrySet()) {
+        int moduleInfo = -1;
+        List<int[]> packageEntries = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Integer>> p : m.getValue().entrySet()) {
+          Map<String, Integer> classes = p.getValue();
+          if (p.getKey().isEmpty()) {
+            Integer blob = classes.remove(MODULE_INFO);
+            if (blob != null) moduleInfo = blob;
+            if (classes.isEmpty()) continue;
+          }
+          int classTable = out.size();
+          for (Map.Entry<String, Integer> c : classes.entrySet()) {
+            out.writeInt(stringIndex.get(c.getKey()));
+            out.writeInt(c.getValue());
+          }
+          packageEntries.add(new int[] {stringIndex.get(p.getKey()), classes.size(), classTable});
+        }
+        int packageTable = out.writeTable(packageEntries);
+        moduleEntries.add(
+            new int[] {
+              stringIndex.get(m.getKey()), moduleInfo, packageEntries.size(), packageTable
+            });
+      }
+      int moduleTable = out.writeTable(moduleEntries);
+      int flags =
+          Integer.parseInt(r.getKey()) >= FIRST_MODULAR_RELEASE ? PlatformData.FLAG_MODULAR : 0;
+      releaseEntries.add(
+          new int[] {stringIndex.get(r.getKey()), flags, moduleEntries.size(), moduleTable});
+    }
+    int releaseTable = out.writeTable(releaseEntries);
+
+    out.patchInt(0, PlatformData.MAGIC);
+    out.patchInt(4, PlatformData.MAJOR_VERSION << 16 | PlatformData.MINOR_VERSION);
+    out.patchInt(8, names.size());
+    out.patchInt(12, stringTable);
+    out.patchInt(16, blobs.size());
+    out.patchInt(20, blobTable);
+    out.patchInt(24, releases.size());
+    out.patchInt(28, releaseTable);
+    out.writeTo(os);
+  }
+
+  private static byte[] deflate(Deflater deflater, byte[] content) {
+    deflater.reset();
+    deflater.setInput(content);
+    deflater.finish();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2 + 64);
+    byte[] buf = new byte[8192];
+    while (!deflater.finished()) {
+      int n = deflater.deflate(buf);
+      out.write(buf, 0, n);
+    }
+    // Content that does not shrink is stored, which the reader tells by the equal lengths.
+    return out.size() < content.length ? out.toByteArray() : content;
+  }
+
+  /** The data being written, with big-endian writes and patches at earlier offsets. */
+  private static final class Out extends ByteArrayOutputStream {
+    Out() {
+      super(1 << 20);
+    }
+
+    void skip(int n) {
+      for (int i = 0; i < n; i++) write(0);
+    }
+
+    void writeShort(int v) {
+      write(v >>> 8);
+      write(v);
+    }
+
+    void writeInt(int v) {
+      write(v >>> 24);
+      write(v >>> 16);
+      write(v >>> 8);
+      write(v);
+    }
+
+    void patchInt(int offset, int v) {
+      buf[offset] = (byte) (v >>> 24);
+      buf[offset + 1] = (byte) (v >>> 16);
+      buf[offset + 2] = (byte) (v >>> 8);
+      buf[offset + 3] = (byte) v;
+    }
+
+    /** Writes a table of entries of ints, returning its offset. */
+    int writeTable(List<int[]> entries) {
+      int offset = size();
+      for (int[] entry : entries) {
+        for (int v : entry) writeInt(v);
+      }
+      return offset;
+    }
+  }
+}